@@ -0,0 +1,17 @@
+#!/bin/sh
+#
+# run the benchmarks and keep a JSON report per commit in benchmarks/results,
+# extra arguments go to JMH (e.g. a benchmark regexp or -p threadCount=4)
+#
+# compare two runs with any JMH JSON viewer, or side by side with
+#   jq -r '.[] | [.benchmark, (.params|tostring), .primaryMetric.score] | @tsv' a.json b.json
+
+cd "$(dirname "$0")" || exit 1
+
+COMMIT=$(git rev-parse --short HEAD 2>/dev/null || echo unknown)
+if [ -n "$(git status --porcelain -- .. 2>/dev/null)" ]; then
+	COMMIT="$COMMIT-dirty"
+fi
+
+mkdir -p results
+exec java -jar target/benchmarks.jar -rf json -rff "results/$COMMIT.json" "$@"
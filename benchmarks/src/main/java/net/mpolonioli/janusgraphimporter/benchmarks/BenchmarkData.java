@@ -0,0 +1,158 @@
+package net.mpolonioli.janusgraphimporter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.janusgraph.core.Cardinality;
+
+/*
+ * generates the CSV files, schema and configuration the benchmarks load:
+ * person vertices (id|name|surname|birthdate|email) and knows edges
+ * (id|id|creationDate) between random persons, on the inmemory backend
+ */
+public class BenchmarkData {
+
+	public static final String VERTEX_FILE = "person.csv";
+	public static final String EDGE_FILE = "knowsFile.csv";
+	public static final int EMAILS_PER_PERSON = 3;
+
+	private static final long SEED = 42;
+	private static final String[] NAMES = { "Mario", "Emanuele", "Giulia", "Anna", "Luca", "Sara", "Marco", "Chiara" };
+	private static final String[] SURNAMES = { "Rossi", "Rosati", "Bianchi", "Verdi", "Esposito", "Romano", "Colombo" };
+
+	public static String vertexLine(Random random, long id, boolean listProperties) {
+		String name = NAMES[random.nextInt(NAMES.length)];
+		String surname = SURNAMES[random.nextInt(SURNAMES.length)];
+		StringBuilder line = new StringBuilder()
+				.append(id).append('|')
+				.append(name).append('|')
+				.append(surname).append('|')
+				.append(date(random)).append('|');
+		int emails = listProperties ? EMAILS_PER_PERSON : 1;
+		for(int e = 0; e < emails; e++)
+		{
+			if(e > 0)
+			{
+				line.append(';');
+			}
+			line.append(name.toLowerCase()).append('.').append(id).append('.').append(e).append("@email.com");
+		}
+		return line.toString();
+	}
+
+	public static String edgeLine(Random random, int vertexCount) {
+		return (random.nextInt(vertexCount) + 1) + "|" + (random.nextInt(vertexCount) + 1) + "|" + date(random);
+	}
+
+	public static File writeVertexFile(File dir, int vertexCount, boolean listProperties) throws IOException {
+		File file = new File(dir, VERTEX_FILE);
+		Random random = new Random(SEED);
+		try(PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name()))
+		{
+			writer.print("id|name|surname|birthdate|email\n");
+			for(long id = 1; id <= vertexCount; id++)
+			{
+				writer.print(vertexLine(random, id, listProperties));
+				writer.print('\n');
+			}
+		}
+		return file;
+	}
+
+	public static File writeEdgeFile(File dir, int vertexCount, int edgeCount) throws IOException {
+		File file = new File(dir, EDGE_FILE);
+		Random random = new Random(SEED);
+		try(PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name()))
+		{
+			writer.print("id|id|creationDate\n");
+			for(int e = 0; e < edgeCount; e++)
+			{
+				writer.print(edgeLine(random, vertexCount));
+				writer.print('\n');
+			}
+		}
+		return file;
+	}
+
+	public static File writeInMemoryConfiguration(File dir) throws IOException {
+		File file = new File(dir, "janusgraph-inmemory.properties");
+		try(PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name()))
+		{
+			writer.print("gremlin.graph=org.janusgraph.core.JanusGraphFactory\n");
+			writer.print("storage.backend=inmemory\n");
+		}
+		return file;
+	}
+
+	public static List<String> vertexLabels() {
+		return new ArrayList<>(Arrays.asList("person"));
+	}
+
+	public static List<String> edgeLabels() {
+		return new ArrayList<>(Arrays.asList("knows"));
+	}
+
+	public static HashMap<String, String> edgeHasLabel() {
+		HashMap<String, String> edgeHasLabel = new HashMap<>();
+		edgeHasLabel.put("knowsFile", "knows");
+		return edgeHasLabel;
+	}
+
+	public static List<String> propertyKeys() {
+		return new ArrayList<>(Arrays.asList("id", "name", "surname", "birthdate", "email", "creationDate"));
+	}
+
+	public static List<String> propertiesWithIndex() {
+		return new ArrayList<>(Arrays.asList("id"));
+	}
+
+	@SuppressWarnings("rawtypes")
+	public static HashMap<String, Class> propertyHasType() {
+		HashMap<String, Class> propertyHasType = new HashMap<>();
+		propertyHasType.put("id", Long.class);
+		propertyHasType.put("name", String.class);
+		propertyHasType.put("surname", String.class);
+		propertyHasType.put("birthdate", Date.class);
+		propertyHasType.put("email", String.class);
+		propertyHasType.put("creationDate", Date.class);
+		return propertyHasType;
+	}
+
+	/*
+	 * email is a LIST property when listProperties is set
+	 */
+	public static HashMap<String, Cardinality> propertyHasCardinality(boolean listProperties) {
+		HashMap<String, Cardinality> propertyHasCardinality = new HashMap<>();
+		propertyHasCardinality.put("id", Cardinality.SINGLE);
+		propertyHasCardinality.put("name", Cardinality.SINGLE);
+		propertyHasCardinality.put("surname", Cardinality.SINGLE);
+		propertyHasCardinality.put("birthdate", Cardinality.SINGLE);
+		propertyHasCardinality.put("email", listProperties ? Cardinality.LIST : Cardinality.SINGLE);
+		propertyHasCardinality.put("creationDate", Cardinality.SINGLE);
+		return propertyHasCardinality;
+	}
+
+	public static void delete(File file) {
+		File[] children = file.listFiles();
+		if(children != null)
+		{
+			for(File child : children)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private static String date(Random random) {
+		return String.format("%04d-%02d-%02d", 1950 + random.nextInt(60), 1 + random.nextInt(12), 1 + random.nextInt(28));
+	}
+}
@@ -0,0 +1,86 @@
+package net.mpolonioli.janusgraphimporter.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.mpolonioli.janusgraphimporter.codec.CodecRegistry;
+import net.mpolonioli.janusgraphimporter.codec.PropertyCodec;
+import net.mpolonioli.janusgraphimporter.io.CsvRow;
+
+/*
+ * converting single fields of a tokenized line with the built-in codecs
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CodecBenchmark {
+
+	private static final String LINE = "933|Mario|Rossi|1994-06-21|mario.933.0@email.com;mario.933.1@email.com;mario.933.2@email.com|0.75";
+
+	private CsvRow row = new CsvRow();
+	private CsvRow values = new CsvRow(CsvRow.VALUE_SEPARATOR);
+	private PropertyCodec longCodec;
+	private PropertyCodec stringCodec;
+	private PropertyCodec dateCodec;
+	private PropertyCodec doubleCodec;
+
+	@Setup
+	public void tokenize() {
+		byte[] bytes = LINE.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+		buffer.put(bytes);
+		row.reset(buffer, 0, bytes.length);
+
+		CodecRegistry registry = new CodecRegistry();
+		longCodec = registry.get(Long.class);
+		stringCodec = registry.get(String.class);
+		dateCodec = registry.get(Date.class);
+		doubleCodec = registry.get(Double.class);
+	}
+
+	@Benchmark
+	public Object longField() {
+		return longCodec.decode(row, 0);
+	}
+
+	@Benchmark
+	public Object stringField() {
+		return stringCodec.decode(row, 1);
+	}
+
+	@Benchmark
+	public Object dateField() {
+		return dateCodec.decode(row, 3);
+	}
+
+	@Benchmark
+	public Object doubleField() {
+		return doubleCodec.decode(row, 5);
+	}
+
+	@Benchmark
+	public void listField(Blackhole blackhole) {
+		values.reset(row.getBuffer(), row.getStart(4), row.getEnd(4));
+		for(int v = 0; v < values.size(); v++)
+		{
+			blackhole.consume(stringCodec.decode(values, v));
+		}
+	}
+}
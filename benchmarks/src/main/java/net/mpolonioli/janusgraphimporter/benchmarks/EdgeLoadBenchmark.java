@@ -0,0 +1,105 @@
+package net.mpolonioli.janusgraphimporter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.mpolonioli.janusgraphimporter.core.JanusGraphImporter;
+
+/*
+ * loadEdges end to end on the inmemory backend; the vertices are reloaded
+ * on an empty graph before every iteration and are not measured
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class EdgeLoadBenchmark {
+
+	@Param({"20000"})
+	public int vertexCount;
+
+	@Param({"100000"})
+	public int edgeCount;
+
+	@Param({"1000", "20000"})
+	public int batchSize;
+
+	@Param({"1", "4"})
+	public int threadCount;
+
+	@Param({"false", "true"})
+	public boolean undirected;
+
+	private File dir;
+	private File vertexFile;
+	private File edgeFile;
+	private JanusGraphImporter importer;
+
+	@Setup(Level.Trial)
+	public void createFiles() throws IOException {
+		dir = Files.createTempDirectory("edge-load-benchmark").toFile();
+		vertexFile = BenchmarkData.writeVertexFile(dir, vertexCount, false);
+		edgeFile = BenchmarkData.writeEdgeFile(dir, vertexCount, edgeCount);
+		importer = new JanusGraphImporter(BenchmarkData.writeInMemoryConfiguration(dir).getPath());
+	}
+
+	@Setup(Level.Iteration)
+	public void loadVertices() throws Exception {
+		importer.clearGraph();
+		importer.defineSchema(
+				BenchmarkData.vertexLabels(),
+				BenchmarkData.edgeLabels(),
+				BenchmarkData.propertyKeys(),
+				BenchmarkData.propertyHasCardinality(false),
+				BenchmarkData.propertyHasType(),
+				BenchmarkData.propertiesWithIndex()
+				);
+		importer.loadVertices(
+				vertexFile,
+				false,
+				20000,
+				10,
+				4,
+				BenchmarkData.propertyHasType(),
+				BenchmarkData.propertyHasCardinality(false)
+				);
+	}
+
+	@Benchmark
+	public void loadEdges() throws Exception {
+		importer.loadEdges(
+				edgeFile,
+				BenchmarkData.edgeHasLabel(),
+				undirected,
+				false,
+				batchSize,
+				10,
+				threadCount,
+				BenchmarkData.propertyHasType()
+				);
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFiles() {
+		importer.closeConnection();
+		BenchmarkData.delete(dir);
+	}
+}
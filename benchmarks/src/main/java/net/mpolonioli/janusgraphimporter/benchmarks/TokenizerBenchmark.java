@@ -0,0 +1,91 @@
+package net.mpolonioli.janusgraphimporter.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.mpolonioli.janusgraphimporter.io.CsvRow;
+
+/*
+ * tokenizing vertex lines: CsvRow over a direct buffer, as the parse workers
+ * do on the mapped file, against String.split on the decoded line
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TokenizerBenchmark {
+
+	private static final int LINES = 1024;
+
+	@Param({"false", "true"})
+	public boolean listProperties;
+
+	private String[] lines = new String[LINES];
+	private ByteBuffer buffer;
+	private int[] lineStarts = new int[LINES];
+	private int[] lineEnds = new int[LINES];
+	private CsvRow row = new CsvRow();
+	private CsvRow values = new CsvRow(CsvRow.VALUE_SEPARATOR);
+
+	@Setup
+	public void createLines() {
+		Random random = new Random(42);
+		StringBuilder text = new StringBuilder();
+		for(int i = 0; i < LINES; i++)
+		{
+			lines[i] = BenchmarkData.vertexLine(random, i + 1, listProperties);
+			text.append(lines[i]).append('\n');
+		}
+		byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+		buffer = ByteBuffer.allocateDirect(bytes.length);
+		buffer.put(bytes);
+		int start = 0;
+		for(int i = 0; i < LINES; i++)
+		{
+			lineStarts[i] = start;
+			lineEnds[i] = start + lines[i].getBytes(StandardCharsets.UTF_8).length;
+			start = lineEnds[i] + 1;
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public void csvRow(Blackhole blackhole) {
+		for(int i = 0; i < LINES; i++)
+		{
+			row.reset(buffer, lineStarts[i], lineEnds[i]);
+			blackhole.consume(row.getLong(0));
+			values.reset(buffer, row.getStart(4), row.getEnd(4));
+			blackhole.consume(values.size());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public void stringSplit(Blackhole blackhole) {
+		for(int i = 0; i < LINES; i++)
+		{
+			String[] colVals = lines[i].split("\\|");
+			blackhole.consume(Long.parseLong(colVals[0]));
+			blackhole.consume(colVals[4].split(";").length);
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package net.mpolonioli.janusgraphimporter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.mpolonioli.janusgraphimporter.core.JanusGraphImporter;
+
+/*
+ * loadVertices end to end on the inmemory backend, one file per iteration
+ * on an empty graph
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class VertexLoadBenchmark {
+
+	@Param({"50000"})
+	public int vertexCount;
+
+	@Param({"1000", "20000"})
+	public int batchSize;
+
+	@Param({"1", "4"})
+	public int threadCount;
+
+	@Param({"false", "true"})
+	public boolean listProperties;
+
+	private File dir;
+	private File vertexFile;
+	private JanusGraphImporter importer;
+
+	@Setup(Level.Trial)
+	public void createFiles() throws IOException {
+		dir = Files.createTempDirectory("vertex-load-benchmark").toFile();
+		vertexFile = BenchmarkData.writeVertexFile(dir, vertexCount, listProperties);
+		importer = new JanusGraphImporter(BenchmarkData.writeInMemoryConfiguration(dir).getPath());
+	}
+
+	@Setup(Level.Iteration)
+	public void resetGraph() {
+		importer.clearGraph();
+		importer.defineSchema(
+				BenchmarkData.vertexLabels(),
+				BenchmarkData.edgeLabels(),
+				BenchmarkData.propertyKeys(),
+				BenchmarkData.propertyHasCardinality(listProperties),
+				BenchmarkData.propertyHasType(),
+				BenchmarkData.propertiesWithIndex()
+				);
+	}
+
+	@Benchmark
+	public void loadVertices() throws Exception {
+		importer.loadVertices(
+				vertexFile,
+				false,
+				batchSize,
+				10,
+				threadCount,
+				BenchmarkData.propertyHasType(),
+				BenchmarkData.propertyHasCardinality(listProperties)
+				);
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFiles() {
+		importer.closeConnection();
+		BenchmarkData.delete(dir);
+	}
+}
@@ -0,0 +1,67 @@
+package net.mpolonioli.janusgraphimporter.codec;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.janusgraph.core.attribute.Geoshape;
+
+import net.mpolonioli.janusgraphimporter.io.CsvRow;
+
+/*
+ * the PropertyCodec of every data type the importer can load.
+ *
+ * The numeric, boolean and date codecs are LongCodecs or DoubleCodecs, whose
+ * values are kept unboxed between the parse and the commit stage; a codec
+ * registered for another type is kept as objects.
+ *
+ * Comes with the codecs of the built-in types; register() adds a type or
+ * replaces the codec of one, e.g. to read dates with another pattern.
+ */
+public class CodecRegistry {
+
+	private Map<Class<?>, PropertyCodec> codecs = new ConcurrentHashMap<>();
+
+	public CodecRegistry()
+	{
+		register(String.class, (row, field) -> row.getString(field));
+		register(Boolean.class, LongCodec.of((row, field) -> row.getBoolean(field) ? 1 : 0, value -> value != 0));
+		register(Long.class, LongCodec.of(CsvRow::getLong, Long::valueOf));
+		register(Integer.class, LongCodec.of(CsvRow::getInt, value -> Integer.valueOf((int) value)));
+		register(Short.class, LongCodec.of((row, field) -> checkRange(row.getLong(field), Short.MIN_VALUE, Short.MAX_VALUE),
+				value -> Short.valueOf((short) value)));
+		register(Byte.class, LongCodec.of((row, field) -> checkRange(row.getLong(field), Byte.MIN_VALUE, Byte.MAX_VALUE),
+				value -> Byte.valueOf((byte) value)));
+		register(Double.class, DoubleCodec.of((row, field) -> Double.parseDouble(row.getString(field)), Double::valueOf));
+		register(Float.class, DoubleCodec.of((row, field) -> Float.parseFloat(row.getString(field)),
+				value -> Float.valueOf((float) value)));
+		register(UUID.class, (row, field) -> UUID.fromString(row.getString(field)));
+		register(Date.class, new DateCodec());
+		register(Geoshape.class, new GeoshapeCodec());
+	}
+
+	public void register(Class<?> dataType, PropertyCodec codec) {
+		codecs.put(dataType, codec);
+	}
+
+	/*
+	 * the codec of the given type, IllegalArgumentException if there is none
+	 */
+	public PropertyCodec get(Class<?> dataType) {
+		PropertyCodec codec = codecs.get(dataType);
+		if(codec == null)
+		{
+			throw new IllegalArgumentException("ERROR: no codec for data type " + dataType.getName());
+		}
+		return codec;
+	}
+
+	private static long checkRange(long value, long min, long max) {
+		if(value < min || value > max)
+		{
+			throw new NumberFormatException("Value out of range. Value:\"" + value + "\"");
+		}
+		return value;
+	}
+}
@@ -0,0 +1,102 @@
+package net.mpolonioli.janusgraphimporter.codec;
+
+import java.util.HashMap;
+
+import org.apache.tinkerpop.gremlin.structure.VertexProperty;
+import org.janusgraph.core.Cardinality;
+
+/*
+ * a column of a CSV header resolved, once per file, to its property name,
+ * codec and cardinality
+ */
+public class ColumnBinding {
+
+	private final String name;
+	private final PropertyCodec codec;
+	private final Cardinality cardinality;
+	private final VertexProperty.Cardinality vertexCardinality;
+	private final boolean property;
+
+	public ColumnBinding(String name, PropertyCodec codec, Cardinality cardinality)
+	{
+		this(name, codec, cardinality, true);
+	}
+
+	private ColumnBinding(String name, PropertyCodec codec, Cardinality cardinality, boolean property)
+	{
+		this.name = name;
+		this.codec = codec;
+		this.cardinality = cardinality;
+		this.vertexCardinality = cardinality.convert();
+		this.property = property;
+	}
+
+	/*
+	 * a column that drives the load, like the tombstone column of the upsert
+	 * mode, but is not loaded as a property
+	 */
+	public static ColumnBinding flag(String name, PropertyCodec codec) {
+		return new ColumnBinding(name, codec, Cardinality.SINGLE, false);
+	}
+
+	/*
+	 * bind the columns of the header from firstColumn on, the previous ones
+	 * are left null; propertyHasCardinality may be null (edge files), in
+	 * which case every column is SINGLE
+	 */
+	public static ColumnBinding[] resolve(
+			String[] colNames,
+			int firstColumn,
+			@SuppressWarnings("rawtypes") HashMap<String, Class> propertyHasType,
+			HashMap<String, Cardinality> propertyHasCardinality,
+			CodecRegistry registry)
+	{
+		ColumnBinding[] columns = new ColumnBinding[colNames.length];
+		for(int j = firstColumn; j < colNames.length; j++)
+		{
+			String propertyName = colNames[j];
+			Class<?> dataType = propertyHasType.get(propertyName);
+			if(dataType == null)
+			{
+				throw new IllegalArgumentException("ERROR: no data type for column " + propertyName);
+			}
+			Cardinality cardinality = Cardinality.SINGLE;
+			if(propertyHasCardinality != null && propertyHasCardinality.containsKey(propertyName))
+			{
+				cardinality = propertyHasCardinality.get(propertyName);
+			}
+			columns[j] = new ColumnBinding(propertyName, registry.get(dataType), cardinality);
+		}
+		return columns;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public PropertyCodec getCodec() {
+		return codec;
+	}
+
+	public Cardinality getCardinality() {
+		return cardinality;
+	}
+
+	public VertexProperty.Cardinality getVertexCardinality() {
+		return vertexCardinality;
+	}
+
+	/*
+	 * false for a flag column
+	 */
+	public boolean isProperty() {
+		return property;
+	}
+
+	/*
+	 * true if a field holds several values separated by ';'
+	 */
+	public boolean isMultiValued() {
+		return cardinality != Cardinality.SINGLE;
+	}
+}
@@ -0,0 +1,62 @@
+package net.mpolonioli.janusgraphimporter.codec;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.mpolonioli.janusgraphimporter.io.CsvRow;
+
+/*
+ * parses java.util.Date values with a java.time pattern, in UTC.
+ *
+ * A pattern without a time of day gives the start of the day. Formatters are
+ * immutable and cached by pattern, so the codec can be shared by any number
+ * of threads.
+ */
+public class DateCodec implements LongCodec {
+
+	public static final String DEFAULT_PATTERN = "yyyy-MM-dd";
+
+	private static final Map<String, DateTimeFormatter> FORMATTERS = new ConcurrentHashMap<>();
+
+	private final DateTimeFormatter formatter;
+
+	public DateCodec()
+	{
+		this(DEFAULT_PATTERN);
+	}
+
+	public DateCodec(String pattern)
+	{
+		this.formatter = FORMATTERS.computeIfAbsent(pattern,
+				p -> DateTimeFormatter.ofPattern(p).withZone(ZoneOffset.UTC));
+	}
+
+	/*
+	 * the date as milliseconds since the epoch
+	 */
+	@Override
+	public long decodeLong(CsvRow row, int field) {
+		return parse(row.getString(field)).toEpochMilli();
+	}
+
+	@Override
+	public Object box(long value) {
+		return new Date(value);
+	}
+
+	public Instant parse(String value) {
+		TemporalAccessor parsed = formatter.parse(value);
+		if(parsed.isSupported(ChronoField.INSTANT_SECONDS))
+		{
+			return Instant.from(parsed);
+		}
+		return LocalDate.from(parsed).atStartOfDay(ZoneOffset.UTC).toInstant();
+	}
+}
@@ -0,0 +1,40 @@
+package net.mpolonioli.janusgraphimporter.codec;
+
+import java.util.function.DoubleFunction;
+
+import net.mpolonioli.janusgraphimporter.io.CsvRow;
+
+/*
+ * a PropertyCodec of a floating point type: the parse stage keeps the
+ * values in double arrays and boxes them only when they are handed to
+ * JanusGraph
+ */
+public interface DoubleCodec extends PropertyCodec {
+
+	double decodeDouble(CsvRow row, int field);
+
+	Object box(double value);
+
+	@Override
+	default Object decode(CsvRow row, int field) {
+		return box(decodeDouble(row, field));
+	}
+
+	interface Decoder {
+		double decode(CsvRow row, int field);
+	}
+
+	static DoubleCodec of(Decoder decoder, DoubleFunction<Object> boxer) {
+		return new DoubleCodec() {
+			@Override
+			public double decodeDouble(CsvRow row, int field) {
+				return decoder.decode(row, field);
+			}
+
+			@Override
+			public Object box(double value) {
+				return boxer.apply(value);
+			}
+		};
+	}
+}
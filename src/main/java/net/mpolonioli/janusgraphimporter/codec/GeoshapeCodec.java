@@ -0,0 +1,38 @@
+package net.mpolonioli.janusgraphimporter.codec;
+
+import org.janusgraph.core.attribute.Geoshape;
+
+import net.mpolonioli.janusgraphimporter.io.CsvRow;
+
+/*
+ * parses Geoshape values written as comma separated degrees:
+ * "lat,lon" is a point, "lat,lon,radiusInKm" a circle and
+ * "southWestLat,southWestLon,northEastLat,northEastLon" a box
+ */
+public class GeoshapeCodec implements PropertyCodec {
+
+	@Override
+	public Object decode(CsvRow row, int field) {
+		return parse(row.getString(field));
+	}
+
+	public Geoshape parse(String value) {
+		String[] parts = value.split(",");
+		double[] coordinates = new double[parts.length];
+		for(int i = 0; i < parts.length; i++)
+		{
+			coordinates[i] = Double.parseDouble(parts[i].trim());
+		}
+		switch(coordinates.length)
+		{
+		case 2 :
+			return Geoshape.point(coordinates[0], coordinates[1]);
+		case 3 :
+			return Geoshape.circle(coordinates[0], coordinates[1], coordinates[2]);
+		case 4 :
+			return Geoshape.box(coordinates[0], coordinates[1], coordinates[2], coordinates[3]);
+		default :
+			throw new IllegalArgumentException("Not a geoshape: \"" + value + "\"");
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package net.mpolonioli.janusgraphimporter.codec;
+
+import java.util.function.LongFunction;
+
+import net.mpolonioli.janusgraphimporter.io.CsvRow;
+
+/*
+ * a PropertyCodec of a type that fits in a long: the parse stage keeps the
+ * values in long arrays and boxes them only when they are handed to
+ * JanusGraph
+ */
+public interface LongCodec extends PropertyCodec {
+
+	long decodeLong(CsvRow row, int field);
+
+	Object box(long value);
+
+	@Override
+	default Object decode(CsvRow row, int field) {
+		return box(decodeLong(row, field));
+	}
+
+	interface Decoder {
+		long decode(CsvRow row, int field);
+	}
+
+	static LongCodec of(Decoder decoder, LongFunction<Object> boxer) {
+		return new LongCodec() {
+			@Override
+			public long decodeLong(CsvRow row, int field) {
+				return decoder.decode(row, field);
+			}
+
+			@Override
+			public Object box(long value) {
+				return boxer.apply(value);
+			}
+		};
+	}
+}
@@ -0,0 +1,16 @@
+package net.mpolonioli.janusgraphimporter.codec;
+
+import net.mpolonioli.janusgraphimporter.io.CsvRow;
+
+/*
+ * converts a CSV field into the value of a property of a given data type.
+ *
+ * Codecs are shared by all the parse workers and must be thread-safe.
+ */
+public interface PropertyCodec {
+
+	/*
+	 * the value of the given non empty field of the row
+	 */
+	Object decode(CsvRow row, int field);
+}
@@ -0,0 +1,554 @@
+package net.mpolonioli.janusgraphimporter.convert;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+import org.janusgraph.core.Cardinality;
+
+import net.mpolonioli.janusgraphimporter.codec.CodecRegistry;
+import net.mpolonioli.janusgraphimporter.codec.ColumnBinding;
+import net.mpolonioli.janusgraphimporter.core.ColumnVector;
+import net.mpolonioli.janusgraphimporter.core.EdgeBatch;
+import net.mpolonioli.janusgraphimporter.core.VertexBatch;
+import net.mpolonioli.janusgraphimporter.dictionary.VertexIdDictionary;
+import net.mpolonioli.janusgraphimporter.io.CsvReader;
+import net.mpolonioli.janusgraphimporter.io.CsvReaders;
+import net.mpolonioli.janusgraphimporter.io.CsvRow;
+import net.mpolonioli.janusgraphimporter.io.CsvSorter;
+import net.mpolonioli.janusgraphimporter.io.LineChunk;
+
+/*
+ * converts vertex and edge CSV files into a GraphSON 1.0 adjacency list
+ * file, one vertex per line with its properties and its outgoing and
+ * incoming edges, as read by TinkerPop's GraphSONInputFormat for
+ * BulkLoaderVertexProgram.
+ *
+ * Every vertex and both ends of every edge are first written as records
+ * keyed by vertex key:
+ *
+ * key|V|label|properties
+ * key|o|label|edge id|other key|properties
+ * key|i|label|edge id|other key|properties
+ *
+ * and sorted by key with a CsvSorter, which bounds the memory and spills to
+ * disk. The ends whose key has no vertex are dropped, the others are sorted
+ * by edge id, and the edges left with both ends are sorted again with the
+ * vertices, by key, type and label; the type letters sort the vertex of a key
+ * before its incoming and then its outgoing edges. Each run of records of the
+ * same key becomes a line, written as the records are read, so that only a
+ * single vertex or edge is held in memory at a time.
+ *
+ * The vertex key is the GraphSON id (a number if it is one), so keys must be
+ * unique across the vertex files; edge endpoints are looked up by key as
+ * loadEdges does. GraphSON 1.0 has no types: dates are written as epoch
+ * milliseconds and the types not native to JSON as strings.
+ */
+public class GraphSONConverter {
+
+	private static final int READ_CHUNK_LINES = 4096;
+	// the record types, in the order of the final sort
+	private static final char VERTEX = 'V';
+	private static final char IN = 'i';
+	private static final char OUT = 'o';
+
+	private CodecRegistry codecRegistry;
+	private CsvSorter sorter;
+
+	private long nextId = 0;
+	private long vertices = 0;
+	private long edges = 0;
+	private long duplicateVertices = 0;
+	private long danglingEdges = 0;
+
+	public GraphSONConverter(CodecRegistry codecRegistry, CsvSorter sorter)
+	{
+		this.codecRegistry = codecRegistry;
+		this.sorter = sorter;
+	}
+
+	public void convert(
+			List<File> vertexFiles,
+			List<File> edgeFiles,
+			HashMap<String, String> edgeHasLabel,
+			boolean undirected,
+			@SuppressWarnings("rawtypes") HashMap<String, Class> propertyHasType,
+			HashMap<String, Cardinality> propertyHasCardinality,
+			File output
+			) throws IOException {
+
+		sorter.getTempDirectory().mkdirs();
+		File records = File.createTempFile("records-", ".csv", sorter.getTempDirectory());
+		File ends = File.createTempFile("ends-", ".csv", sorter.getTempDirectory());
+		File sorted = File.createTempFile("sorted-", ".csv", sorter.getTempDirectory());
+		try {
+			try(OutputStream out = new BufferedOutputStream(new FileOutputStream(records)))
+			{
+				write(out, "key|type|data\n");
+				for(File file : vertexFiles)
+				{
+					writeVertexRecords(file, propertyHasType, propertyHasCardinality, out);
+				}
+				for(File file : edgeFiles)
+				{
+					writeEdgeRecords(file, edgeHasLabel, undirected, propertyHasType, out);
+				}
+			}
+			sorter.sort(records, 0, sorted);
+			
+			// vertices back to records, the ends that have one to ends
+			try(OutputStream vertexOut = new BufferedOutputStream(new FileOutputStream(records));
+					OutputStream endOut = new BufferedOutputStream(new FileOutputStream(ends)))
+			{
+				write(vertexOut, "key|type|data\n");
+				write(endOut, "id|type|data\n");
+				splitRecords(sorted, vertexOut, endOut);
+			}
+			sorter.sort(ends, 0, sorted);
+			
+			// the edges with both ends, with the vertices
+			try(OutputStream out = new BufferedOutputStream(new FileOutputStream(records, true)))
+			{
+				pairEnds(sorted, out);
+			}
+			ends.delete();
+			sorter.sort(records, 0, 3, sorted);
+			records.delete();
+			writeAdjacency(sorted, output);
+		} finally {
+			records.delete();
+			ends.delete();
+			sorted.delete();
+		}
+		System.out.println(String.format(
+				"%d vertices, %d edges written to %s", vertices, edges, output));
+		if(duplicateVertices > 0)
+		{
+			System.out.println(duplicateVertices + " vertices with a key already used were dropped");
+		}
+		if(danglingEdges > 0)
+		{
+			System.out.println(danglingEdges + " edges with an end without a vertex were dropped");
+		}
+	}
+
+	private void writeVertexRecords(
+			File file,
+			@SuppressWarnings("rawtypes") HashMap<String, Class> propertyHasType,
+			HashMap<String, Cardinality> propertyHasCardinality,
+			OutputStream out
+			) throws IOException {
+
+		String label = CsvReaders.baseName(file);
+		try(CsvReader reader = CsvReaders.open(file))
+		{
+			ColumnBinding[] columns = ColumnBinding.resolve(
+					reader.getColNames(), 0, propertyHasType, propertyHasCardinality, codecRegistry);
+			VertexBatch batch = new VertexBatch(columns, label);
+			CsvRow row = new CsvRow();
+			StringBuilder record = new StringBuilder();
+			LineChunk chunk;
+			while((chunk = reader.nextChunk(READ_CHUNK_LINES)) != null)
+			{
+				batch.clear();
+				for(int i = 0; i < chunk.size(); i++)
+				{
+					row.reset(chunk.getBuffer(), chunk.getLineStart(i), chunk.getLineEnd(i));
+					if(!row.isBlank())
+					{
+						batch.add(row, i);
+					}
+				}
+				for(int r = 0; r < batch.size(); r++)
+				{
+					record.setLength(0);
+					record.append(batch.getKey(r)).append("|V|").append(label).append('|').append('{');
+					boolean first = true;
+					for(int j = 0; j < columns.length; j++)
+					{
+						ColumnVector values = batch.getVector(j);
+						if(values.count(r) == 0)
+						{
+							continue;
+						}
+						record.append(first ? "" : ",");
+						first = false;
+						appendString(record, columns[j].getName());
+						record.append(":[");
+						for(int v = 0; v < values.count(r); v++)
+						{
+							record.append(v == 0 ? "{\"id\":" : ",{\"id\":").append(nextId++).append(",\"value\":");
+							appendValue(record, values.get(r, v));
+							record.append('}');
+						}
+						record.append(']');
+					}
+					record.append("}\n");
+					write(out, record);
+				}
+			}
+		}
+	}
+
+	private void writeEdgeRecords(
+			File file,
+			HashMap<String, String> edgeHasLabel,
+			boolean undirected,
+			@SuppressWarnings("rawtypes") HashMap<String, Class> propertyHasType,
+			OutputStream out
+			) throws IOException {
+
+		String edgeName = CsvReaders.baseName(file);
+		String label = edgeHasLabel.containsKey(edgeName) ? edgeHasLabel.get(edgeName) : edgeName;
+		try(CsvReader reader = CsvReaders.open(file))
+		{
+			ColumnBinding[] columns = ColumnBinding.resolve(
+					reader.getColNames(), 2, propertyHasType, null, codecRegistry);
+			EdgeBatch batch = new EdgeBatch(columns);
+			CsvRow row = new CsvRow();
+			StringBuilder properties = new StringBuilder();
+			StringBuilder record = new StringBuilder();
+			LineChunk chunk;
+			while((chunk = reader.nextChunk(READ_CHUNK_LINES)) != null)
+			{
+				batch.clear();
+				for(int i = 0; i < chunk.size(); i++)
+				{
+					row.reset(chunk.getBuffer(), chunk.getLineStart(i), chunk.getLineEnd(i));
+					if(!row.isBlank())
+					{
+						batch.add(row, i);
+					}
+				}
+				for(int r = 0; r < batch.size(); r++)
+				{
+					properties.setLength(0);
+					properties.append('{');
+					boolean first = true;
+					for(int j = 2; j < columns.length; j++)
+					{
+						ColumnVector values = batch.getVector(j);
+						if(values.count(r) == 0)
+						{
+							continue;
+						}
+						properties.append(first ? "" : ",");
+						first = false;
+						appendString(properties, columns[j].getName());
+						properties.append(':');
+						appendValue(properties, values.get(r, 0));
+					}
+					properties.append('}');
+
+					record.setLength(0);
+					appendEdge(record, label, batch.getKeyValueV1(r), batch.getKeyValueV2(r), properties);
+					if(undirected)
+					{
+						appendEdge(record, label, batch.getKeyValueV2(r), batch.getKeyValueV1(r), properties);
+					}
+					write(out, record);
+				}
+			}
+		}
+	}
+
+	/*
+	 * the records of both ends of an edge
+	 */
+	private void appendEdge(StringBuilder record, String label, String outKey, String inKey, CharSequence properties) {
+		long id = nextId++;
+		record.append(outKey).append('|').append(OUT).append('|').append(label).append('|').append(id).append('|')
+			.append(inKey).append('|').append(properties).append('\n');
+		record.append(inKey).append('|').append(IN).append('|').append(label).append('|').append(id).append('|')
+			.append(outKey).append('|').append(properties).append('\n');
+	}
+
+	/*
+	 * write the vertex records to vertexOut and, for the keys that have a
+	 * vertex, the edge ends keyed by edge id to endOut, as
+	 * id|o or i|key|label|other key|properties. The vertices come before the
+	 * edges in the records file and the sort keeps the order, so the vertex
+	 * of a key, if any, is its first record.
+	 */
+	private void splitRecords(File sorted, OutputStream vertexOut, OutputStream endOut) throws IOException {
+		String[] key = { null };
+		boolean[] hasVertex = { false };
+		StringBuilder record = new StringBuilder();
+		forEachLine(sorted, (row, lineEnd) -> {
+			String recordKey = row.getString(0);
+			boolean sameKey = recordKey.equals(key[0]);
+			key[0] = recordKey;
+			char type = recordType(row);
+			if(type == VERTEX)
+			{
+				if(sameKey && hasVertex[0])
+				{
+					duplicateVertices++;
+					return;
+				}
+				hasVertex[0] = true;
+				write(vertexOut, row.getString(row.getStart(0), lineEnd) + "\n");
+			}
+			else
+			{
+				if(!sameKey)
+				{
+					hasVertex[0] = false;
+				}
+				if(!hasVertex[0])
+				{
+					return;
+				}
+				record.setLength(0);
+				record.append(row.getString(3)).append('|').append(type).append('|').append(recordKey).append('|')
+					.append(row.getString(2)).append('|').append(row.getString(row.getStart(4), lineEnd)).append('\n');
+				write(endOut, record);
+			}
+		});
+	}
+
+	/*
+	 * write the key records of both ends of the edges that kept both their
+	 * ends; the others have a missing vertex and are dropped
+	 */
+	private void pairEnds(File sorted, OutputStream out) throws IOException {
+		String[] id = { null };
+		// the outgoing end of the current edge, if seen, and whether the incoming one was
+		String[] outEnd = { null };
+		boolean[] inEnd = { false };
+		forEachLine(sorted, (row, lineEnd) -> {
+			String edgeId = row.getString(0);
+			if(!edgeId.equals(id[0]))
+			{
+				writeEdge(out, id[0], outEnd[0], inEnd[0]);
+				id[0] = edgeId;
+				outEnd[0] = null;
+				inEnd[0] = false;
+			}
+			if(recordType(row) == OUT)
+			{
+				// key|label|other key|properties
+				outEnd[0] = row.getString(row.getStart(2), lineEnd);
+			}
+			else
+			{
+				inEnd[0] = true;
+			}
+		});
+		writeEdge(out, id[0], outEnd[0], inEnd[0]);
+	}
+
+	private void writeEdge(OutputStream out, String id, String outEnd, boolean inEnd) throws IOException {
+		if(id == null)
+		{
+			return;
+		}
+		if(outEnd == null || !inEnd)
+		{
+			danglingEdges++;
+			return;
+		}
+		int keyEnd = outEnd.indexOf('|');
+		int labelEnd = outEnd.indexOf('|', keyEnd + 1);
+		int otherEnd = outEnd.indexOf('|', labelEnd + 1);
+		String outKey = outEnd.substring(0, keyEnd);
+		String label = outEnd.substring(keyEnd + 1, labelEnd);
+		String inKey = outEnd.substring(labelEnd + 1, otherEnd);
+		String properties = outEnd.substring(otherEnd + 1);
+		write(out, outKey + "|" + OUT + "|" + label + "|" + id + "|" + inKey + "|" + properties + "\n"
+				+ inKey + "|" + IN + "|" + label + "|" + id + "|" + outKey + "|" + properties + "\n");
+		edges++;
+	}
+
+	/*
+	 * turn every run of records of the same key into an adjacency line: the
+	 * vertex record opens the line, its properties are kept to close it, and
+	 * the edges are written as they come, grouped by direction and label
+	 */
+	private void writeAdjacency(File sorted, File output) throws IOException {
+		try(OutputStream out = new BufferedOutputStream(new FileOutputStream(output)))
+		{
+			String[] key = { null };
+			// the properties of the vertex of the line open, if any
+			String[] properties = { null };
+			// the type and label of the last edge written on the line
+			char[] direction = { 0 };
+			String[] label = { null };
+			StringBuilder text = new StringBuilder();
+			forEachLine(sorted, (row, lineEnd) -> {
+				String recordKey = row.getString(0);
+				text.setLength(0);
+				if(!recordKey.equals(key[0]))
+				{
+					closeVertex(text, properties[0], direction[0]);
+					key[0] = recordKey;
+					properties[0] = null;
+					direction[0] = 0;
+					label[0] = null;
+				}
+				char type = recordType(row);
+				if(type == VERTEX)
+				{
+					// key|V|label|properties
+					properties[0] = row.getString(row.getStart(3), lineEnd);
+					text.append("{\"id\":");
+					appendKey(text, recordKey);
+					text.append(",\"label\":");
+					appendString(text, row.getString(2));
+					vertices++;
+				}
+				else if(properties[0] != null)
+				{
+					String edgeLabel = row.getString(2);
+					if(type != direction[0])
+					{
+						text.append(direction[0] == 0 ? "" : "]}").append(type == OUT ? ",\"outE\":{" : ",\"inE\":{");
+						appendString(text, edgeLabel);
+						text.append(":[");
+					}
+					else if(!edgeLabel.equals(label[0]))
+					{
+						text.append("],");
+						appendString(text, edgeLabel);
+						text.append(":[");
+					}
+					else
+					{
+						text.append(',');
+					}
+					direction[0] = type;
+					label[0] = edgeLabel;
+					text.append("{\"id\":").append(row.getString(3)).append(type == OUT ? ",\"inV\":" : ",\"outV\":");
+					appendKey(text, row.getString(4));
+					text.append(",\"properties\":").append(row.getString(row.getStart(5), lineEnd)).append('}');
+				}
+				write(out, text);
+			});
+			text.setLength(0);
+			closeVertex(text, properties[0], direction[0]);
+			write(out, text);
+		}
+	}
+
+	/*
+	 * the end of the line of a vertex, after its edges
+	 */
+	private static void closeVertex(StringBuilder text, String properties, char direction) {
+		if(properties == null)
+		{
+			return;
+		}
+		text.append(direction == 0 ? "" : "]}").append(",\"properties\":").append(properties).append("}\n");
+	}
+
+	private interface LineHandler {
+		void line(CsvRow row, int lineEnd) throws IOException;
+	}
+
+	/*
+	 * hand the non blank data lines of an intermediate file to the handler
+	 */
+	private static void forEachLine(File file, LineHandler handler) throws IOException {
+		try(CsvReader reader = CsvReaders.open(file))
+		{
+			CsvRow row = new CsvRow();
+			LineChunk chunk;
+			while((chunk = reader.nextChunk(READ_CHUNK_LINES)) != null)
+			{
+				for(int i = 0; i < chunk.size(); i++)
+				{
+					row.reset(chunk.getBuffer(), chunk.getLineStart(i), chunk.getLineEnd(i));
+					if(!row.isBlank())
+					{
+						handler.line(row, chunk.getLineEnd(i));
+					}
+				}
+			}
+		}
+	}
+
+	private static char recordType(CsvRow row) {
+		return (char) row.getBuffer().get(row.getStart(1));
+	}
+
+	/*
+	 * a key is written as a number when it is one
+	 */
+	private static void appendKey(StringBuilder json, String key) {
+		if(VertexIdDictionary.isNumeric(key))
+		{
+			json.append(key);
+		}
+		else
+		{
+			appendString(json, key);
+		}
+	}
+
+	private static void appendValue(StringBuilder json, Object value) {
+		if(value instanceof Boolean || value instanceof Long || value instanceof Integer
+				|| value instanceof Short || value instanceof Byte)
+		{
+			json.append(value);
+		}
+		else if((value instanceof Double && Double.isFinite((Double) value))
+				|| (value instanceof Float && Float.isFinite((Float) value)))
+		{
+			json.append(value);
+		}
+		else if(value instanceof Date)
+		{
+			json.append(((Date) value).getTime());
+		}
+		else
+		{
+			appendString(json, String.valueOf(value));
+		}
+	}
+
+	private static void appendString(StringBuilder json, String value) {
+		json.append('"');
+		for(int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			switch(c)
+			{
+			case '"':
+				json.append("\\\"");
+				break;
+			case '\\':
+				json.append("\\\\");
+				break;
+			case '\n':
+				json.append("\\n");
+				break;
+			case '\r':
+				json.append("\\r");
+				break;
+			case '\t':
+				json.append("\\t");
+				break;
+			default:
+				if(c < 0x20)
+				{
+					json.append(String.format("\\u%04x", (int) c));
+				}
+				else
+				{
+					json.append(c);
+				}
+			}
+		}
+		json.append('"');
+	}
+
+	private static void write(OutputStream out, CharSequence text) throws IOException {
+		out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,155 @@
+package net.mpolonioli.janusgraphimporter.core;
+
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Gauge;
+
+import net.mpolonioli.janusgraphimporter.metrics.FileMetrics;
+
+/*
+ * tunes the chunk size and the number of active commit workers of a
+ * LoadPipeline while it runs.
+ *
+ * Once every window the controller compares the throughput (vertices or
+ * edges written per second) of the window with the one before. When the
+ * commits fail too often or take too long, it halves the chunk size and
+ * drops a worker. Otherwise it hill climbs, one dimension per window: the
+ * last move is kept going if the throughput did not drop, and reversed if it
+ * did. The decisions are printed at most once every reportMillis.
+ */
+public class AdaptiveController {
+
+	// throughput drop below which a move is considered neutral
+	private static final double TOLERANCE = 0.05;
+	private static final double CHUNK_STEP = 1.25;
+
+	private AdaptiveSettings settings;
+	private LoadPipeline<?> pipeline;
+	private FileMetrics metrics;
+	private int maxWorkers;
+	private long reportMillis;
+
+	private volatile int chunkSize;
+	private volatile int workers;
+
+	private long windowStart;
+	private long lastWritten;
+	private long lastCommits;
+	private long lastCommitNanos;
+	private long lastReport;
+	private long lastFailures;
+	private double lastThroughput = -1;
+	private boolean tuneChunkSize = true;
+	private int chunkDirection = 1;
+	private int workerDirection = 1;
+
+	public AdaptiveController(AdaptiveSettings settings, LoadPipeline<?> pipeline, int chunkSize, int maxWorkers,
+			long reportMillis)
+	{
+		this.settings = settings;
+		this.pipeline = pipeline;
+		this.metrics = pipeline.getMetrics();
+		this.maxWorkers = maxWorkers;
+		this.reportMillis = reportMillis;
+		this.chunkSize = clamp(chunkSize, settings.getMinChunkSize(), settings.getMaxChunkSize());
+		this.workers = maxWorkers;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public int getWorkers() {
+		return workers;
+	}
+
+	void start() {
+		windowStart = System.currentTimeMillis();
+		lastReport = windowStart;
+		lastWritten = metrics.written().getCount();
+		lastCommits = metrics.commits().getCount();
+		lastCommitNanos = metrics.commitNanos().getCount();
+		lastFailures = metrics.commitFailures().getCount();
+		metrics.registerGauge("adaptive.chunk.size", (Gauge<Integer>) this::getChunkSize);
+		metrics.registerGauge("adaptive.workers", (Gauge<Integer>) this::getWorkers);
+	}
+
+	/*
+	 * called after every commit, decides once the window is over
+	 */
+	synchronized void chunkCommitted() {
+		long now = System.currentTimeMillis();
+		long elapsed = now - windowStart;
+		if(elapsed < settings.getWindowMillis())
+		{
+			return;
+		}
+		long written = metrics.written().getCount();
+		long commitNanos = metrics.commitNanos().getCount();
+		long commits = metrics.commits().getCount();
+		long failures = metrics.commitFailures().getCount();
+		double throughput = (written - lastWritten) * 1000.0 / elapsed;
+		boolean backOff;
+		long attempts = (commits - lastCommits) + (failures - lastFailures);
+		double failureRate = attempts == 0 ? 0 : (double) (failures - lastFailures) / attempts;
+		// mean commit time of the window
+		long windowCommits = commits - lastCommits;
+		long commitMillis = windowCommits == 0 ? 0 :
+			TimeUnit.NANOSECONDS.toMillis((commitNanos - lastCommitNanos) / windowCommits);
+
+		backOff = failureRate > settings.getMaxFailureRate() || commitMillis > settings.getMaxCommitMillis();
+		if(backOff)
+		{
+			chunkSize = clamp(chunkSize / 2, settings.getMinChunkSize(), settings.getMaxChunkSize());
+			workers = clamp(workers - 1, settings.getMinWorkers(), maxWorkers);
+			chunkDirection = -1;
+			workerDirection = -1;
+		}
+		else
+		{
+			if(lastThroughput >= 0 && throughput < lastThroughput * (1 - TOLERANCE))
+			{
+				// the move made at the end of the last window hurt, go the
+				// other way the next time that dimension is tuned
+				if(tuneChunkSize)
+				{
+					workerDirection = -workerDirection;
+				}
+				else
+				{
+					chunkDirection = -chunkDirection;
+				}
+			}
+			if(tuneChunkSize)
+			{
+				int next = (int) (chunkDirection > 0 ? chunkSize * CHUNK_STEP : chunkSize / CHUNK_STEP);
+				chunkSize = clamp(next, settings.getMinChunkSize(), settings.getMaxChunkSize());
+			}
+			else
+			{
+				workers = clamp(workers + workerDirection, settings.getMinWorkers(), maxWorkers);
+			}
+			tuneChunkSize = !tuneChunkSize;
+		}
+		pipeline.setActiveLoaders(workers);
+		if(now - lastReport >= reportMillis)
+		{
+			System.out.println(String.format(
+					"%s: %.0f/s, %.1f%% commits failed, %d ms per commit, chunk size %d, %d workers",
+					pipeline.getName(), throughput, failureRate * 100, commitMillis, chunkSize, workers));
+			lastReport = now;
+		}
+
+		// after a back off the next window starts a new comparison
+		lastThroughput = backOff ? -1 : throughput;
+		windowStart = now;
+		lastWritten = written;
+		lastCommits = commits;
+		lastCommitNanos = commitNanos;
+		lastFailures = failures;
+	}
+
+	private static int clamp(int value, int min, int max) {
+		return Math.max(min, Math.min(max, value));
+	}
+}
@@ -0,0 +1,63 @@
+package net.mpolonioli.janusgraphimporter.core;
+
+/*
+ * the bounds and targets of the AdaptiveController of a load
+ */
+public class AdaptiveSettings {
+
+	public static final AdaptiveSettings DEFAULT = new AdaptiveSettings(100, 50000, 1, 0.05, 10000, 10000);
+
+	private final int minChunkSize;
+	private final int maxChunkSize;
+	private final int minWorkers;
+	private final double maxFailureRate;
+	private final long maxCommitMillis;
+	private final long windowMillis;
+
+	/*
+	 * chunk sizes (rows per transaction) within [minChunkSize, maxChunkSize],
+	 * at least minWorkers commit workers (at most the threadCount of the
+	 * load), backing off when more than maxFailureRate of the commits fail or
+	 * they take more than maxCommitMillis on average over the window,
+	 * deciding once every windowMillis
+	 */
+	public AdaptiveSettings(
+			int minChunkSize,
+			int maxChunkSize,
+			int minWorkers,
+			double maxFailureRate,
+			long maxCommitMillis,
+			long windowMillis)
+	{
+		this.minChunkSize = minChunkSize;
+		this.maxChunkSize = maxChunkSize;
+		this.minWorkers = minWorkers;
+		this.maxFailureRate = maxFailureRate;
+		this.maxCommitMillis = maxCommitMillis;
+		this.windowMillis = windowMillis;
+	}
+
+	public int getMinChunkSize() {
+		return minChunkSize;
+	}
+
+	public int getMaxChunkSize() {
+		return maxChunkSize;
+	}
+
+	public int getMinWorkers() {
+		return minWorkers;
+	}
+
+	public double getMaxFailureRate() {
+		return maxFailureRate;
+	}
+
+	public long getMaxCommitMillis() {
+		return maxCommitMillis;
+	}
+
+	public long getWindowMillis() {
+		return windowMillis;
+	}
+}
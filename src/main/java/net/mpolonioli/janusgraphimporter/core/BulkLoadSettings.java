@@ -0,0 +1,75 @@
+package net.mpolonioli.janusgraphimporter.core;
+
+import java.util.Iterator;
+
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.janusgraph.core.TransactionBuilder;
+
+/*
+ * the graph and transaction settings of the bulk load mode of
+ * JanusGraphImporter.
+ *
+ * The graph is opened with storage.batch-loading, which turns off locking
+ * and the consistency checks of the storage backend, a larger
+ * storage.buffer-size and a larger ids.block-size (ids.block-size is a
+ * GLOBAL_OFFLINE option: it only takes effect when the graph is created by
+ * this open, otherwise the stored value is kept). The transactions skip the
+ * internal consistency and vertex existence checks and get a vertex cache
+ * sized for a whole chunk.
+ */
+public class BulkLoadSettings {
+
+	public static final BulkLoadSettings DEFAULT = new BulkLoadSettings(1000000, 16384, 100000);
+
+	private final int idBlockSize;
+	private final int bufferSize;
+	private final int vertexCacheSize;
+
+	public BulkLoadSettings(int idBlockSize, int bufferSize, int vertexCacheSize)
+	{
+		this.idBlockSize = idBlockSize;
+		this.bufferSize = bufferSize;
+		this.vertexCacheSize = vertexCacheSize;
+	}
+
+	public int getIdBlockSize() {
+		return idBlockSize;
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public int getVertexCacheSize() {
+		return vertexCacheSize;
+	}
+
+	/*
+	 * a copy of the given graph configuration with the bulk load settings
+	 */
+	public Configuration configure(Configuration base) {
+		Configuration configuration = new BaseConfiguration();
+		for(Iterator<String> keys = base.getKeys(); keys.hasNext(); )
+		{
+			String key = keys.next();
+			configuration.setProperty(key, base.getProperty(key));
+		}
+		configuration.setProperty("storage.batch-loading", true);
+		configuration.setProperty("storage.buffer-size", bufferSize);
+		configuration.setProperty("ids.block-size", idBlockSize);
+		return configuration;
+	}
+
+	/*
+	 * apply the bulk load settings to a transaction
+	 */
+	public TransactionBuilder tune(TransactionBuilder builder) {
+		return builder
+				.enableBatchLoading()
+				.consistencyChecks(false)
+				.checkInternalVertexExistence(false)
+				.vertexCacheSize(vertexCacheSize)
+				.dirtyVertexSize(vertexCacheSize);
+	}
+}
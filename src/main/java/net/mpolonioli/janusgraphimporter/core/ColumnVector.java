@@ -0,0 +1,142 @@
+package net.mpolonioli.janusgraphimporter.core;
+
+import java.util.Arrays;
+
+import net.mpolonioli.janusgraphimporter.codec.ColumnBinding;
+import net.mpolonioli.janusgraphimporter.codec.DoubleCodec;
+import net.mpolonioli.janusgraphimporter.codec.LongCodec;
+import net.mpolonioli.janusgraphimporter.codec.PropertyCodec;
+import net.mpolonioli.janusgraphimporter.io.CsvRow;
+
+/*
+ * the values of a column for all the rows of a RowBatch.
+ *
+ * The values of row r are values [offsets[r], offsets[r + 1]): none for an
+ * empty field, one for a SINGLE column, any number for a multi-valued one.
+ * They are kept in a long[] or a double[] when the codec of the column is a
+ * LongCodec or a DoubleCodec, boxed only by get(), and in an Object[]
+ * otherwise. The arrays only grow, so a reused vector allocates nothing.
+ */
+public class ColumnVector {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final ColumnBinding column;
+	private final PropertyCodec codec;
+	private final LongCodec longCodec;
+	private final DoubleCodec doubleCodec;
+
+	private long[] longs;
+	private double[] doubles;
+	private Object[] objects;
+	private int[] offsets = new int[INITIAL_CAPACITY + 1];
+	private int valueCount = 0;
+
+	public ColumnVector(ColumnBinding column)
+	{
+		this.column = column;
+		this.codec = column.getCodec();
+		this.longCodec = codec instanceof LongCodec ? (LongCodec) codec : null;
+		this.doubleCodec = codec instanceof DoubleCodec ? (DoubleCodec) codec : null;
+		if(longCodec != null)
+		{
+			longs = new long[INITIAL_CAPACITY];
+		}
+		else if(doubleCodec != null)
+		{
+			doubles = new double[INITIAL_CAPACITY];
+		}
+		else
+		{
+			objects = new Object[INITIAL_CAPACITY];
+		}
+	}
+
+	public ColumnBinding getColumn() {
+		return column;
+	}
+
+	/*
+	 * drop the values of all the rows
+	 */
+	void clear() {
+		if(objects != null)
+		{
+			// no reference to the values of the last batch is kept
+			Arrays.fill(objects, 0, valueCount, null);
+		}
+		valueCount = 0;
+	}
+
+	/*
+	 * start the values of the given row, dropping any value added by a
+	 * previous attempt to parse it
+	 */
+	void startRow(int row) {
+		if(row + 1 >= offsets.length)
+		{
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		}
+		valueCount = offsets[row];
+	}
+
+	/*
+	 * add the value of the given non empty field to the current row
+	 */
+	void add(CsvRow fields, int field) {
+		if(longCodec != null)
+		{
+			long value = longCodec.decodeLong(fields, field);
+			if(valueCount == longs.length)
+			{
+				longs = Arrays.copyOf(longs, longs.length * 2);
+			}
+			longs[valueCount++] = value;
+		}
+		else if(doubleCodec != null)
+		{
+			double value = doubleCodec.decodeDouble(fields, field);
+			if(valueCount == doubles.length)
+			{
+				doubles = Arrays.copyOf(doubles, doubles.length * 2);
+			}
+			doubles[valueCount++] = value;
+		}
+		else
+		{
+			Object value = codec.decode(fields, field);
+			if(valueCount == objects.length)
+			{
+				objects = Arrays.copyOf(objects, objects.length * 2);
+			}
+			objects[valueCount++] = value;
+		}
+	}
+
+	void endRow(int row) {
+		offsets[row + 1] = valueCount;
+	}
+
+	/*
+	 * the number of values of the row
+	 */
+	public int count(int row) {
+		return offsets[row + 1] - offsets[row];
+	}
+
+	/*
+	 * the i-th value of the row, boxed
+	 */
+	public Object get(int row, int i) {
+		int index = offsets[row] + i;
+		if(longCodec != null)
+		{
+			return longCodec.box(longs[index]);
+		}
+		if(doubleCodec != null)
+		{
+			return doubleCodec.box(doubles[index]);
+		}
+		return objects[index];
+	}
+}
@@ -0,0 +1,129 @@
+package net.mpolonioli.janusgraphimporter.core;
+
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.janusgraph.core.schema.JanusGraphManagement.IndexJobFuture;
+import org.janusgraph.core.schema.SchemaAction;
+import org.janusgraph.core.schema.SchemaStatus;
+import org.janusgraph.diskstorage.keycolumnvalue.scan.ScanMetrics;
+import org.janusgraph.graphdb.database.management.ManagementSystem;
+import org.janusgraph.graphdb.olap.job.IndexRepairJob;
+
+/*
+ * builds composite indexes over the data already in the graph.
+ *
+ * The indexes are created together and, once registered, a REINDEX job is
+ * started for every one of them at once: each job is a local JanusGraph
+ * scan of the whole graph run by its own pool of threads, so the indexes are
+ * filled in parallel. The records added by the jobs are reported every
+ * progReportPeriod seconds. A REINDEX job enables its index when it is
+ * done; build() returns once all the indexes are ENABLED.
+ */
+public class DeferredIndexBuilder {
+
+	private static final long POLL_MILLIS = 1000;
+	private static final long STATUS_TIMEOUT_MINUTES = 10;
+
+	private JanusGraph graph;
+	private long progReportPeriod;
+	// index name -> property key
+	private Map<String, String> indexes = new LinkedHashMap<>();
+
+	public DeferredIndexBuilder(JanusGraph graph, long progReportPeriod)
+	{
+		this.graph = graph;
+		this.progReportPeriod = progReportPeriod;
+	}
+
+	public void add(String indexName, String propertyKey) {
+		indexes.put(indexName, propertyKey);
+	}
+
+	public boolean isEmpty() {
+		return indexes.isEmpty();
+	}
+
+	public void build() throws InterruptedException, ExecutionException {
+
+		// create the indexes missing, they start INSTALLED
+		JanusGraphManagement mgmt = graph.openManagement();
+		for(Map.Entry<String, String> index : indexes.entrySet())
+		{
+			if(!mgmt.containsGraphIndex(index.getKey()))
+			{
+				System.out.print(index.getKey() + " ");
+				mgmt.buildIndex(index.getKey(), Vertex.class).addKey(mgmt.getPropertyKey(index.getValue())).buildCompositeIndex();
+			}
+		}
+		mgmt.commit();
+		System.out.println();
+		awaitStatus(SchemaStatus.REGISTERED);
+
+		// fill them all at once
+		mgmt = graph.openManagement();
+		Map<String, IndexJobFuture> jobs = new LinkedHashMap<>();
+		for(String indexName : indexes.keySet())
+		{
+			jobs.put(indexName, mgmt.updateIndex(mgmt.getGraphIndex(indexName), SchemaAction.REINDEX));
+		}
+		try {
+			long startTime = System.currentTimeMillis();
+			long nextProgReportTime = startTime + progReportPeriod*1000;
+			while(!isDone(jobs))
+			{
+				Thread.sleep(POLL_MILLIS);
+				if(System.currentTimeMillis() > nextProgReportTime)
+				{
+					long timeElapsed = System.currentTimeMillis() - startTime;
+					System.out.println(String.format("Reindexing, time elapsed: %d seconds", timeElapsed / 1000));
+					for(Map.Entry<String, IndexJobFuture> job : jobs.entrySet())
+					{
+						ScanMetrics metrics = job.getValue().getIntermediateResult();
+						System.out.println(String.format("\t%s: %d records added%s", job.getKey(),
+								metrics == null ? 0 : metrics.getCustom(IndexRepairJob.ADDED_RECORDS_COUNT),
+								job.getValue().isDone() ? ", done" : ""));
+					}
+					nextProgReportTime += progReportPeriod*1000;
+				}
+			}
+			for(Map.Entry<String, IndexJobFuture> job : jobs.entrySet())
+			{
+				ScanMetrics metrics = job.getValue().get();
+				System.out.println(String.format("%s reindexed: %d records added, %d failures", job.getKey(),
+						metrics.getCustom(IndexRepairJob.ADDED_RECORDS_COUNT), metrics.get(ScanMetrics.Metric.FAILURE)));
+			}
+		} catch (InterruptedException | ExecutionException | RuntimeException e) {
+			mgmt.rollback();
+			throw e;
+		}
+		mgmt.commit();
+		awaitStatus(SchemaStatus.ENABLED);
+	}
+
+	private static boolean isDone(Map<String, IndexJobFuture> jobs) {
+		for(IndexJobFuture job : jobs.values())
+		{
+			if(!job.isDone())
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void awaitStatus(SchemaStatus status) throws InterruptedException {
+		for(String indexName : indexes.keySet())
+		{
+			ManagementSystem.awaitGraphIndexStatus(graph, indexName)
+					.status(status)
+					.timeout(STATUS_TIMEOUT_MINUTES, ChronoUnit.MINUTES)
+					.call();
+		}
+	}
+}
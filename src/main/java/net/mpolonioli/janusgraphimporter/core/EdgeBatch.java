@@ -0,0 +1,81 @@
+package net.mpolonioli.janusgraphimporter.core;
+
+import java.util.Arrays;
+
+import net.mpolonioli.janusgraphimporter.codec.ColumnBinding;
+import net.mpolonioli.janusgraphimporter.io.CsvRow;
+
+/*
+ * a batch of parsed edge lines: the key values of the two endpoints and the
+ * values of the edge properties of every row
+ */
+public class EdgeBatch extends RowBatch {
+
+	private String[] keysV1 = new String[64];
+	private String[] keysV2 = new String[64];
+
+	/*
+	 * the first two columns are the endpoint keys and need no binding; when
+	 * bound, their typed values are parsed too, for the bulk lookups of the
+	 * endpoints
+	 */
+	public EdgeBatch(ColumnBinding[] columns)
+	{
+		super(columns);
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(keysV1, 0, size(), null);
+		Arrays.fill(keysV2, 0, size(), null);
+		super.clear();
+	}
+
+	@Override
+	protected void parseRow(CsvRow row, int index) {
+		if(index == keysV1.length)
+		{
+			keysV1 = Arrays.copyOf(keysV1, index * 2);
+			keysV2 = Arrays.copyOf(keysV2, index * 2);
+		}
+		for(int j = 0; j < 2; j++)
+		{
+			if(vectors[j] != null && !row.isEmpty(j))
+			{
+				vectors[j].add(row, j);
+			}
+		}
+		// add the properties to the edge if exists
+		for (int j = 2; j < row.size(); ++j) {
+			if(!row.isEmpty(j))
+			{
+				vectors[j].add(row, j);
+			}
+		}
+		keysV1[index] = row.getString(0);
+		keysV2[index] = row.getString(1);
+	}
+
+	public String getKeyValueV1(int row) {
+		return keysV1[row];
+	}
+
+	public String getKeyValueV2(int row) {
+		return keysV2[row];
+	}
+
+	/*
+	 * the length of the key/values of the edge properties of the row
+	 */
+	public int keyValueCount(int row) {
+		return 2 * singleCount(row, 2);
+	}
+
+	/*
+	 * write the key/values of the edge properties of the row to keyValues
+	 * from offset; returns the offset after them
+	 */
+	public int keyValues(int row, Object[] keyValues, int offset) {
+		return singleKeyValues(row, 2, keyValues, offset);
+	}
+}
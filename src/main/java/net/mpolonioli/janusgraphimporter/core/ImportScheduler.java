@@ -0,0 +1,193 @@
+package net.mpolonioli.janusgraphimporter.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * runs the loads of many files concurrently within a budget of commit
+ * threads and of memory.
+ *
+ * A load starts once the loads it depends on are over (the vertex files of
+ * the endpoints of an edge file) and there is room for it in the budgets;
+ * among the loads that can start the largest file goes first, so that the
+ * long loads do not end up running alone at the end of the job. A load that
+ * does not fit the budgets on its own still runs, alone.
+ */
+public class ImportScheduler {
+
+	/*
+	 * the load of a single file
+	 */
+	public interface FileLoad {
+
+		void load() throws Exception;
+	}
+
+	private static class Task {
+
+		private final String name;
+		private final long size;
+		private final Collection<String> dependencies;
+		private final int threads;
+		private final long memory;
+		private final FileLoad load;
+
+		Task(String name, long size, Collection<String> dependencies, int threads, long memory, FileLoad load)
+		{
+			this.name = name;
+			this.size = size;
+			this.dependencies = dependencies;
+			this.threads = threads;
+			this.memory = memory;
+			this.load = load;
+		}
+	}
+
+	private int threadBudget;
+	private long memoryBudget;
+
+	private List<Task> pending = new ArrayList<>();
+	private Set<String> done = new HashSet<>();
+	private int runningTasks = 0;
+	private int usedThreads = 0;
+	private long usedMemory = 0;
+	private Exception failure = null;
+
+	public ImportScheduler(int threadBudget, long memoryBudget)
+	{
+		this.threadBudget = threadBudget;
+		this.memoryBudget = memoryBudget;
+	}
+
+	/*
+	 * add the load of a file of the given size, which needs the given number
+	 * of commit threads and bytes of memory and may only start once the
+	 * loads named in dependencies are over
+	 */
+	public synchronized void add(String name, long size, Collection<String> dependencies, int threads, long memory, FileLoad load) {
+		Task task = new Task(name, size, dependencies, threads, memory, load);
+		int i = 0;
+		while(i < pending.size() && pending.get(i).size >= size)
+		{
+			i++;
+		}
+		pending.add(i, task);
+	}
+
+	/*
+	 * run all the loads, returns once they are over; after the first failure
+	 * no more loads are started and the failure is rethrown once the running
+	 * ones are over
+	 */
+	public void run() throws Exception {
+		checkDependencies();
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			synchronized(this)
+			{
+				while(runningTasks > 0 || (failure == null && !pending.isEmpty()))
+				{
+					Task task = failure == null ? nextTask() : null;
+					if(task != null)
+					{
+						start(executor, task);
+					}
+					else
+					{
+						wait();
+					}
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+		if(failure != null)
+		{
+			throw failure;
+		}
+	}
+
+	/*
+	 * the largest pending task whose dependencies are done and which fits the
+	 * budgets, null if there is none
+	 */
+	private Task nextTask() {
+		for(Task task : pending)
+		{
+			if(!done.containsAll(task.dependencies))
+			{
+				continue;
+			}
+			if(runningTasks == 0 ||
+					(usedThreads + task.threads <= threadBudget && usedMemory + task.memory <= memoryBudget))
+			{
+				return task;
+			}
+		}
+		return null;
+	}
+
+	private void start(ExecutorService executor, Task task) {
+		pending.remove(task);
+		runningTasks++;
+		usedThreads += task.threads;
+		usedMemory += task.memory;
+		System.out.println("Starting " + task.name);
+		executor.execute(() -> {
+			Exception error = null;
+			try {
+				task.load.load();
+			} catch (Exception e) {
+				error = e;
+			} catch (Throwable e) {
+				// an Error must still release the budgets and fail run()
+				error = new RuntimeException("ERROR: " + task.name + " failed with " + e, e);
+			} finally {
+				finished(task, error);
+			}
+		});
+	}
+
+	private synchronized void finished(Task task, Exception error) {
+		runningTasks--;
+		usedThreads -= task.threads;
+		usedMemory -= task.memory;
+		if(error == null)
+		{
+			done.add(task.name);
+			System.out.println("Finished " + task.name);
+		}
+		else if(failure == null)
+		{
+			failure = error;
+		}
+		notifyAll();
+	}
+
+	/*
+	 * every dependency must be the name of a load
+	 */
+	private synchronized void checkDependencies() {
+		Set<String> names = new HashSet<>();
+		for(Task task : pending)
+		{
+			names.add(task.name);
+		}
+		for(Task task : pending)
+		{
+			for(String dependency : task.dependencies)
+			{
+				if(!names.contains(dependency))
+				{
+					throw new IllegalArgumentException(
+							"ERROR: " + task.name + " depends on " + dependency + ", which is not loaded");
+				}
+			}
+		}
+	}
+}
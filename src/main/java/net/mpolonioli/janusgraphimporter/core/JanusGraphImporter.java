@@ -2,11 +2,20 @@ package net.mpolonioli.janusgraphimporter.core;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.commons.configuration.Configuration;
 import org.apache.tinkerpop.gremlin.structure.Vertex;
 import org.janusgraph.core.Cardinality;
 import org.janusgraph.core.JanusGraph;
@@ -14,15 +23,78 @@ import org.janusgraph.core.JanusGraphFactory;
 import org.janusgraph.core.Multiplicity;
 import org.janusgraph.core.PropertyKey;
 import org.janusgraph.core.schema.JanusGraphManagement;
+import org.janusgraph.core.schema.SchemaStatus;
+
+import com.codahale.metrics.Counter;
+
+import net.mpolonioli.janusgraphimporter.codec.CodecRegistry;
+import net.mpolonioli.janusgraphimporter.codec.ColumnBinding;
+import net.mpolonioli.janusgraphimporter.convert.GraphSONConverter;
+import net.mpolonioli.janusgraphimporter.dictionary.EdgeBloomFilter;
+import net.mpolonioli.janusgraphimporter.dictionary.KeyIdDictionary;
+import net.mpolonioli.janusgraphimporter.dictionary.MappedVertexIdDictionary;
+import net.mpolonioli.janusgraphimporter.dictionary.VertexIdDictionary;
+import net.mpolonioli.janusgraphimporter.dictionary.VertexIdMapper;
+import net.mpolonioli.janusgraphimporter.io.CsvReader;
+import net.mpolonioli.janusgraphimporter.io.CsvReaders;
+import net.mpolonioli.janusgraphimporter.io.CsvSorter;
+import net.mpolonioli.janusgraphimporter.io.DeadLetterWriter;
+import net.mpolonioli.janusgraphimporter.io.LineChunk;
+import net.mpolonioli.janusgraphimporter.journal.ImportJournal;
+import net.mpolonioli.janusgraphimporter.metrics.ImportMetrics;
+import net.mpolonioli.janusgraphimporter.scan.FileStatistics;
+import net.mpolonioli.janusgraphimporter.scan.PreScanner;
+import net.mpolonioli.janusgraphimporter.scan.ScanReport;
 
 public class JanusGraphImporter {
 	
-	private static final long TX_MAX_RETRIES = 1000;
+	private static final int QUEUE_CHUNKS_PER_THREAD = 2;
+	// heap taken by a parsed row, relative to the size of its line
+	private static final int ROW_MEMORY_FACTOR = 4;
+	private static final int SAMPLE_LINES = 1000;
+	// presize the heap dictionaries for at most 16M keys (2 x 256 MB of
+	// numeric table), larger ones grow as they fill
+	private static final int MAX_DICTIONARY_PRESIZE = 1 << 24;
+	private static final long DEFAULT_MAPPED_DICTIONARY_SIZE = 1 << 20;
 	private static JanusGraph graph;
+	private static Configuration configuration;
+	
+	private int parseThreadCount = 0;
+	private boolean useKeyIdDictionary = true;
+	private CodecRegistry codecRegistry = new CodecRegistry();
+	private ImportMetrics metrics = new ImportMetrics();
+	private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+	private File deadLetterDirectory = null;
+	private File journalDirectory = null;
+	private BulkLoadSettings bulkLoadSettings = null;
+	private CsvSorter edgeSorter = null;
+	private int edgeSortColumn = 0;
+	private AdaptiveSettings adaptiveSettings = null;
+	private WriteThrottle writeThrottle = new WriteThrottle(0, 0);
+	private VertexIdMapper vertexIdMapper = null;
+	private EdgeBloomFilter edgeFilter = null;
+	// the edge labels declared by defineSchema since the edge filter was set, all their edges go through it
+	private Set<String> filteredEdgeLabels = ConcurrentHashMap.newKeySet();
+	private boolean upsert = false;
+	private String tombstoneColumn = null;
+	// null unless the indexes not needed by the load are deferred
+	private List<String> endpointKeys = null;
+	// null unless the keys are scoped by vertex label
+	private HashMap<String, String> vertexHasKey = null;
+	private HashMap<String, String[]> edgeHasEndpointLabels = null;
+	private int endpointKeysPerQuery = 0;
+	
+	// key namespace (the key property name, see VertexIdMapper.namespace) -> key -> id
+	// of the vertices loaded by this importer
+	private Map<String, KeyIdDictionary> keyIdDictionaries = new ConcurrentHashMap<>();
+	// null to keep the dictionaries on the heap
+	private File dictionaryDirectory = null;
+	private int hotKeyCacheSize = 0;
 	
 	public JanusGraphImporter(String conf)
 	{
 		graph = JanusGraphFactory.open(conf);
+		configuration = graph.configuration();
 	}
 	
 	/*
@@ -40,39 +112,98 @@ public class JanusGraphImporter {
 		
 		openConnection();
 		
-		JanusGraphManagement mgmt;
+		// in bulk load mode the whole schema is defined in one management transaction
+		boolean singleManagement = bulkLoadSettings != null;
+		JanusGraphManagement mgmt = singleManagement ? graph.openManagement() : null;
 		
 		// Declare all vertex labels
 		System.out.println("Declaring all vertex labels");
 		for( String vLabel : vertexLabels ) {
 			System.out.print(vLabel + " ");
-			mgmt = graph.openManagement();
+			if(!singleManagement)
+			{
+				mgmt = graph.openManagement();
+			}
 			mgmt.makeVertexLabel(vLabel).make();
-			mgmt.commit();
+			if(!singleManagement)
+			{
+				mgmt.commit();
+			}
 		}
 		
 		// Declare all edge labels
 		System.out.println("\nDeclaring all edge labels");
 		for( String eLabel : edgeLabels ) {
 			System.out.print(eLabel + " ");
-			mgmt = graph.openManagement();
-			mgmt.makeEdgeLabel(eLabel).multiplicity(Multiplicity.SIMPLE).make();
-			mgmt.commit();
+			if(!singleManagement)
+			{
+				mgmt = graph.openManagement();
+			}
+			mgmt.makeEdgeLabel(eLabel).multiplicity(edgeFilter == null ? Multiplicity.SIMPLE : Multiplicity.MULTI).make();
+			if(!singleManagement)
+			{
+				mgmt.commit();
+			}
+			if(edgeFilter != null)
+			{
+				filteredEdgeLabels.add(eLabel);
+			}
 		}
 		
 		// Declare all properties and the relatives composite indexes
 		System.out.println("\nDeclaring all properties with Cardinality.SINGLE");
 		for ( String propKey : propertyKeys ) {
 			System.out.print(propKey + " ");
-			mgmt = graph.openManagement();
+			if(!singleManagement)
+			{
+				mgmt = graph.openManagement();
+			}
 			PropertyKey property = mgmt.makePropertyKey(propKey).dataType(propertyHasType.get(propKey))
 					.cardinality(propertyHasCardinality.get(propKey)).make();
-			if(propertiesWithIndex.contains(propKey))
+			if(propertiesWithIndex.contains(propKey) && (vertexHasKey == null || !vertexHasKey.containsValue(propKey)))
 			{
 				String indexLabel = propKey + "Index";
+				if(endpointKeys == null || endpointKeys.contains(propKey))
+				{
+					System.out.print(indexLabel + " ");
+					mgmt.buildIndex(indexLabel, Vertex.class).addKey(property).buildCompositeIndex();
+				}
+			}
+			if(!singleManagement)
+			{
+				mgmt.commit();
+			}
+		}
+		
+		// Declare the indexes of the keys scoped by vertex label
+		if(vertexHasKey != null)
+		{
+			System.out.println("\nDeclaring the label scoped indexes");
+			for(Map.Entry<String, String> labelKey : vertexHasKey.entrySet())
+			{
+				String vLabel = labelKey.getKey();
+				String propKey = labelKey.getValue();
+				if(!propertiesWithIndex.contains(propKey))
+				{
+					continue;
+				}
+				String indexLabel = vLabel + "_" + propKey + "Index";
 				System.out.print(indexLabel + " ");
-				mgmt.buildIndex(indexLabel, Vertex.class).addKey(property).buildCompositeIndex();
+				if(!singleManagement)
+				{
+					mgmt = graph.openManagement();
+				}
+				mgmt.buildIndex(indexLabel, Vertex.class).addKey(mgmt.getPropertyKey(propKey))
+						.indexOnly(mgmt.getVertexLabel(vLabel)).buildCompositeIndex();
+				if(!singleManagement)
+				{
+					mgmt.commit();
+				}
 			}
+		}
+		
+		if(singleManagement)
+		{
 			mgmt.commit();
 		}
 
@@ -80,130 +211,511 @@ public class JanusGraphImporter {
 		System.out.println();
 	}
 	
+	/*
+	 * build the indexes deferred by defineSchema over the data loaded, all at
+	 * once with a local REINDEX job each, reporting progress every
+	 * progReportPeriod seconds; returns once they are ENABLED. The indexes
+	 * to build are found in the schema: the ones of propertiesWithIndex, as
+	 * given to defineSchema, that are missing or not enabled yet, so that
+	 * they can be built by another process than the one that deferred them,
+	 * or after a build that did not finish.
+	 */
+	public void buildDeferredIndexes(List<String> propertiesWithIndex, long progReportPeriod)
+			throws InterruptedException, ExecutionException {
+		
+		openConnection();
+		
+		DeferredIndexBuilder builder = new DeferredIndexBuilder(graph, progReportPeriod);
+		JanusGraphManagement mgmt = graph.openManagement();
+		try {
+			for(String propKey : propertiesWithIndex)
+			{
+				String indexLabel = propKey + "Index";
+				if(vertexHasKey != null && vertexHasKey.containsValue(propKey))
+				{
+					// scoped by label, never deferred
+					continue;
+				}
+				if(!mgmt.containsGraphIndex(indexLabel))
+				{
+					builder.add(indexLabel, propKey);
+					continue;
+				}
+				SchemaStatus status = mgmt.getGraphIndex(indexLabel).getIndexStatus(mgmt.getPropertyKey(propKey));
+				if(status == SchemaStatus.INSTALLED || status == SchemaStatus.REGISTERED)
+				{
+					builder.add(indexLabel, propKey);
+				}
+			}
+		} finally {
+			mgmt.rollback();
+		}
+		if(builder.isEmpty())
+		{
+			return;
+		}
+		System.out.println("Building the deferred indexes");
+		builder.build();
+	}
+	
 	/*
 	 * open a connection to the DBMS if close
 	 */
 	public void openConnection() {
 		if(graph.isClosed())
 		{
-			graph = JanusGraphFactory.open(graph.configuration());
+			openGraph();
 		}
 	}
 	
 	/*
-	 * close a connection to the DBMS if open
+	 * close a connection to the DBMS if open; the bulk load mode is switched
+	 * off, the next connection gets the normal configuration
 	 */
 	public void closeConnection() {
-		if(graph.isOpen())
+		if(bulkLoadSettings != null)
 		{
-			graph.close();
+			bulkLoadSettings = null;
+			System.out.println("Bulk load mode switched off");
 		}
+		closeGraph();
 	}
 	
 	/*
 	 * clear the existing graph
 	 */
 	public void clearGraph() {
-		closeConnection();
+		closeGraph();
 		org.janusgraph.core.util.JanusGraphCleanup.clear(graph);
+		closeDictionaries(true);
+		filteredEdgeLabels.clear();
+		deleteJournals();
 		openConnection();
 	}
 	
 	/*
-	 * load the vertices contained in the given file
+	 * number of threads of the parse stage, 0 means half the commit threads
 	 */
-	public void loadVertices(
-			File file, 
-			boolean printLoadingDots,
-			int batchSize,
-			long progReportPeriod,
+	public void setParseThreadCount(int parseThreadCount) {
+		this.parseThreadCount = parseThreadCount;
+	}
+	
+	/*
+	 * the codecs used to convert the CSV fields, register() on it to load
+	 * additional data types or to change how a type is parsed
+	 */
+	public CodecRegistry getCodecRegistry() {
+		return codecRegistry;
+	}
+	
+	/*
+	 * the throughput, commit latency, retry, queue depth and missing vertex
+	 * metrics of the loads, per file and per worker thread
+	 */
+	public ImportMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/*
+	 * whether loadVertices records the key -> vertex id of every vertex so
+	 * that loadEdges can address the endpoints by id instead of reading the
+	 * index; on by default
+	 */
+	public void setUseKeyIdDictionary(boolean useKeyIdDictionary) {
+		this.useKeyIdDictionary = useKeyIdDictionary;
+		if(!useKeyIdDictionary)
+		{
+			closeDictionaries(false);
+		}
+	}
+	
+	/*
+	 * when set, the key -> id dictionaries are kept in memory mapped files of
+	 * the directory instead of the heap, for graphs whose keys do not fit in
+	 * it, with a cache of the hotKeyCacheSize most used keys of each in front
+	 * (0 for none). The files are reused: an importer loading only edges
+	 * finds the ids of the vertices loaded by an earlier one with the same
+	 * directory; clearGraph deletes them. preScan sizes the new files.
+	 */
+	public void setDictionaryDirectory(File dictionaryDirectory, int hotKeyCacheSize) {
+		closeDictionaries(false);
+		dictionaryDirectory.mkdirs();
+		this.dictionaryDirectory = dictionaryDirectory;
+		this.hotKeyCacheSize = hotKeyCacheSize;
+	}
+	
+	/*
+	 * write the key -> id dictionaries kept in files to the disk and close
+	 * them; they are opened again when needed
+	 */
+	public void closeDictionaries() {
+		closeDictionaries(false);
+	}
+	
+	/*
+	 * how the load threads retry a transaction that fails to commit
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+	
+	/*
+	 * when set, the lines that cannot be parsed or loaded, once retries are
+	 * exhausted, are written to <directory>/<file name>.dead-letter and the
+	 * load goes on; when null (the default) they abort the load
+	 */
+	public void setDeadLetterDirectory(File deadLetterDirectory) {
+		this.deadLetterDirectory = deadLetterDirectory;
+	}
+	
+	/*
+	 * when set, the progress of every file is recorded in
+	 * <directory>/<file name>.journal and a load of a file that has a journal
+	 * only loads the lines not committed yet; for vertex files the key -> id
+	 * dictionary is restored from the journal as well. Delete the journal to
+	 * load a file from the start; clearGraph deletes all of them.
+	 */
+	public void setJournalDirectory(File journalDirectory) {
+		this.journalDirectory = journalDirectory;
+	}
+	
+	/*
+	 * switch the bulk load mode on with the given settings, or off with null:
+	 * the graph is reopened with the bulk load configuration, the schema is
+	 * defined in a single management transaction and the load transactions
+	 * are tuned (see BulkLoadSettings). Switch it off once the loads are over
+	 * to reopen the graph with the normal configuration; closeConnection
+	 * switches it off too, so call it in a finally.
+	 */
+	public void setBulkLoadSettings(BulkLoadSettings bulkLoadSettings) {
+		this.bulkLoadSettings = bulkLoadSettings;
+		reopenGraph();
+	}
+	
+	/*
+	 * when on, every vertex gets an id derived from its key property name and
+	 * key (see VertexIdMapper) and loadEdges computes the ids of the
+	 * endpoints instead of looking them up: no dictionary, no index read and
+	 * nothing shared with the vertex loads, so edge files can be loaded by
+	 * other processes. The endpoints of the edges are not checked to exist,
+	 * run preScan to find the dangling ones. The graph is reopened with
+	 * graph.set-vertex-id, a FIXED option: set it on before the graph is
+	 * created, and keep it on for every load of the graph.
+	 */
+	public void setDeterministicVertexIds(boolean deterministicVertexIds) {
+		this.vertexIdMapper = deterministicVertexIds ?
+				new VertexIdMapper(configuration.getInt("cluster.max-partitions", VertexIdMapper.DEFAULT_MAX_PARTITIONS)) : null;
+		reopenGraph();
+	}
+	
+	/*
+	 * when a filter is set, defineSchema declares the edge labels MULTI
+	 * instead of SIMPLE: a SIMPLE label makes JanusGraph read the graph
+	 * before every addEdge, a MULTI one does not. loadEdges then skips the
+	 * edges already in the graph itself, reading the graph only for the
+	 * edges the filter may have seen. The filter is shared
+	 * by all the edge files, size it for all of them. Two transactions
+	 * committing the same new edge at once may still both add it, as with
+	 * SIMPLE labels and storage.batch-loading.
+	 *
+	 * The filter starts empty and only sees the edges loaded through it: it
+	 * is trusted only for the edge labels defineSchema declares after it is
+	 * set, in this process. For the other labels, which may have edges the
+	 * filter has not seen (a resumed run, a later incremental load), every
+	 * edge is read instead. Sharded loads are refused, since the workers
+	 * would each have a filter of their own.
+	 */
+	public void setEdgeDeduplication(EdgeBloomFilter edgeFilter) {
+		this.edgeFilter = edgeFilter;
+		this.filteredEdgeLabels.clear();
+	}
+	
+	/*
+	 * when endpointKeys is not null, defineSchema only builds the indexes of
+	 * the properties in it, the key columns the edge files, and the upsert
+	 * mode, look vertices up by; the indexes of the other properties are not
+	 * written during the load and are built afterwards by
+	 * buildDeferredIndexes
+	 */
+	public void setDeferredIndexes(List<String> endpointKeys) {
+		this.endpointKeys = endpointKeys;
+	}
+	
+	/*
+	 * scope the keys by vertex label, for graphs where vertices of different
+	 * labels share a key property: vertexHasKey (vertex label -> key property)
+	 * makes defineSchema index every indexed key property once per label, with
+	 * an index restricted to the label, instead of once for all the labels;
+	 * edgeHasEndpointLabels (edge file name -> { source label, target label })
+	 * gives the labels the edge files refer to, so that their endpoints are
+	 * looked up in the index of their label. Every edge file must be in
+	 * edgeHasEndpointLabels. The key -> id dictionaries and the ids derived
+	 * by setDeterministicVertexIds are also kept per label.
+	 */
+	public void setLabelScopedKeys(HashMap<String, String> vertexHasKey, HashMap<String, String[]> edgeHasEndpointLabels) {
+		this.vertexHasKey = vertexHasKey;
+		this.edgeHasEndpointLabels = vertexHasKey == null ? null : edgeHasEndpointLabels;
+	}
+	
+	/*
+	 * when keysPerQuery is greater than 0, loadEdges finds the endpoints of a
+	 * chunk before loading its rows: the keys missing from the key -> id
+	 * dictionaries are looked up together, keysPerQuery keys per index query,
+	 * instead of with a query per row. The key properties must be in the
+	 * data types given to loadEdges.
+	 */
+	public void setBatchedEndpointLookups(int keysPerQuery) {
+		this.endpointKeysPerQuery = keysPerQuery;
+	}
+	
+	/*
+	 * in upsert mode the files are deltas of data already loaded: a vertex
+	 * whose key is in the graph, or an edge already between its endpoints, is
+	 * updated instead of added, its SINGLE properties set and the values of
+	 * the others added. When tombstoneColumn is not null, the rows of the
+	 * column of that name that are true remove their vertex or edge; the
+	 * column is read as a Boolean and not loaded as a property. The keys are
+	 * looked up in the graph, by a few multi-key queries per chunk, so they
+	 * should be indexed: list them in the propertiesWithIndex of
+	 * defineSchema, and if their indexes are deferred (setDeferredIndexes)
+	 * run buildDeferredIndexes before the upserts. The edge filter is not
+	 * used.
+	 * A removed vertex stays in the key -> id dictionaries of the importer.
+	 *
+	 * The rows of a file are applied in file order: a file is parsed and
+	 * committed by a single thread each, whatever the threadCount given, so
+	 * that two rows of the same key, an update and a tombstone say, are never
+	 * committed by concurrent transactions nor out of order. A row that ends
+	 * in the dead letter file is skipped, the rows after it still apply. The
+	 * files loaded at once by loadDirectory are not ordered against each
+	 * other, and ranges of a file (sharded loads) are refused.
+	 */
+	public void setUpsertMode(boolean upsert, String tombstoneColumn) {
+		this.upsert = upsert;
+		this.tombstoneColumn = upsert ? tombstoneColumn : null;
+	}
+	
+	public boolean isUpsertMode() {
+		return upsert;
+	}
+	
+	/*
+	 * when a sorter is set, loadEdges first sorts the edge file by its source
+	 * (keyColumn 0) or target (keyColumn 1) key, so that the edges of a vertex
+	 * are committed together instead of spread over all the chunks. The
+	 * sorted copy is written to the temp directory of the sorter; it is kept
+	 * and reused when a journal directory is set, so that a resumed load
+	 * reads the same file, and deleted after the load otherwise.
+	 */
+	public void setEdgeSort(CsvSorter edgeSorter, int keyColumn) {
+		this.edgeSorter = edgeSorter;
+		this.edgeSortColumn = keyColumn;
+	}
+	
+	/*
+	 * when set, the rows per transaction (batchSize / threadCount at the
+	 * start) and the number of active commit threads (threadCount at the
+	 * start) of every load are tuned while it runs by an AdaptiveController,
+	 * within the given bounds; null (the default) keeps them fixed
+	 */
+	public void setAdaptiveSettings(AdaptiveSettings adaptiveSettings) {
+		this.adaptiveSettings = adaptiveSettings;
+	}
+	
+	/*
+	 * the limit on the writes of all the loads, unlimited by default; set its
+	 * rates or its latency threshold, also while loads are running, to
+	 * throttle them
+	 */
+	public WriteThrottle getWriteThrottle() {
+		return writeThrottle;
+	}
+	
+	/*
+	 * read the given files without loading them and print what was found:
+	 * row counts, distinct key estimates, empty fields and parse errors per
+	 * column, and edges whose endpoints are in none of the vertex files. The
+	 * key -> id dictionaries are sized from the distinct key estimates. With
+	 * failOnErrors, bad data throws instead, before anything is written. The
+	 * vertex keys are held in the dictionary directory, if set.
+	 */
+	public ScanReport preScan(
+			List<File> vertexFiles,
+			List<File> edgeFiles,
 			int threadCount,
+			boolean failOnErrors,
 			@SuppressWarnings("rawtypes") HashMap<String, Class> propertyHasType,
 			HashMap<String, Cardinality> propertyHasCardinality
-			) throws IOException, java.text.ParseException, InterruptedException {
-		
-		openConnection();
-
-		String fileName = file.getName();
-		String vertexLabel = fileName.substring(0, fileName.length() - 4);
+			) throws IOException, InterruptedException {
 		
-		Scanner fileScanner = new Scanner(file);
-
-		final String[] colNames = fileScanner.nextLine().split("\\|");
-				
-		long lineCount = 0;
-
-		// For progress reporting
 		long startTime = System.currentTimeMillis();
-		long nextProgReportTime = startTime + progReportPeriod*1000;
-		long lastLineCount = 0;
-			
-		while(fileScanner.hasNextLine())
+		PreScanner scanner = new PreScanner(codecRegistry, threadCount, dictionaryDirectory);
+		if(vertexHasKey != null)
 		{
-			int batchIndex = 0;
-			List<String> batchLines = new ArrayList<>();
-			while(batchIndex < batchSize && fileScanner.hasNextLine())
+			// the keys of each label apart, as loadVertices and loadEdges map them
+			Map<File, String> vertexLabels = new HashMap<>();
+			for(File file : vertexFiles)
 			{
-				batchLines.add(fileScanner.nextLine());
-				batchIndex++;
+				vertexLabels.put(file, CsvReaders.baseName(file));
 			}
-			
-			lineCount += batchLines.size();
-			
-			List<Thread> threads = new ArrayList<>();
-			for(int t = 0; t < threadCount; t++)
+			Map<File, String[]> endpointLabels = new HashMap<>();
+			for(File file : edgeFiles)
 			{
-				int threadStartIndex = ((batchSize / threadCount) * t);
-				if (threadStartIndex >= batchLines.size())
+				if(edgeHasEndpointLabels != null && edgeHasEndpointLabels.containsKey(CsvReaders.baseName(file)))
 				{
-					break;
+					endpointLabels.put(file, edgeHasEndpointLabels.get(CsvReaders.baseName(file)));
 				}
-				final List<String> threadLines = batchLines.subList(
-						threadStartIndex, 
-						Math.min(threadStartIndex + (batchSize / threadCount), batchLines.size())
-						);
-				
-				Thread thread = new LoadVerticiesThread(
-						graph,
-						colNames,
-						vertexLabel,
-						TX_MAX_RETRIES,
-						threadLines.toArray(new String[0]),
-						lineCount,
-						propertyHasType,
-						propertyHasCardinality
-						);
-				
-				thread.setName("t" + t);
-				threads.add(thread);
-				thread.start();
 			}
-			for(Thread thread : threads)
+			scanner.setLabelScopedKeys(vertexLabels, endpointLabels);
+		}
+		ScanReport report = scanner.scan(vertexFiles, edgeFiles, propertyHasType, propertyHasCardinality);
+		report.print();
+		long timeElapsed = System.currentTimeMillis() - startTime;
+		System.out.println(String.format(
+				"Scanned in %03dm.%02ds", (timeElapsed/1000)/60, (timeElapsed/1000) % 60));
+		
+		if(useKeyIdDictionary)
+		{
+			Map<String, Long> distinctKeys = report.getDistinctVertexKeys();
+			if(vertexHasKey != null)
 			{
-				thread.join();
+				// a dictionary per label
+				distinctKeys = new HashMap<>();
+				for(FileStatistics file : report.getFiles())
+				{
+					if(!file.isEdges())
+					{
+						distinctKeys.merge(VertexIdMapper.namespace(CsvReaders.baseName(file.getFile()), file.getColNames()[0]),
+								file.getDistinctKeys(0), Long::sum);
+					}
+				}
 			}
-
-
-			if (printLoadingDots && 
-					(System.currentTimeMillis() > nextProgReportTime)) {
-				long timeElapsed = System.currentTimeMillis() - startTime;
-				long linesLoaded = lineCount - lastLineCount;
-				System.out.println(String.format(
-						"Time Elapsed: %03dm.%02ds, Lines Loaded: +%d", 
-						(timeElapsed/1000)/60, (timeElapsed/1000) % 60, linesLoaded));
-				nextProgReportTime += progReportPeriod*1000;
-				lastLineCount = lineCount;
+			for(Map.Entry<String, Long> keys : distinctKeys.entrySet())
+			{
+				long expectedSize = keys.getValue();
+				keyIdDictionaries.computeIfAbsent(keys.getKey(), k -> newDictionary(k, expectedSize));
 			}
 		}
-		fileScanner.close();
 		
+		if(failOnErrors && report.hasErrors())
+		{
+			throw new RuntimeException("ERROR: the pre-scan found bad data, nothing was loaded");
+		}
+		return report;
+	}
+	
+	/*
+	 * write the given files, without loading them, as a GraphSON adjacency
+	 * list file for BulkLoaderVertexProgram (see GraphSONConverter); the
+	 * sorter bounds the memory used and holds the intermediate files
+	 */
+	public void convertToGraphSON(
+			List<File> vertexFiles,
+			List<File> edgeFiles,
+			HashMap<String, String> edgeHasLabel,
+			boolean undirected,
+			@SuppressWarnings("rawtypes") HashMap<String, Class> propertyHasType,
+			HashMap<String, Cardinality> propertyHasCardinality,
+			CsvSorter sorter,
+			File output
+			) throws IOException {
+		
+		long startTime = System.currentTimeMillis();
+		new GraphSONConverter(codecRegistry, sorter).convert(
+				vertexFiles, edgeFiles, edgeHasLabel, undirected, propertyHasType, propertyHasCardinality, output);
 		long timeElapsed = System.currentTimeMillis() - startTime;
-		long linesLoaded = lineCount - lastLineCount;
 		System.out.println(String.format(
-				"Time Elapsed: %03dm.%02ds, Lines Loaded: +%d", 
-				(timeElapsed/1000)/60, (timeElapsed/1000) % 60, linesLoaded));
-		nextProgReportTime += progReportPeriod*1000;
-		lastLineCount = lineCount;
+				"Converted in %03dm.%02ds", (timeElapsed/1000)/60, (timeElapsed/1000) % 60));
+	}
+	
+	/*
+	 * load the vertices contained in the given file
+	 */
+	public void loadVertices(
+			File file, 
+			boolean printLoadingDots,
+			int batchSize,
+			long progReportPeriod,
+			int threadCount,
+			@SuppressWarnings("rawtypes") HashMap<String, Class> propertyHasType,
+			HashMap<String, Cardinality> propertyHasCardinality
+			) throws IOException, java.text.ParseException, InterruptedException {
+		
+		loadVertices(file, 0, Long.MAX_VALUE, printLoadingDots, batchSize, progReportPeriod, threadCount,
+				propertyHasType, propertyHasCardinality);
+	}
+	
+	/*
+	 * load the vertices of the lines starting in the byte range [start, end)
+	 * of the given file, as split by ShardCoordinator; the range has its own
+	 * journal and dead letter file
+	 */
+	public void loadVertices(
+			File file, 
+			long start,
+			long end,
+			boolean printLoadingDots,
+			int batchSize,
+			long progReportPeriod,
+			int threadCount,
+			@SuppressWarnings("rawtypes") HashMap<String, Class> propertyHasType,
+			HashMap<String, Cardinality> propertyHasCardinality
+			) throws IOException, java.text.ParseException, InterruptedException {
+		
+		openConnection();
+
+		String vertexLabel = CsvReaders.baseName(file);
+		String range = rangeSuffix(start, end);
+		threadCount = commitThreadCount(range, threadCount);
+		// the label the keys are scoped by, null if they are not
+		String scopeLabel = vertexHasKey == null ? null : vertexLabel;
+		
+		ImportJournal journal = openJournal(file, range);
+		CsvReader reader = openReader(file, journal, start, end);
+
+		final String[] colNames = reader.getColNames();
+		if(journal != null && journal.isResumed() && useKeyIdDictionary && vertexIdMapper == null)
+		{
+			journal.replayIds(keyIdDictionary(VertexIdMapper.namespace(scopeLabel, colNames[0]), true));
+		}
+		if(scopeLabel != null && vertexHasKey.containsKey(vertexLabel) && !vertexHasKey.get(vertexLabel).equals(colNames[0]))
+		{
+			throw new IllegalArgumentException("ERROR: the key of " + vertexLabel + " is " + vertexHasKey.get(vertexLabel) +
+					", not " + colNames[0]);
+		}
+		final ColumnBinding[] columns = bindColumns(colNames, 0, propertyHasType, propertyHasCardinality);
+		
+		LoadPipeline<VertexBatch> pipeline = new LoadPipeline<>(
+				vertexLabel, threadCount * QUEUE_CHUNKS_PER_THREAD, metrics.forFile(vertexLabel));
+		pipeline.setJournal(journal);
+		pipeline.setBulkLoadSettings(bulkLoadSettings);
+		pipeline.setThrottle(writeThrottle);
+		if(adaptiveSettings != null)
+		{
+			pipeline.setController(new AdaptiveController(
+					adaptiveSettings, pipeline, Math.max(1, batchSize / threadCount), threadCount,
+					progReportPeriod * 1000));
+		}
+		pipeline.setDeadLetterWriter(deadLetterWriter(file, range, journal));
+		for(int p = 0; p < (upsert ? 1 : parseThreadCount(threadCount)); p++)
+		{
+			pipeline.addParser(() -> new VertexBatch(columns, vertexLabel));
+		}
+		for(int t = 0; t < threadCount; t++)
+		{
+			pipeline.addLoader(new LoadVerticiesThread(
+					pipeline,
+					graph,
+					retryPolicy,
+					columns,
+					vertexIdMapper == null ? keyIdDictionary(VertexIdMapper.namespace(scopeLabel, colNames[0]), true) : null,
+					vertexIdMapper,
+					upsert,
+					scopeLabel
+					));
+		}
+		
+		runPipeline(reader, pipeline, printLoadingDots, batchSize, progReportPeriod, threadCount);
 	}
 	
 	/*
@@ -220,10 +732,32 @@ public class JanusGraphImporter {
 			@SuppressWarnings("rawtypes") HashMap<String, Class> propertyHasType
 			) throws IOException,  java.text.ParseException, InterruptedException {
 
+		loadEdges(file, 0, Long.MAX_VALUE, edgeHasLabel, undirected, printLoadingDots, batchSize, progReportPeriod,
+				threadCount, propertyHasType);
+	}
+	
+	/*
+	 * load the edges of the lines starting in the byte range [start, end) of
+	 * the given file, as split by ShardCoordinator; the range has its own
+	 * journal and dead letter file. The edge sort set by setEdgeSort only
+	 * applies to whole files.
+	 */
+	public void loadEdges(
+			File file,
+			long start,
+			long end,
+			HashMap<String, String> edgeHasLabel,
+			boolean undirected,
+			boolean printLoadingDots,
+			int batchSize,
+			long progReportPeriod,
+			int threadCount,
+			@SuppressWarnings("rawtypes") HashMap<String, Class> propertyHasType
+			) throws IOException,  java.text.ParseException, InterruptedException {
+
 		openConnection();
 
-		String fileName = file.getName();
-		String edgeName = fileName.substring(0, fileName.length() - 4);
+		String edgeName = CsvReaders.baseName(file);
 		
 		String edgeLabel;
 		if(edgeHasLabel.containsKey(edgeName))
@@ -235,82 +769,567 @@ public class JanusGraphImporter {
 			edgeLabel = edgeName;
 		}
 
-		Scanner fileScanner = new Scanner(file);
-
-		final String[] colNames = fileScanner.nextLine().split("\\|");
-		
-		long lineCount = 0;
+		String[] endpointLabels = null;
+		if(vertexHasKey != null)
+		{
+			endpointLabels = edgeHasEndpointLabels == null ? null : edgeHasEndpointLabels.get(edgeName);
+			if(endpointLabels == null)
+			{
+				throw new IllegalArgumentException("ERROR: no endpoint labels for the edge file " + edgeName);
+			}
+		}
 
-		// For progress reporting
-		long startTime = System.currentTimeMillis();
-		long nextProgReportTime = startTime + progReportPeriod*1000;
-		long lastLineCount = 0;
+		String range = rangeSuffix(start, end);
+		threadCount = commitThreadCount(range, threadCount);
+		boolean filterComplete = false;
+		if(edgeFilter != null)
+		{
+			if(!range.isEmpty())
+			{
+				throw new IllegalStateException("ERROR: edge deduplication does not work with sharded loads, " +
+						"every worker would have its own filter");
+			}
+			filterComplete = filteredEdgeLabels.contains(edgeLabel);
+		}
+		File input = range.isEmpty() ? sortEdges(file) : file;
+		ImportJournal journal = openJournal(input, range);
+		CsvReader reader = openReader(input, journal, start, end);
 
-		while(fileScanner.hasNextLine())
+		final String[] colNames = reader.getColNames();
+		final ColumnBinding[] columns = bindColumns(colNames, 2, propertyHasType, null);
+		if(endpointKeysPerQuery > 0)
 		{
-			int batchIndex = 0;
-			List<String> batchLines = new ArrayList<>();
-			while(batchIndex < batchSize && fileScanner.hasNextLine())
+			// the typed keys to look the endpoints up with
+			for(int j = 0; j < 2; j++)
 			{
-				batchLines.add(fileScanner.nextLine());
-				batchIndex++;
+				if(propertyHasType.containsKey(colNames[j]))
+				{
+					columns[j] = new ColumnBinding(colNames[j], codecRegistry.get(propertyHasType.get(colNames[j])),
+							Cardinality.SINGLE);
+				}
 			}
-			
-			lineCount += batchLines.size();
-			
-			List<Thread> threads = new ArrayList<>();
-			for(int t = 0; t < threadCount; t++)
+		}
+		
+		LoadPipeline<EdgeBatch> pipeline = new LoadPipeline<>(
+				edgeName, threadCount * QUEUE_CHUNKS_PER_THREAD, metrics.forFile(edgeName));
+		pipeline.setJournal(journal);
+		pipeline.setBulkLoadSettings(bulkLoadSettings);
+		pipeline.setThrottle(writeThrottle);
+		if(adaptiveSettings != null)
+		{
+			pipeline.setController(new AdaptiveController(
+					adaptiveSettings, pipeline, Math.max(1, batchSize / threadCount), threadCount,
+					progReportPeriod * 1000));
+		}
+		pipeline.setDeadLetterWriter(deadLetterWriter(input, range, journal));
+		for(int p = 0; p < (upsert ? 1 : parseThreadCount(threadCount)); p++)
+		{
+			pipeline.addParser(() -> new EdgeBatch(columns));
+		}
+		for(int t = 0; t < threadCount; t++)
+		{
+			pipeline.addLoader(new LoadEdgesThread(
+					pipeline,
+					graph, 
+					edgeLabel, 
+					undirected, 
+					retryPolicy,
+					colNames,
+					keyIdDictionary(VertexIdMapper.namespace(endpointLabels == null ? null : endpointLabels[0], colNames[0]), false),
+					keyIdDictionary(VertexIdMapper.namespace(endpointLabels == null ? null : endpointLabels[1], colNames[1]), false),
+					vertexIdMapper,
+					edgeFilter,
+					filterComplete,
+					upsert,
+					endpointLabels,
+					endpointKeysPerQuery > 0 ? new KeyResolver(endpointKeysPerQuery) : null
+					));
+		}
+		
+		runPipeline(reader, pipeline, printLoadingDots, batchSize, progReportPeriod, threadCount);
+		if(input != file && journalDirectory == null)
+		{
+			input.delete();
+		}
+	}
+	
+	/*
+	 * load all the .csv files of vertexDirectory and then of edgeDirectory,
+	 * many at once. Every file is loaded with threadCount commit threads, and
+	 * at most threadBudget commit threads and memoryBudget bytes of parsed
+	 * rows are in use at any time. An edge file is loaded as soon as the
+	 * vertex files of its endpoints are: those of the labels given by
+	 * edgeHasEndpointLabels (edge file name -> { source label, target label })
+	 * or, for the edge files not in it, every vertex file whose key column is
+	 * one of the endpoint columns of the edge file. Without
+	 * edgeHasEndpointLabels, the one given to setLabelScopedKeys is used.
+	 */
+	public void loadDirectory(
+			File vertexDirectory,
+			File edgeDirectory,
+			HashMap<String, String> edgeHasLabel,
+			HashMap<String, String[]> edgeHasEndpointLabels,
+			boolean undirected,
+			boolean printLoadingDots,
+			int batchSize,
+			long progReportPeriod,
+			int threadCount,
+			int threadBudget,
+			long memoryBudget,
+			@SuppressWarnings("rawtypes") HashMap<String, Class> propertyHasType,
+			HashMap<String, Cardinality> propertyHasCardinality
+			) throws Exception {
+		
+		openConnection();
+		
+		if(edgeHasEndpointLabels == null)
+		{
+			edgeHasEndpointLabels = this.edgeHasEndpointLabels;
+		}
+		// a single commit thread per file in upsert mode
+		int fileThreads = upsert ? 1 : Math.min(threadCount, threadBudget);
+		ImportScheduler scheduler = new ImportScheduler(threadBudget, memoryBudget);
+		
+		// vertex label -> file name, key column -> file names
+		Map<String, String> labelFiles = new HashMap<>();
+		Map<String, List<String>> keyFiles = new HashMap<>();
+		for(File file : csvFiles(vertexDirectory))
+		{
+			labelFiles.put(CsvReaders.baseName(file), file.getPath());
+			keyFiles.computeIfAbsent(CsvReaders.readColNames(file)[0], k -> new ArrayList<>()).add(file.getPath());
+			scheduler.add(file.getPath(), file.length(), new ArrayList<String>(), fileThreads,
+					estimateMemory(file, batchSize, fileThreads),
+					() -> loadVertices(file, printLoadingDots, batchSize, progReportPeriod, fileThreads,
+							propertyHasType, propertyHasCardinality));
+		}
+		
+		for(File file : csvFiles(edgeDirectory))
+		{
+			String edgeName = CsvReaders.baseName(file);
+			List<String> dependencies = new ArrayList<>();
+			if(edgeHasEndpointLabels != null && edgeHasEndpointLabels.containsKey(edgeName))
 			{
-				int threadStartIndex = ((batchSize / threadCount) * t);
-				if (threadStartIndex >= batchLines.size())
+				for(String label : edgeHasEndpointLabels.get(edgeName))
 				{
-					break;
+					if(labelFiles.containsKey(label))
+					{
+						dependencies.add(labelFiles.get(label));
+					}
 				}
-				final List<String> threadLines = batchLines.subList(
-						threadStartIndex, 
-						Math.min(threadStartIndex + (batchSize / threadCount), batchLines.size())
-						);
-
-				Thread thread = new LoadEdgesThread(
-						graph, 
-						edgeLabel, 
-						undirected, 
-						TX_MAX_RETRIES, 
-						threadLines.toArray(new String[0]), 
-						lastLineCount,
-						colNames,
-						propertyHasType
-						);
+			}else
+			{
+				String[] colNames = CsvReaders.readColNames(file);
+				for(String keyName : Arrays.asList(colNames[0], colNames[1]))
+				{
+					if(keyFiles.containsKey(keyName))
+					{
+						dependencies.addAll(keyFiles.get(keyName));
+					}
+				}
+			}
+			scheduler.add(file.getPath(), file.length(), dependencies, fileThreads,
+					estimateMemory(file, batchSize, fileThreads),
+					() -> loadEdges(file, edgeHasLabel, undirected, printLoadingDots, batchSize, progReportPeriod,
+							fileThreads, propertyHasType));
+		}
+		
+		scheduler.run();
+	}
+	
+	/*
+	 * feed the lines of the file to the pipeline, one transaction worth of
+	 * lines (batchSize / threadCount, or as tuned by the controller of the
+	 * pipeline) per chunk, and wait for the commits
+	 */
+	private <B extends RowBatch> void runPipeline(
+			CsvReader reader,
+			LoadPipeline<B> pipeline,
+			boolean printLoadingDots,
+			int batchSize,
+			long progReportPeriod,
+			int threadCount
+			) throws IOException, InterruptedException {
+		
+		AdaptiveController controller = pipeline.getController();
+		int chunkSize = controller == null ? Math.max(1, batchSize / threadCount) : controller.getChunkSize();
 
-				thread.setName("t" + t);
-				threads.add(thread);
-				thread.start();
+		// For progress reporting
+		long startTime = System.currentTimeMillis();
+		long nextProgReportTime = startTime + progReportPeriod*1000;
+		long lastLineCount = 0;
+		
+		DeadLetterWriter deadLetter = pipeline.getDeadLetterWriter();
+		ImportJournal journal = pipeline.getJournal();
+		Counter missingVertices = pipeline.getMetrics().missingVertices();
+		long missingBefore = missingVertices.getCount();
+		try {
+			pipeline.start();
+			try {
+				LineChunk chunk;
+				while((chunk = reader.nextChunk(chunkSize)) != null)
+				{
+					pipeline.submit(chunk);
+					if(controller != null)
+					{
+						chunkSize = controller.getChunkSize();
+					}
+					
+					if (printLoadingDots && 
+							(System.currentTimeMillis() > nextProgReportTime)) {
+						long timeElapsed = System.currentTimeMillis() - startTime;
+						long committedLines = pipeline.getCommittedLines();
+						long linesLoaded = committedLines - lastLineCount;
+						System.out.println(String.format(
+								"Time Elapsed: %03dm.%02ds, Lines Loaded: +%d", 
+								(timeElapsed/1000)/60, (timeElapsed/1000) % 60, linesLoaded));
+						nextProgReportTime += progReportPeriod*1000;
+						lastLineCount = committedLines;
+					}
+				}
+			} catch (IOException | RuntimeException | InterruptedException e) {
+				pipeline.abort();
+				throw e;
+			} finally {
+				reader.close();
 			}
-			for(Thread thread : threads)
+			try {
+				pipeline.finish();
+			} catch (InterruptedException e) {
+				// stop the workers before the journal is closed
+				pipeline.abort();
+				throw e;
+			}
+		} finally {
+			if(deadLetter != null)
 			{
-				thread.join();
+				deadLetter.close();
 			}
-
-			if (printLoadingDots && 
-					(System.currentTimeMillis() > nextProgReportTime)) {
-				long timeElapsed = System.currentTimeMillis() - startTime;
-				long linesLoaded = lineCount - lastLineCount;
-				System.out.println(String.format(
-						"Time Elapsed: %03dm.%02ds, Lines Loaded: +%d", 
-						(timeElapsed/1000)/60, (timeElapsed/1000) % 60, linesLoaded));
-				nextProgReportTime += progReportPeriod*1000;
-				lastLineCount = lineCount;
+			if(journal != null)
+			{
+				journal.close();
 			}
 		}
-		fileScanner.close();
 		
 		long timeElapsed = System.currentTimeMillis() - startTime;
-		long linesLoaded = lineCount - lastLineCount;
+		long linesLoaded = pipeline.getCommittedLines() - lastLineCount;
 		System.out.println(String.format(
 				"Time Elapsed: %03dm.%02ds, Lines Loaded: +%d", 
 				(timeElapsed/1000)/60, (timeElapsed/1000) % 60, linesLoaded));
-		nextProgReportTime += progReportPeriod*1000;
-		lastLineCount = lineCount;
+		if(deadLetter != null && deadLetter.getCount() > 0)
+		{
+			System.out.println(deadLetter.getCount() + " lines written to " + deadLetter.getFile());
+		}
+		long missing = missingVertices.getCount() - missingBefore;
+		if(missing > 0)
+		{
+			System.out.println(missing + " edges of " + pipeline.getName() + " skipped, an endpoint vertex was not found");
+		}
+	}
+	
+	/*
+	 * the dead letter file of the given input file and range, null if
+	 * disabled; appended to when the load is resumed
+	 */
+	private DeadLetterWriter deadLetterWriter(File file, String range, ImportJournal journal) throws IOException {
+		if(deadLetterDirectory == null)
+		{
+			return null;
+		}
+		deadLetterDirectory.mkdirs();
+		return new DeadLetterWriter(
+				new File(deadLetterDirectory, file.getName() + range + ".dead-letter"),
+				journal != null && journal.isResumed());
+	}
+	
+	/*
+	 * the edge file sorted as set by setEdgeSort, the file itself if not set
+	 */
+	private File sortEdges(File file) throws IOException {
+		if(edgeSorter == null)
+		{
+			return file;
+		}
+		// the sorted copy is not compressed
+		File sorted = new File(edgeSorter.getTempDirectory(), CsvReaders.baseName(file) + ".csv");
+		if(sorted.getCanonicalFile().equals(file.getCanonicalFile()))
+		{
+			throw new IOException("ERROR: the sort directory must not be the directory of " + file);
+		}
+		if(journalDirectory != null && sorted.exists() && sorted.lastModified() >= file.lastModified())
+		{
+			System.out.println("Reusing sorted " + sorted);
+			return sorted;
+		}
+		System.out.println("Sorting " + file.getName() + " by column " + edgeSortColumn);
+		long startTime = System.currentTimeMillis();
+		File partial = new File(edgeSorter.getTempDirectory(), CsvReaders.baseName(file) + ".csv.sorting");
+		edgeSorter.sort(file, edgeSortColumn, partial);
+		sorted.delete();
+		if(!partial.renameTo(sorted))
+		{
+			throw new IOException("ERROR: could not rename " + partial + " to " + sorted);
+		}
+		long timeElapsed = System.currentTimeMillis() - startTime;
+		System.out.println(String.format(
+				"Sorted in %03dm.%02ds", (timeElapsed/1000)/60, (timeElapsed/1000) % 60));
+		return sorted;
+	}
+	
+	/*
+	 * the journal of the given input file and range, null if disabled
+	 */
+	private ImportJournal openJournal(File file, String range) throws IOException {
+		if(journalDirectory == null)
+		{
+			return null;
+		}
+		journalDirectory.mkdirs();
+		ImportJournal journal = new ImportJournal(new File(journalDirectory, file.getName() + range + ".journal"), file);
+		if(journal.isResumed())
+		{
+			System.out.println(String.format(
+					"Resuming %s%s: %d lines already loaded", file.getName(), range, journal.getCommittedLines()));
+		}
+		return journal;
+	}
+	
+	/*
+	 * a reader of the range [start, end) of the file or, when resuming, of
+	 * the parts of it the journal has not recorded as committed
+	 */
+	private CsvReader openReader(File file, ImportJournal journal, long start, long end) throws IOException {
+		if(journal == null)
+		{
+			if(start == 0 && end == Long.MAX_VALUE)
+			{
+				return CsvReaders.open(file);
+			}
+			return CsvReaders.open(file, Arrays.asList(new long[] { start, end, 0 }));
+		}
+		List<long[]> ranges = new ArrayList<>();
+		for(long[] pending : journal.getPendingRanges())
+		{
+			long rangeStart = Math.max(pending[0], start);
+			long rangeEnd = Math.min(pending[1], end);
+			if(rangeStart < rangeEnd)
+			{
+				// line numbers are relative to the start of the range
+				ranges.add(new long[] { rangeStart, rangeEnd, pending[0] < start ? 0 : pending[2] });
+			}
+		}
+		return CsvReaders.open(file, ranges);
+	}
+	
+	/*
+	 * the bindings of the columns of a file from firstColumn on, the
+	 * tombstone column of the upsert mode bound as a Boolean flag
+	 */
+	private ColumnBinding[] bindColumns(
+			String[] colNames,
+			int firstColumn,
+			@SuppressWarnings("rawtypes") HashMap<String, Class> propertyHasType,
+			HashMap<String, Cardinality> propertyHasCardinality)
+	{
+		@SuppressWarnings("rawtypes")
+		HashMap<String, Class> types = propertyHasType;
+		if(tombstoneColumn != null)
+		{
+			types = new HashMap<>(propertyHasType);
+			types.put(tombstoneColumn, Boolean.class);
+		}
+		ColumnBinding[] columns = ColumnBinding.resolve(
+				colNames, firstColumn, types, propertyHasCardinality, codecRegistry);
+		for(int j = firstColumn; j < colNames.length; j++)
+		{
+			if(colNames[j].equals(tombstoneColumn))
+			{
+				columns[j] = ColumnBinding.flag(tombstoneColumn, codecRegistry.get(Boolean.class));
+			}
+		}
+		return columns;
+	}
+
+	/*
+	 * the suffix of the journal and dead letter file names of a range, empty
+	 * for the whole file
+	 */
+	private static String rangeSuffix(long start, long end) {
+		return start == 0 && end == Long.MAX_VALUE ? "" : "." + start + "-" + end;
+	}
+	
+	private void deleteJournals() {
+		if(journalDirectory == null)
+		{
+			return;
+		}
+		File[] journals = journalDirectory.listFiles((dir, name) -> name.endsWith(".journal") || name.endsWith(".journal.lock"));
+		if(journals != null)
+		{
+			for(File journal : journals)
+			{
+				journal.delete();
+			}
+		}
+	}
+	
+	/*
+	 * reopen the graph with the configuration it was opened with, plus the
+	 * bulk load settings and graph.set-vertex-id when they are on
+	 */
+	private void reopenGraph() {
+		closeGraph();
+		openGraph();
+	}
+	
+	private void openGraph() {
+		Configuration reopened = bulkLoadSettings == null ? configuration : bulkLoadSettings.configure(configuration);
+		if(vertexIdMapper != null)
+		{
+			Configuration copy = new BaseConfiguration();
+			for(Iterator<String> keys = reopened.getKeys(); keys.hasNext(); )
+			{
+				String key = keys.next();
+				copy.setProperty(key, reopened.getProperty(key));
+			}
+			copy.setProperty("graph.set-vertex-id", true);
+			reopened = copy;
+		}
+		graph = JanusGraphFactory.open(reopened);
+	}
+	
+	private void closeGraph() {
+		if(graph.isOpen())
+		{
+			graph.close();
+		}
+	}
+	
+	/*
+	 * the .csv files of the directory, compressed or not, by name
+	 */
+	private File[] csvFiles(File directory) throws IOException {
+		File[] files = directory.listFiles((dir, name) -> CsvReaders.isCsvName(name));
+		if(files == null)
+		{
+			throw new IOException("ERROR: could not list " + directory);
+		}
+		Arrays.sort(files);
+		return files;
+	}
+	
+
+	/*
+	 * estimate of the heap taken by the rows in flight in the load of the
+	 * file: the chunks in the two queues of the pipeline and those being
+	 * committed, with the line size sampled from the start of the file
+	 */
+	private long estimateMemory(File file, int batchSize, int threadCount) throws IOException {
+		long lineBytes;
+		try(CsvReader reader = CsvReaders.open(file))
+		{
+			LineChunk sample = reader.nextChunk(SAMPLE_LINES);
+			if(sample == null || sample.size() == 0)
+			{
+				return 0;
+			}
+			lineBytes = (sample.getEndOffset() - sample.getStartOffset()) / sample.size();
+		}
+		long chunkSize = Math.max(1, batchSize / threadCount);
+		long chunks = 2 * threadCount * QUEUE_CHUNKS_PER_THREAD + threadCount;
+		return chunks * chunkSize * lineBytes * ROW_MEMORY_FACTOR;
+	}
+	
+	/*
+	 * the dictionary of the given key property, null if disabled or, unless
+	 * create is set, not built yet
+	 */
+	private KeyIdDictionary keyIdDictionary(String keyName, boolean create) {
+		if(!useKeyIdDictionary)
+		{
+			return null;
+		}
+		if(create || (dictionaryDirectory != null && dictionaryFile(keyName).exists()))
+		{
+			return keyIdDictionaries.computeIfAbsent(keyName, k -> newDictionary(k, 0));
+		}
+		return keyIdDictionaries.get(keyName);
+	}
+	
+	/*
+	 * a dictionary for expectedSize keys, 0 if unknown: in a file of the
+	 * dictionary directory, reused if it exists, or on the heap
+	 */
+	private KeyIdDictionary newDictionary(String keyName, long expectedSize) {
+		if(dictionaryDirectory == null)
+		{
+			return expectedSize == 0 ? new VertexIdDictionary() :
+					new VertexIdDictionary((int) Math.min(MAX_DICTIONARY_PRESIZE, expectedSize));
+		}
+		try {
+			return new MappedVertexIdDictionary(dictionaryFile(keyName),
+					expectedSize == 0 ? DEFAULT_MAPPED_DICTIONARY_SIZE : expectedSize, hotKeyCacheSize);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	private File dictionaryFile(String keyName) {
+		try {
+			return new File(dictionaryDirectory, URLEncoder.encode(keyName, "UTF-8") + ".dict");
+		} catch (java.io.UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/*
+	 * close the dictionaries and forget them, deleting their files if asked
+	 */
+	private void closeDictionaries(boolean delete) {
+		for(KeyIdDictionary dictionary : keyIdDictionaries.values())
+		{
+			try {
+				dictionary.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		keyIdDictionaries.clear();
+		if(delete && dictionaryDirectory != null)
+		{
+			File[] files = dictionaryDirectory.listFiles((dir, name) -> name.endsWith(".dict"));
+			if(files != null)
+			{
+				for(File file : files)
+				{
+					file.delete();
+				}
+			}
+		}
+	}
+	
+	/*
+	 * the commit threads of a load: a single one in upsert mode, which does
+	 * not take ranges, see setUpsertMode
+	 */
+	private int commitThreadCount(String range, int threadCount) {
+		if(!upsert)
+		{
+			return threadCount;
+		}
+		if(!range.isEmpty())
+		{
+			throw new IllegalStateException("ERROR: upsert mode applies the rows of a file in order, " +
+					"it does not load ranges of a file");
+		}
+		return 1;
+	}
+	
+	private int parseThreadCount(int threadCount) {
+		if(parseThreadCount > 0)
+		{
+			return parseThreadCount;
+		}
+		return Math.max(1, threadCount / 2);
 	}
 
 }
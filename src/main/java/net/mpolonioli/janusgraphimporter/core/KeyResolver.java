@@ -0,0 +1,65 @@
+package net.mpolonioli.janusgraphimporter.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.tinkerpop.gremlin.process.traversal.P;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+
+/*
+ * finds the vertices of many values of a key property with a few
+ * has(key, within(values)) queries, keysPerQuery values each, instead of a
+ * query per value; JanusGraph answers each of them from the index of the
+ * key with a single batch of index reads
+ */
+public class KeyResolver {
+
+	public static final int DEFAULT_KEYS_PER_QUERY = 256;
+
+	private int keysPerQuery;
+
+	public KeyResolver(int keysPerQuery)
+	{
+		this.keysPerQuery = keysPerQuery;
+	}
+
+	/*
+	 * the vertices of the given distinct values, by value; a value without a
+	 * vertex is not in the map, a value with several gets the first found.
+	 * Values must have the data type of the key. When vertexLabel is not null
+	 * only the vertices of that label are found, through the index of the key
+	 * restricted to the label if there is one.
+	 */
+	public Map<Object, Vertex> resolve(GraphTraversalSource g, String vertexLabel, String keyName, Collection<?> values) {
+		Map<Object, Vertex> vertices = new HashMap<>(values.size() * 2);
+		List<Object> slice = new ArrayList<>(Math.min(keysPerQuery, values.size()));
+		for(Object value : values)
+		{
+			slice.add(value);
+			if(slice.size() == keysPerQuery)
+			{
+				query(g, vertexLabel, keyName, slice, vertices);
+				slice.clear();
+			}
+		}
+		if(!slice.isEmpty())
+		{
+			query(g, vertexLabel, keyName, slice, vertices);
+		}
+		return vertices;
+	}
+
+	private static void query(GraphTraversalSource g, String vertexLabel, String keyName, List<Object> values, Map<Object, Vertex> vertices) {
+		List<Vertex> found = vertexLabel == null ?
+				g.V().has(keyName, P.within(values)).toList() :
+				g.V().has(vertexLabel, keyName, P.within(values)).toList();
+		for(Vertex vertex : found)
+		{
+			vertices.putIfAbsent(vertex.value(keyName), vertex);
+		}
+	}
+}
@@ -1,158 +1,453 @@
 package net.mpolonioli.janusgraphimporter.core;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.TimeZone;
+import java.util.Set;
 
 import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Edge;
 import org.apache.tinkerpop.gremlin.structure.Vertex;
 import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphEdge;
 import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
+
+import net.mpolonioli.janusgraphimporter.dictionary.EdgeBloomFilter;
+import net.mpolonioli.janusgraphimporter.dictionary.KeyIdDictionary;
+import net.mpolonioli.janusgraphimporter.dictionary.VertexIdMapper;
+
+public class LoadEdgesThread extends LoadThread<EdgeBatch> {
 
-public class LoadEdgesThread extends Thread {
-		
-	private JanusGraph graph;
-	private long txMaxRetries;
-	private String[] threadLines;
-	private long lineCount;
 	private String edgeLabel;
 	private boolean undirected;
-	private String[] colNames;
-	private @SuppressWarnings("rawtypes") HashMap<String, Class> propertyHasType;
-	
+	private String keyLabelV1;
+	private String keyLabelV2;
+	// the labels of the endpoints, null if not declared
+	private String vertexLabelV1;
+	private String vertexLabelV2;
+	private KeyIdDictionary dictionaryV1;
+	private KeyIdDictionary dictionaryV2;
+	private VertexIdMapper idMapper;
+	private EdgeBloomFilter edgeFilter;
+	private boolean edgeFilterComplete;
+	private boolean upsert;
+	// null unless the endpoints of a chunk are looked up in bulk
+	private KeyResolver endpointResolver;
+
+	// the endpoints of the rows of the current chunk attempt, null if missing,
+	// when they are found before the rows are loaded
+	private Vertex[] outVertices = new Vertex[0];
+	private Vertex[] inVertices = new Vertex[0];
+	private int chunkFrom;
+	// out vertex id -> its edgeLabel edges, in upsert mode
+	private Map<Object, List<Edge>> existingEdges = new HashMap<>();
+
+	/*
+	 * dictionaryV1 and dictionaryV2 resolve the keys of the two endpoint
+	 * columns without reading the index; either may be null. When idMapper
+	 * is not null the ids of the endpoints are derived from their keys and
+	 * neither the dictionaries nor the index are used: the endpoints are not
+	 * checked to exist. When edgeFilter is not null an edge already in the
+	 * graph is not added again: if edgeFilterComplete, the filter has seen
+	 * every edge of the label in the graph and the graph is only read for
+	 * the edges it may have seen, otherwise it is read for every edge.
+	 *
+	 * When upsert is true a row whose edge is already in the graph sets the
+	 * properties of that edge instead of adding one, and a row flagged by the
+	 * tombstone column of the batch removes it; the edge filter is not used.
+	 * The edges of the endpoints of a chunk are read with a single multi
+	 * vertex query before the rows are loaded.
+	 *
+	 * When endpointLabels is not null it holds the labels of the source and
+	 * target vertices: the endpoints are looked up among the vertices of
+	 * those labels only, and their keys are scoped by them.
+	 *
+	 * When endpointResolver is not null the endpoints of a chunk that are
+	 * neither derived by idMapper nor in the dictionaries are looked up in
+	 * bulk before the rows are loaded: the distinct keys of each endpoint
+	 * column are resolved by a few multi-key index queries, so the reads of
+	 * the index grow with the distinct keys of the chunk instead of its
+	 * rows. This needs the typed keys, the endpoint columns bound in the
+	 * batch; without them the endpoints are looked up row by row.
+	 */
 	public LoadEdgesThread(
+			LoadPipeline<EdgeBatch> pipeline,
 			JanusGraph graph,
 			String edgeLabel,
 			boolean undirected,
-			long txMaxRetries,
-			String[] threadLines,
-			long lineCount,
+			RetryPolicy retryPolicy,
 			String[] colNames,
-			@SuppressWarnings("rawtypes") HashMap<String, Class> propertyHasType)
+			KeyIdDictionary dictionaryV1,
+			KeyIdDictionary dictionaryV2,
+			VertexIdMapper idMapper,
+			EdgeBloomFilter edgeFilter,
+			boolean edgeFilterComplete,
+			boolean upsert,
+			String[] endpointLabels,
+			KeyResolver endpointResolver)
 	{
-		this.graph = graph;
-		this.txMaxRetries = txMaxRetries;
-		this.threadLines = threadLines;
-		this.lineCount = lineCount;
+		super(pipeline, graph, retryPolicy);
 		this.edgeLabel = edgeLabel;
 		this.undirected = undirected;
-		this.propertyHasType = propertyHasType;
-		this.colNames = colNames;
+		this.keyLabelV1 = colNames[0];
+		this.keyLabelV2 = colNames[1];
+		this.dictionaryV1 = dictionaryV1;
+		this.dictionaryV2 = dictionaryV2;
+		this.idMapper = idMapper;
+		this.edgeFilter = edgeFilter;
+		this.edgeFilterComplete = edgeFilterComplete;
+		this.upsert = upsert;
+		this.endpointResolver = endpointResolver;
+		if(endpointLabels != null)
+		{
+			this.vertexLabelV1 = endpointLabels[0];
+			this.vertexLabelV2 = endpointLabels[1];
+		}
 	}
-	
+
+	/*
+	 * vertices addressed by id come from the dictionary, which only holds
+	 * committed vertices, so there is no need to read them back to check
+	 * that they exist
+	 */
 	@Override
-	public void run() {
-		
-		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-		dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
-
-		boolean txSucceeded = false;
-		int txFailCount = 0;
-		
-		String keyLabelV1 = colNames[0];
-		String keyLabelV2 = colNames[1];
-		
-		do {
-			JanusGraphTransaction tx = graph.newTransaction();
-			for (int i = 0; i < threadLines.length; i++) {
-				String line = threadLines[i];
-
-				String[] colVals = line.split("\\|");
-				String keyValueV1 = colVals[0];
-				String keyValueV2 = colVals[1];
-				
-				GraphTraversalSource g = tx.traversal();
-				
-				try
-				{
-					// find the vertices
-					Vertex vertex1 = 
-							g.V().has(keyLabelV1, keyValueV1).next();
-					Vertex vertex2 = 
-							g.V().has(keyLabelV2, keyValueV2).next();
-					
-					// add the properties to the edge if exists
-					List<Object> keyValues = new ArrayList<Object>();
-					for (int j = 2; j < colVals.length; ++j) {
-						
-						String propertyName = colNames[j];
-						String stringValue = colVals[j];
-						
-						if(!stringValue.equals(""))
-						{
-							switch(propertyHasType.get(propertyName).getName())
-							{
-							case "java.lang.String" :
-							{
-								keyValues.add(propertyName);
-								keyValues.add(stringValue);
-								break;
-							}
-							case "java.lang.Boolean" :
-							{
-								keyValues.add(propertyName);
-								keyValues.add(Boolean.parseBoolean(stringValue));
-								break;
-							}
-							case "java.lang.Long" :
-							{
-								keyValues.add(propertyName);
-								keyValues.add(Long.parseLong(stringValue));
-								break;
-							}
-							case "java.lang.Integer" :
-							{
-								keyValues.add(propertyName);
-								keyValues.add(Integer.parseInt(stringValue));
-								break;
-							}
-							case "java.util.Date" :
-							{
-								try {
-									Date date = dateFormat.parse(stringValue);
-									keyValues.add(propertyName);
-									keyValues.add(date);
-								} catch (ParseException e) {
-									e.printStackTrace();
-								}
-							}
-							default :
-							{
-								break;
-							}
-							}
-						}
-					}
-					
-					vertex1.addEdge(edgeLabel, vertex2, keyValues.toArray());
-					
-					if (undirected) {
-						vertex2.addEdge(edgeLabel, vertex1, keyValues.toArray());
-					}
-
-				}catch(NoSuchElementException e)
-				{
-					System.out.println("vertex not found: "+ keyLabelV1 + "=" + keyValueV1 + " -" + edgeLabel + "-> " + keyLabelV2 + "=" + keyValueV2);
-				}
-			}
+	protected JanusGraphTransaction newTransaction() {
+		return transactionBuilder().checkExternalVertexExistence(false).start();
+	}
+
+	/*
+	 * find the endpoints of the rows of the chunk, and in upsert mode read
+	 * the edgeLabel edges going out of them at once
+	 */
+	@Override
+	protected void chunkLoading(JanusGraphTransaction tx, ParsedChunk<EdgeBatch> chunk) {
+		if(!upsert && endpointResolver == null)
+		{
+			return;
+		}
+		if(outVertices.length < chunk.size())
+		{
+			outVertices = new Vertex[chunk.size()];
+			inVertices = new Vertex[chunk.size()];
+		}
+		chunkFrom = chunk.getFrom();
+		GraphTraversalSource g = tx.traversal();
+		EdgeBatch batch = chunk.getBatch();
+
+		// the ids derived by idMapper need no lookup
+		boolean bulk = endpointResolver != null && idMapper == null;
+		ColumnVector typedKeysV1 = bulk ? batch.getVector(0) : null;
+		ColumnVector typedKeysV2 = bulk ? batch.getVector(1) : null;
+		Set<Object> missingV1 = new HashSet<>();
+		Set<Object> missingV2 = new HashSet<>();
+		for(int i = 0; i < chunk.size(); i++)
+		{
+			int row = chunkFrom + i;
+			outVertices[i] = endpoint(tx, g, dictionaryV1, vertexLabelV1, keyLabelV1, batch.getKeyValueV1(row),
+					typedKeysV1, row, missingV1);
+			inVertices[i] = endpoint(tx, g, dictionaryV2, vertexLabelV2, keyLabelV2, batch.getKeyValueV2(row),
+					typedKeysV2, row, missingV2);
+		}
+		resolveMissing(g, chunk.size(), outVertices, vertexLabelV1, keyLabelV1, typedKeysV1, missingV1);
+		resolveMissing(g, chunk.size(), inVertices, vertexLabelV2, keyLabelV2, typedKeysV2, missingV2);
+
+		if(upsert)
+		{
+			readEdges(tx, chunk.size());
+		}
+	}
 
+	/*
+	 * the endpoint of a row if it is found without reading the index, or by
+	 * reading it for this row only when typedKeys is null; otherwise its
+	 * typed key is added to missing and null is returned
+	 */
+	private Vertex endpoint(
+			JanusGraphTransaction tx,
+			GraphTraversalSource g,
+			KeyIdDictionary dictionary,
+			String vertexLabel,
+			String keyLabel,
+			String keyValue,
+			ColumnVector typedKeys,
+			int row,
+			Set<Object> missing)
+	{
+		if(typedKeys == null)
+		{
 			try {
-				tx.commit();
-				txSucceeded = true;
-			} catch (Exception e) {
-				txFailCount++;
+				return findVertex(tx, g, dictionary, vertexLabel, keyLabel, keyValue);
+			} catch (NoSuchElementException e) {
+				return null;
+			}
+		}
+		Vertex vertex = knownVertex(tx, dictionary, keyValue);
+		if(vertex == null && typedKeys.count(row) > 0)
+		{
+			missing.add(typedKeys.get(row, 0));
+		}
+		return vertex;
+	}
+
+	/*
+	 * look the missing keys up together and fill the endpoints left null
+	 */
+	private void resolveMissing(
+			GraphTraversalSource g,
+			int size,
+			Vertex[] vertices,
+			String vertexLabel,
+			String keyLabel,
+			ColumnVector typedKeys,
+			Set<Object> missing)
+	{
+		if(missing.isEmpty())
+		{
+			return;
+		}
+		Map<Object, Vertex> found = endpointResolver.resolve(g, vertexLabel, keyLabel, missing);
+		for(int i = 0; i < size; i++)
+		{
+			int row = chunkFrom + i;
+			if(vertices[i] == null && typedKeys.count(row) > 0)
+			{
+				vertices[i] = found.get(typedKeys.get(row, 0));
+			}
+		}
+	}
+
+	/*
+	 * read the edgeLabel edges going out of the endpoints of the chunk with a
+	 * single multi vertex query
+	 */
+	private void readEdges(JanusGraphTransaction tx, int size) {
+		Set<JanusGraphVertex> sources = new LinkedHashSet<>();
+		for(int i = 0; i < size; i++)
+		{
+			if(outVertices[i] == null || inVertices[i] == null)
+			{
+				continue;
+			}
+			sources.add((JanusGraphVertex) outVertices[i]);
+			if(undirected)
+			{
+				sources.add((JanusGraphVertex) inVertices[i]);
+			}
+		}
+		existingEdges.clear();
+		if(sources.isEmpty())
+		{
+			return;
+		}
+		Map<JanusGraphVertex, Iterable<JanusGraphEdge>> edges =
+				tx.multiQuery(sources).direction(Direction.OUT).labels(edgeLabel).edges();
+		for(Map.Entry<JanusGraphVertex, Iterable<JanusGraphEdge>> entry : edges.entrySet())
+		{
+			List<Edge> list = new ArrayList<>();
+			for(JanusGraphEdge edge : entry.getValue())
+			{
+				list.add(edge);
 			}
+			existingEdges.put(entry.getKey().id(), list);
+		}
+	}
+
+	@Override
+	protected int loadRow(JanusGraphTransaction tx, EdgeBatch batch, int row) {
 
-			if (txFailCount > txMaxRetries) {
-				throw new RuntimeException(String.format(
-						"ERROR: Transaction failed %d times, (file lines [%d,%d])" +  
-								"aborting...", txFailCount, lineCount + 2, (lineCount + 2) + (threadLines.length - 1)));
+		String keyValueV1 = batch.getKeyValueV1(row);
+		String keyValueV2 = batch.getKeyValueV2(row);
+
+		if(upsert)
+		{
+			return upsertRow(batch, row);
+		}
+
+		// find the vertices
+		Vertex vertex1;
+		Vertex vertex2;
+		if(endpointResolver != null)
+		{
+			vertex1 = outVertices[row - chunkFrom];
+			vertex2 = inVertices[row - chunkFrom];
+			if(vertex1 == null || vertex2 == null)
+			{
+				return missingVertex();
+			}
+		}else
+		{
+			GraphTraversalSource g = tx.traversal();
+			try
+			{
+				vertex1 = findVertex(tx, g, dictionaryV1, vertexLabelV1, keyLabelV1, keyValueV1);
+				vertex2 = findVertex(tx, g, dictionaryV2, vertexLabelV2, keyLabelV2, keyValueV2);
+			}catch(NoSuchElementException e)
+			{
+				return missingVertex();
+			}
+		}
+
+		Object[] keyValues = keyValueArray(batch.keyValueCount(row));
+		batch.keyValues(row, keyValues, 0);
+
+		int added = 0;
+		if(isNew(vertex1, vertex2))
+		{
+			vertex1.addEdge(edgeLabel, vertex2, keyValues);
+			added++;
+		}
+
+		if (undirected && isNew(vertex2, vertex1)) {
+			vertex2.addEdge(edgeLabel, vertex1, keyValues);
+			added++;
+		}
+		return added;
+	}
+
+	/*
+	 * counted, the total is reported once the file is loaded
+	 */
+	private int missingVertex() {
+		metrics.missingVertices().inc();
+		return 0;
+	}
+
+	private int upsertRow(EdgeBatch batch, int row) {
+		int i = row - chunkFrom;
+		Vertex vertex1 = outVertices[i];
+		Vertex vertex2 = inVertices[i];
+		if(vertex1 == null || vertex2 == null)
+		{
+			return missingVertex();
+		}
+
+		Object[] keyValues = keyValueArray(batch.keyValueCount(row));
+		batch.keyValues(row, keyValues, 0);
+		boolean tombstone = batch.isTombstone(row);
+
+		int written = upsertEdge(vertex1, vertex2, keyValues, tombstone);
+		if(undirected)
+		{
+			written += upsertEdge(vertex2, vertex1, keyValues, tombstone);
+		}
+		return written;
+	}
+
+	/*
+	 * add, update or remove the edge outVertex -edgeLabel-> inVertex,
+	 * returns the number of edges written
+	 */
+	private int upsertEdge(Vertex outVertex, Vertex inVertex, Object[] keyValues, boolean tombstone) {
+		List<Edge> edges = existingEdges.computeIfAbsent(outVertex.id(), id -> new ArrayList<>());
+		Iterator<Edge> iterator = edges.iterator();
+		while(iterator.hasNext())
+		{
+			Edge edge = iterator.next();
+			if(!edge.inVertex().id().equals(inVertex.id()))
+			{
+				continue;
+			}
+			if(tombstone)
+			{
+				edge.remove();
+				iterator.remove();
+				metrics.deleted().inc();
+				return 1;
+			}
+			for(int k = 0; k < keyValues.length; k += 2)
+			{
+				edge.property((String) keyValues[k], keyValues[k + 1]);
+			}
+			metrics.updated().inc();
+			return 1;
+		}
+		if(tombstone)
+		{
+			return 0;
+		}
+		// a later row of the chunk with the same endpoints updates it
+		edges.add(outVertex.addEdge(edgeLabel, inVertex, keyValues));
+		return 1;
+	}
+
+	/*
+	 * whether the edge outVertex -edgeLabel-> inVertex is not in the graph
+	 * yet, always true without an edge filter. A hit of the filter, or any
+	 * edge if the filter is not complete, is confirmed by reading the edges
+	 * of outVertex, in the transaction, so that the rows of a chunk that is
+	 * retried and the duplicates inside a chunk are told apart from the edges
+	 * already committed.
+	 */
+	private boolean isNew(Vertex outVertex, Vertex inVertex) {
+		if(edgeFilter == null)
+		{
+			return true;
+		}
+		JanusGraphVertex out = (JanusGraphVertex) outVertex;
+		if(!edgeFilter.put(out.longId(), edgeLabel, ((JanusGraphVertex) inVertex).longId()) && edgeFilterComplete)
+		{
+			return true;
+		}
+		if(out.query().direction(Direction.OUT).labels(edgeLabel).adjacent(inVertex).edges().iterator().hasNext())
+		{
+			metrics.duplicateEdges().inc();
+			return false;
+		}
+		return true;
+	}
+
+	/*
+	 * address the vertex by the id found in the dictionary, fall back to the
+	 * index on a miss; vertexLabel, if not null, restricts the lookup to the
+	 * vertices of that label
+	 */
+	private Vertex findVertex(
+			JanusGraphTransaction tx,
+			GraphTraversalSource g,
+			KeyIdDictionary dictionary,
+			String vertexLabel,
+			String keyLabel,
+			String keyValue)
+	{
+		if(idMapper != null)
+		{
+			return tx.vertices(idMapper.vertexId(VertexIdMapper.namespace(vertexLabel, keyLabel), keyValue)).next();
+		}
+		Vertex vertex = knownVertex(tx, dictionary, keyValue);
+		if(vertex != null)
+		{
+			return vertex;
+		}
+		if(vertexLabel != null)
+		{
+			return g.V().has(vertexLabel, keyLabel, keyValue).next();
+		}
+		return g.V().has(keyLabel, keyValue).next();
+	}
+
+	/*
+	 * the vertex of the id found in the dictionary, null on a miss
+	 */
+	private static Vertex knownVertex(JanusGraphTransaction tx, KeyIdDictionary dictionary, String keyValue) {
+		if(dictionary != null)
+		{
+			long id = dictionary.get(keyValue);
+			if(id != KeyIdDictionary.NO_ID)
+			{
+				Iterator<Vertex> vertices = tx.vertices(id);
+				if(vertices.hasNext())
+				{
+					return vertices.next();
+				}
 			}
-		} while (!txSucceeded);
+		}
+		return null;
 	}
 }
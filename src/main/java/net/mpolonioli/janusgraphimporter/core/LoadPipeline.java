@@ -0,0 +1,322 @@
+package net.mpolonioli.janusgraphimporter.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import com.codahale.metrics.Gauge;
+
+import net.mpolonioli.janusgraphimporter.io.DeadLetterWriter;
+import net.mpolonioli.janusgraphimporter.io.LineChunk;
+import net.mpolonioli.janusgraphimporter.journal.ImportJournal;
+import net.mpolonioli.janusgraphimporter.metrics.FileMetrics;
+
+/*
+ * a reader -> parse -> commit pipeline for a single file.
+ *
+ * The reader submits LineChunks, a pool of ParseThreads turns them into
+ * ParsedChunks and a pool of LoadThreads commits them, each chunk in its own
+ * transaction. The stages are connected by bounded queues, so a slow stage
+ * blocks the one in front of it instead of waiting on a batch barrier, and
+ * the threads live for the whole file. The RowBatch of a loaded chunk goes
+ * back to a pool the parse workers take their batches from, so the batches
+ * are only as many as the chunks in flight.
+ */
+public class LoadPipeline<B extends RowBatch> {
+
+	private static final long POLL_MILLIS = 100;
+
+	private String name;
+	private FileMetrics metrics;
+	private DeadLetterWriter deadLetterWriter;
+	private ImportJournal journal;
+	private BulkLoadSettings bulkLoadSettings;
+	private AdaptiveController controller;
+	private WriteThrottle throttle;
+	private BlockingQueue<LineChunk> lineQueue;
+	private BlockingQueue<ParsedChunk<B>> rowQueue;
+	// batches of loaded chunks, to be filled again
+	private ConcurrentLinkedQueue<B> batchPool = new ConcurrentLinkedQueue<>();
+	private List<ParseThread<B>> parseThreads = new ArrayList<>();
+	private List<LoadThread<B>> loadThreads = new ArrayList<>();
+
+	private volatile boolean linesClosed = false;
+	private volatile boolean rowsClosed = false;
+	private volatile int activeLoaders = Integer.MAX_VALUE;
+	private AtomicReference<RuntimeException> failure = new AtomicReference<>();
+	private AtomicLong committedLines = new AtomicLong();
+
+	public LoadPipeline(String name, int queueCapacity, FileMetrics metrics)
+	{
+		this.name = name;
+		this.metrics = metrics;
+		this.lineQueue = new ArrayBlockingQueue<>(queueCapacity);
+		this.rowQueue = new ArrayBlockingQueue<>(queueCapacity);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public FileMetrics getMetrics() {
+		return metrics;
+	}
+
+	/*
+	 * where the workers put the lines they cannot parse or load, instead of
+	 * failing the pipeline; must be set before the workers are added
+	 */
+	public void setDeadLetterWriter(DeadLetterWriter deadLetterWriter) {
+		this.deadLetterWriter = deadLetterWriter;
+	}
+
+	public DeadLetterWriter getDeadLetterWriter() {
+		return deadLetterWriter;
+	}
+
+	/*
+	 * where the committed chunks are recorded; must be set
+	 * before the workers are added
+	 */
+	public void setJournal(ImportJournal journal) {
+		this.journal = journal;
+	}
+
+	public ImportJournal getJournal() {
+		return journal;
+	}
+
+	/*
+	 * the settings of the transactions of the workers in bulk load mode, null
+	 * otherwise; must be set before the workers are added
+	 */
+	public void setBulkLoadSettings(BulkLoadSettings bulkLoadSettings) {
+		this.bulkLoadSettings = bulkLoadSettings;
+	}
+
+	public BulkLoadSettings getBulkLoadSettings() {
+		return bulkLoadSettings;
+	}
+
+	/*
+	 * the controller that tunes the chunk size and the active workers, null
+	 * for fixed values
+	 */
+	public void setController(AdaptiveController controller) {
+		this.controller = controller;
+	}
+
+	public AdaptiveController getController() {
+		return controller;
+	}
+
+	/*
+	 * the limit on the writes of the commit workers, null for none; must be
+	 * set before the workers are added
+	 */
+	public void setThrottle(WriteThrottle throttle) {
+		this.throttle = throttle;
+	}
+
+	public WriteThrottle getThrottle() {
+		return throttle;
+	}
+
+	/*
+	 * only the first n commit workers take chunks, the others wait
+	 */
+	public void setActiveLoaders(int n) {
+		this.activeLoaders = n;
+	}
+
+	/*
+	 * add a parse worker, which creates a batch with newBatch when the pool
+	 * is empty
+	 */
+	public void addParser(Supplier<B> newBatch) {
+		ParseThread<B> thread = new ParseThread<>(this, newBatch);
+		thread.setName(name + "-p" + parseThreads.size());
+		parseThreads.add(thread);
+	}
+
+	/*
+	 * add a commit worker
+	 */
+	public void addLoader(LoadThread<B> thread) {
+		thread.setName(name + "-t" + loadThreads.size());
+		thread.index = loadThreads.size();
+		loadThreads.add(thread);
+	}
+
+	public void start() {
+		metrics.registerGauge("queue.lines", (Gauge<Integer>) lineQueue::size);
+		metrics.registerGauge("queue.rows", (Gauge<Integer>) rowQueue::size);
+		if(controller != null)
+		{
+			controller.start();
+		}
+		for(Thread thread : parseThreads)
+		{
+			thread.start();
+		}
+		for(Thread thread : loadThreads)
+		{
+			thread.start();
+		}
+	}
+
+	/*
+	 * hand a chunk to the parse stage, blocking while the queue is full
+	 */
+	public void submit(LineChunk chunk) throws InterruptedException {
+		put(lineQueue, chunk);
+	}
+
+	/*
+	 * wait until every submitted chunk is committed and stop the workers;
+	 * rethrows the first error raised by a worker
+	 */
+	public void finish() throws InterruptedException {
+		linesClosed = true;
+		try {
+			for(Thread thread : parseThreads)
+			{
+				thread.join();
+			}
+			rowsClosed = true;
+			for(Thread thread : loadThreads)
+			{
+				thread.join();
+			}
+		} finally {
+			metrics.unregisterGauges();
+		}
+		checkFailure();
+	}
+
+	/*
+	 * stop the workers without waiting for the queued chunks
+	 */
+	public void abort() throws InterruptedException {
+		fail(new RuntimeException("ERROR: " + name + " aborted"));
+		try {
+			finish();
+		} catch (RuntimeException e) {
+			// the abort itself
+		}
+	}
+
+	public long getCommittedLines() {
+		return committedLines.get();
+	}
+
+	public boolean isFailed() {
+		return failure.get() != null;
+	}
+
+	void fail(RuntimeException e) {
+		failure.compareAndSet(null, e);
+	}
+
+	LineChunk takeLines() throws InterruptedException {
+		return take(lineQueue, false);
+	}
+
+	/*
+	 * an empty batch from the pool, null if the pool is empty
+	 */
+	B takeBatch() {
+		B batch = batchPool.poll();
+		if(batch != null)
+		{
+			batch.clear();
+		}
+		return batch;
+	}
+
+	/*
+	 * give back the batch of a loaded chunk
+	 */
+	void releaseBatch(B batch) {
+		batchPool.add(batch);
+	}
+
+	void putRows(ParsedChunk<B> chunk) throws InterruptedException {
+		put(rowQueue, chunk);
+	}
+
+	/*
+	 * the next chunk for the commit worker of the given index, waits while
+	 * the worker is not active
+	 */
+	ParsedChunk<B> takeRows(int loader) throws InterruptedException {
+		while(loader >= activeLoaders)
+		{
+			if(isFailed() || (rowsClosed && rowQueue.isEmpty()))
+			{
+				return null;
+			}
+			Thread.sleep(POLL_MILLIS);
+		}
+		return take(rowQueue, true);
+	}
+
+	void chunkCommitted(ParsedChunk<B> chunk) {
+		if(journal != null)
+		{
+			try {
+				journal.chunkCommitted(chunk.getSource());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		committedLines.addAndGet(chunk.getLines());
+		if(controller != null)
+		{
+			controller.chunkCommitted();
+		}
+	}
+
+	private void checkFailure() {
+		RuntimeException e = failure.get();
+		if(e != null)
+		{
+			throw e;
+		}
+	}
+
+	private <E> void put(BlockingQueue<E> queue, E element) throws InterruptedException {
+		while(!queue.offer(element, POLL_MILLIS, TimeUnit.MILLISECONDS))
+		{
+			checkFailure();
+		}
+		checkFailure();
+	}
+
+	/*
+	 * returns null once the stage is closed and drained, or the pipeline failed
+	 */
+	private <E> E take(BlockingQueue<E> queue, boolean rowStage) throws InterruptedException {
+		while(!isFailed())
+		{
+			E element = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			if(element != null)
+			{
+				return element;
+			}
+			if(rowStage ? rowsClosed : linesClosed)
+			{
+				return queue.poll();
+			}
+		}
+		return null;
+	}
+}
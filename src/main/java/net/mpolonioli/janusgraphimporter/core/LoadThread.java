@@ -0,0 +1,238 @@
+package net.mpolonioli.janusgraphimporter.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.TransactionBuilder;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+
+import net.mpolonioli.janusgraphimporter.io.DeadLetterWriter;
+import net.mpolonioli.janusgraphimporter.io.LineChunk;
+import net.mpolonioli.janusgraphimporter.metrics.FileMetrics;
+
+/*
+ * commit worker of a LoadPipeline: loads every ParsedChunk it takes in its
+ * own transaction, retrying the whole chunk with backoff when the commit
+ * fails. When the pipeline has a dead letter file, a chunk that still fails
+ * is split in halves and each half is loaded on its own, down to the single
+ * rows that are written to the dead letter file; otherwise it fails the
+ * pipeline.
+ */
+public abstract class LoadThread<B extends RowBatch> extends Thread {
+
+	protected JanusGraph graph;
+	protected FileMetrics metrics;
+	private LoadPipeline<B> pipeline;
+	// position in the pipeline, set by LoadPipeline.addLoader()
+	int index;
+	private RetryPolicy retryPolicy;
+	private DeadLetterWriter deadLetter;
+	private BulkLoadSettings bulkLoadSettings;
+	private WriteThrottle throttle;
+
+	private Timer commits;
+	private Timer workerCommits;
+	private Counter commitNanos;
+	private Meter commitFailures;
+	private Meter workerCommitFailures;
+	private Meter written;
+	private Meter workerWritten;
+
+	public LoadThread(LoadPipeline<B> pipeline, JanusGraph graph, RetryPolicy retryPolicy)
+	{
+		this.pipeline = pipeline;
+		this.graph = graph;
+		this.retryPolicy = retryPolicy;
+		this.metrics = pipeline.getMetrics();
+		this.deadLetter = pipeline.getDeadLetterWriter();
+		this.bulkLoadSettings = pipeline.getBulkLoadSettings();
+		this.throttle = pipeline.getThrottle();
+	}
+
+	// key/value arrays by length, reused from row to row
+	private Object[][] keyValueArrays = new Object[16][];
+
+	/*
+	 * add a single row of the batch to the given transaction, returns the
+	 * number of vertices or edges it added
+	 */
+	protected abstract int loadRow(JanusGraphTransaction tx, B batch, int row);
+
+	/*
+	 * an array of the given length for the key/values of addVertex or
+	 * addEdge, which read it without keeping it; every call for the same
+	 * length returns the same array
+	 */
+	protected Object[] keyValueArray(int length) {
+		if(length >= keyValueArrays.length)
+		{
+			keyValueArrays = Arrays.copyOf(keyValueArrays, length * 2);
+		}
+		Object[] keyValues = keyValueArrays[length];
+		if(keyValues == null)
+		{
+			keyValues = new Object[length];
+			keyValueArrays[length] = keyValues;
+		}
+		return keyValues;
+	}
+
+	/*
+	 * a transaction builder, tuned when the pipeline runs in bulk load mode
+	 */
+	protected TransactionBuilder transactionBuilder() {
+		TransactionBuilder builder = graph.buildTransaction();
+		return bulkLoadSettings == null ? builder : bulkLoadSettings.tune(builder);
+	}
+
+	/*
+	 * open the transaction of a chunk attempt
+	 */
+	protected JanusGraphTransaction newTransaction() {
+		return transactionBuilder().start();
+	}
+
+	/*
+	 * called before every attempt to load a chunk
+	 */
+	protected void chunkStarted(ParsedChunk<B> chunk) {
+	}
+
+	/*
+	 * called with the transaction of every attempt to load a chunk before
+	 * its rows are loaded, to read what the rows need in bulk
+	 */
+	protected void chunkLoading(JanusGraphTransaction tx, ParsedChunk<B> chunk) {
+	}
+
+	/*
+	 * called once the transaction of a chunk is committed; when a chunk is
+	 * split, called for each part that is committed
+	 */
+	protected void chunkCommitted(ParsedChunk<B> chunk) {
+	}
+
+	@Override
+	public void run() {
+		commits = metrics.commits();
+		workerCommits = metrics.commits(getName());
+		commitNanos = metrics.commitNanos();
+		commitFailures = metrics.commitFailures();
+		workerCommitFailures = metrics.commitFailures(getName());
+		written = metrics.written();
+		workerWritten = metrics.written(getName());
+		try {
+			ParsedChunk<B> chunk;
+			while((chunk = pipeline.takeRows(index)) != null)
+			{
+				loadChunk(chunk, retryPolicy);
+				pipeline.chunkCommitted(chunk);
+				pipeline.releaseBatch(chunk.getBatch());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			pipeline.fail(e);
+		}
+	}
+
+	/*
+	 * load a chunk, retrying its commit as the given policy allows
+	 */
+	private void loadChunk(ParsedChunk<B> chunk, RetryPolicy policy) throws InterruptedException {
+
+		int txFailCount = 0;
+		while(true)
+		{
+			chunkStarted(chunk);
+			JanusGraphTransaction tx = newTransaction();
+			int chunkWritten = 0;
+			try {
+				chunkLoading(tx, chunk);
+				B batch = chunk.getBatch();
+				for(int row = chunk.getFrom(); row < chunk.getTo(); row++)
+				{
+					chunkWritten += loadRow(tx, batch, row);
+				}
+			} catch (RuntimeException e) {
+				tx.rollback();
+				// the same rows would fail again, so do not retry
+				isolate(chunk, e.toString(), new RuntimeException(String.format(
+						"ERROR: Could not load (file lines [%d,%d])" +
+								"aborting...", chunk.getFirstFileLine(), chunk.getLastFileLine()), e));
+				return;
+			}
+
+			if(throttle != null)
+			{
+				throttle.acquire(chunkWritten, chunk.getBytes());
+			}
+			long commitStart = System.nanoTime();
+			try {
+				tx.commit();
+			} catch (Exception e) {
+				txFailCount++;
+				commitFailures.mark();
+				workerCommitFailures.mark();
+				if (txFailCount > policy.getMaxRetries()) {
+					isolate(chunk, e.toString(), new RuntimeException(String.format(
+							"ERROR: Transaction failed %d times, (file lines [%d,%d])" +
+									"aborting...", txFailCount, chunk.getFirstFileLine(), chunk.getLastFileLine()), e));
+					return;
+				}
+				Thread.sleep(policy.backoffMillis(txFailCount));
+				continue;
+			}
+			long commitTime = System.nanoTime() - commitStart;
+			if(throttle != null)
+			{
+				throttle.commitTook(commitTime, chunkWritten);
+			}
+			commitNanos.inc(commitTime);
+			commits.update(commitTime, TimeUnit.NANOSECONDS);
+			workerCommits.update(commitTime, TimeUnit.NANOSECONDS);
+			written.mark(chunkWritten);
+			workerWritten.mark(chunkWritten);
+			chunkCommitted(chunk);
+			return;
+		}
+	}
+
+	/*
+	 * a chunk that cannot be loaded: without a dead letter file fail with the
+	 * given error, otherwise load its halves separately so that only the rows
+	 * that fail on their own end up in the dead letter file. The halves get
+	 * RetryPolicy.ISOLATE instead of the retries of the whole chunk, so that
+	 * a bad row reaches the dead letter file after a retry per split level
+	 * rather than a full backoff sequence per level.
+	 */
+	private void isolate(ParsedChunk<B> chunk, String reason, RuntimeException error) throws InterruptedException {
+		if(deadLetter == null)
+		{
+			throw error;
+		}
+		if(chunk.size() == 1)
+		{
+			LineChunk source = chunk.getSource();
+			int line = chunk.getSourceLine(0);
+			try {
+				deadLetter.write(chunk.getFileLine(0), reason,
+						source.getBuffer(), source.getLineStart(line), source.getLineEnd(line));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			metrics.deadLetters().inc();
+			return;
+		}
+		int half = chunk.size() / 2;
+		loadChunk(chunk.subChunk(0, half), RetryPolicy.ISOLATE);
+		loadChunk(chunk.subChunk(half, chunk.size()), RetryPolicy.ISOLATE);
+	}
+}
@@ -1,195 +1,229 @@
 package net.mpolonioli.janusgraphimporter.core;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
-import java.util.TimeZone;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
 
 import org.apache.tinkerpop.gremlin.structure.T;
-import org.janusgraph.core.Cardinality;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
 import org.janusgraph.core.JanusGraph;
 import org.janusgraph.core.JanusGraphTransaction;
 import org.janusgraph.core.JanusGraphVertex;
 
-public class LoadVerticiesThread extends Thread {
-	
-	private JanusGraph graph;
-	private String[] colNames;
-	private String vertexLabel;
-	private long txMaxRetries;
-	private String[] threadLines;
-	private long lineCount;
-	private @SuppressWarnings("rawtypes") HashMap<String, Class> propertyHasType;
-	private HashMap<String, Cardinality> propertyHasCardinality;
-	
+import net.mpolonioli.janusgraphimporter.codec.ColumnBinding;
+import net.mpolonioli.janusgraphimporter.dictionary.KeyIdDictionary;
+import net.mpolonioli.janusgraphimporter.dictionary.VertexIdMapper;
+import net.mpolonioli.janusgraphimporter.journal.ImportJournal;
+
+public class LoadVerticiesThread extends LoadThread<VertexBatch> {
+
+	private ColumnBinding[] columns;
+	// the columns with a cardinality other than SINGLE
+	private int[] multiColumns;
+	private KeyIdDictionary dictionary;
+	private VertexIdMapper idMapper;
+	private String keyName;
+	// the label the keys are scoped by, null if they are not
+	private String scopeLabel;
+	private String keyNamespace;
+	private ImportJournal journal;
+	// null unless the rows are upserted
+	private KeyResolver keyResolver;
+
+	// key -> vertex of the keys of the current chunk attempt already in the graph
+	private Map<Object, Vertex> existingVertices = Collections.emptyMap();
+
+	// the vertices added by the current chunk attempt
+	private String[] addedKeys = new String[0];
+	private JanusGraphVertex[] addedVertices = new JanusGraphVertex[0];
+	private long[] addedIds = new long[0];
+	private int addedCount;
+
+	/*
+	 * dictionary may be null, otherwise it gets the key -> id of every vertex
+	 * once its transaction is committed, also recorded in the journal of the
+	 * pipeline if there is one. When idMapper is not null every vertex gets
+	 * the id it derives from its key.
+	 *
+	 * When upsert is true a row whose key is already in the graph updates the
+	 * vertex of the key instead of adding one: its SINGLE properties are set,
+	 * the values of the others are added, and a row flagged by the tombstone
+	 * column of the batch removes it. The vertices of the keys of a chunk are
+	 * read with a few multi-key index queries before the rows are loaded. A
+	 * removed vertex keeps its entry in the dictionary.
+	 *
+	 * When scopeLabel is not null the keys are unique within that label only:
+	 * the ids derived by idMapper and the upsert lookups are scoped by it.
+	 */
 	public LoadVerticiesThread(
+			LoadPipeline<VertexBatch> pipeline,
 			JanusGraph graph,
-			String[] colNames,
-			String vertexLabel,
-			long txMaxRetries,
-			String[] threadLines,
-			long lineCount,
-			@SuppressWarnings("rawtypes") HashMap<String, Class> propertyHasType,
-			HashMap<String, Cardinality> propertyHasCardinality
+			RetryPolicy retryPolicy,
+			ColumnBinding[] columns,
+			KeyIdDictionary dictionary,
+			VertexIdMapper idMapper,
+			boolean upsert,
+			String scopeLabel
 			) {
-		this.graph = graph;
-		this.colNames = colNames;
-		this.vertexLabel = vertexLabel;
-		this.threadLines = threadLines;
-		this.lineCount = lineCount;
-		this.propertyHasType = propertyHasType;
-		this.propertyHasCardinality = propertyHasCardinality;
+		super(pipeline, graph, retryPolicy);
+		this.columns = columns;
+		this.dictionary = dictionary;
+		this.idMapper = idMapper;
+		this.keyName = columns[0].getName();
+		this.scopeLabel = scopeLabel;
+		this.keyNamespace = VertexIdMapper.namespace(scopeLabel, keyName);
+		this.multiColumns = IntStream.range(0, columns.length).filter(j -> columns[j].isMultiValued()).toArray();
+		this.journal = pipeline.getJournal();
+		this.keyResolver = upsert ? new KeyResolver(KeyResolver.DEFAULT_KEYS_PER_QUERY) : null;
 	}
 
 	@Override
-	public void run() {
-		
-
-		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-		dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
-
-		boolean txSucceeded = false;
-		int txFailCount = 0;
-		do {
-			JanusGraphTransaction tx = graph.newTransaction();
-						
-			for (int i = 0; i < threadLines.length; i++) {
-
-				String line = threadLines[i];
-
-				String[] colVals = line.split("\\|");
-
-				List<Object> keyValues = new ArrayList<Object>();
-				HashMap<String, List<Object>> propertyHasValues = new HashMap<>();
-				for (int j = 0; j < colVals.length; ++j) {
-					String propertyName = colNames[j];
-					String valueLine = colVals[j];
-					if(!valueLine.equals(""))
-					{
-						if(propertyHasCardinality.get(propertyName).equals(Cardinality.SINGLE))
-						{
-							switch(propertyHasType.get(propertyName).getName())
-							{
-							case "java.lang.String" :
-							{
-								keyValues.add(propertyName);
-								keyValues.add(valueLine);
-								break;
-							}
-							case "java.lang.Boolean" :
-							{
-								keyValues.add(propertyName);
-								keyValues.add(Boolean.parseBoolean(valueLine));
-								break;
-							}
-							case "java.lang.Long" :
-							{
-								keyValues.add(propertyName);
-								keyValues.add(Long.parseLong(valueLine));
-								break;
-							}
-							case "java.lang.Integer" :
-							{
-								keyValues.add(propertyName);
-								keyValues.add(Integer.parseInt(valueLine));
-								break;
-							}
-							case "java.util.Date" :
-							{
-								try {
-									Date date = dateFormat.parse(valueLine);
-									keyValues.add(propertyName);
-									keyValues.add(date);
-								} catch (ParseException e) {
-									e.printStackTrace();
-								}
-							}
-							default :
-							{
-								break;
-							}
-							}
-
-						}else
-						{
-							propertyHasValues.put(propertyName, new ArrayList<Object>());
-							String[] stringValues = colVals[j].split(";");
-							for(int v = 0; v < stringValues.length; v++)
-							{
-								String stringValue = stringValues[v];
-
-								switch(propertyHasType.get(propertyName).getName())
-								{
-								case "java.lang.String" :
-								{
-									propertyHasValues.get(propertyName).add(stringValue);
-									break;
-								}
-								case "java.lang.Boolean" :
-								{
-									propertyHasValues.get(propertyName).add(Boolean.parseBoolean(stringValue));
-									break;
-								}
-								case "java.lang.Long" :
-								{
-									propertyHasValues.get(propertyName).add(Long.parseLong(stringValue));
-									break;
-								}
-								case "java.lang.Integer" :
-								{
-									propertyHasValues.get(propertyName).add(Integer.parseInt(stringValue));
-									break;
-								}
-								case "java.util.Date" :
-								{
-									try {
-										Date date = dateFormat.parse(valueLine);
-										propertyHasValues.get(propertyName).add(date);
-									} catch (ParseException e) {
-										e.printStackTrace();
-									}
-								}
-								default :
-								{
-									break;
-								}
-								}
-							}
-						}
-					}
-				}
+	protected void chunkStarted(ParsedChunk<VertexBatch> chunk) {
+		if(dictionary != null && addedKeys.length < chunk.size())
+		{
+			addedKeys = new String[chunk.size()];
+			addedVertices = new JanusGraphVertex[chunk.size()];
+			addedIds = new long[chunk.size()];
+		}
+		addedCount = 0;
+	}
 
-				keyValues.add(T.label);
-				keyValues.add(vertexLabel);
-				
-				// loading the vertex with the property with cardinality Single
-				JanusGraphVertex addedVertex = tx.addVertex(keyValues.toArray());
-				
-				// loading all properties with cardinality List to the vertex
-				for(String key : propertyHasValues.keySet())
+	@Override
+	protected void chunkLoading(JanusGraphTransaction tx, ParsedChunk<VertexBatch> chunk) {
+		if(keyResolver == null)
+		{
+			return;
+		}
+		ColumnVector keys = chunk.getBatch().getVector(0);
+		Set<Object> values = new LinkedHashSet<>();
+		for(int row = chunk.getFrom(); row < chunk.getTo(); row++)
+		{
+			if(keys.count(row) > 0)
+			{
+				values.add(keys.get(row, 0));
+			}
+		}
+		existingVertices = keyResolver.resolve(tx.traversal(), scopeLabel, keyName, values);
+	}
+
+	@Override
+	protected int loadRow(JanusGraphTransaction tx, VertexBatch batch, int row) {
+
+		if(keyResolver != null)
+		{
+			Object key = batch.getVector(0).get(row, 0);
+			Vertex existing = existingVertices.get(key);
+			if(batch.isTombstone(row))
+			{
+				if(existing == null)
 				{
-					for(Object value : propertyHasValues.get(key))
-					{
-						addedVertex.property(propertyHasCardinality.get(key).convert(), key, value);
-					}
+					return 0;
 				}
+				existing.remove();
+				existingVertices.remove(key);
+				metrics.deleted().inc();
+				return 1;
+			}
+			if(existing != null)
+			{
+				updateVertex((JanusGraphVertex) existing, batch, row);
+				metrics.updated().inc();
+				return 1;
 			}
+		}
 
-			try {
-				tx.commit();
-				txSucceeded = true;
-			} catch (Exception e) {
-				txFailCount++;
+		// loading the vertex with the property with cardinality Single
+		int length = batch.keyValueCount(row);
+		Object[] keyValues = keyValueArray(idMapper == null ? length : length + 2);
+		batch.keyValues(row, keyValues, 0);
+		if(idMapper != null)
+		{
+			keyValues[length] = T.id;
+			keyValues[length + 1] = idMapper.newVertexId(keyNamespace, batch.getKey(row));
+		}
+		JanusGraphVertex addedVertex = tx.addVertex(keyValues);
+
+		// loading all properties with cardinality List to the vertex
+		for(int j : multiColumns)
+		{
+			ColumnBinding column = columns[j];
+			ColumnVector values = batch.getVector(j);
+			for(int i = 0; i < values.count(row); i++)
+			{
+				addedVertex.property(column.getVertexCardinality(), column.getName(), values.get(row, i));
+			}
+		}
+
+		if(keyResolver != null)
+		{
+			// a later row of the chunk with the same key updates it
+			existingVertices.put(batch.getVector(0).get(row, 0), addedVertex);
+		}
+		added(batch, row, addedVertex);
+		return 1;
+	}
+
+	/*
+	 * set the properties of the row on a vertex already in the graph, the
+	 * key excluded
+	 */
+	private void updateVertex(JanusGraphVertex vertex, VertexBatch batch, int row) {
+		for(int j = 1; j < columns.length; j++)
+		{
+			ColumnVector values = batch.getVector(j);
+			if(values == null || !columns[j].isProperty() || values.count(row) == 0)
+			{
+				continue;
+			}
+			ColumnBinding column = columns[j];
+			if(!column.isMultiValued())
+			{
+				vertex.property(column.getName(), values.get(row, 0));
+			}
+			else
+			{
+				for(int i = 0; i < values.count(row); i++)
+				{
+					vertex.property(column.getVertexCardinality(), column.getName(), values.get(row, i));
+				}
 			}
+		}
+		added(batch, row, vertex);
+	}
 
-			if (txFailCount > txMaxRetries) {
-				throw new RuntimeException(String.format(
-						"ERROR: Transaction failed %d times, (file lines [%d,%d])" +  
-								"aborting...", txFailCount, lineCount + 2, (lineCount + 2) + (threadLines.length - 1)));
+	private void added(VertexBatch batch, int row, JanusGraphVertex vertex) {
+		if(dictionary != null)
+		{
+			addedKeys[addedCount] = batch.getKey(row);
+			addedVertices[addedCount] = vertex;
+			addedCount++;
+		}
+	}
+
+	@Override
+	protected void chunkCommitted(ParsedChunk<VertexBatch> chunk) {
+		if(dictionary == null)
+		{
+			return;
+		}
+		// ids are final only once the transaction is committed
+		for(int i = 0; i < addedCount; i++)
+		{
+			addedIds[i] = addedVertices[i].longId();
+			addedVertices[i] = null;
+		}
+		dictionary.putAll(addedKeys, addedIds, addedCount);
+		if(journal != null)
+		{
+			try {
+				journal.vertexIds(chunk.getSource(), addedKeys, addedIds, addedCount);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
 			}
-		} while (!txSucceeded);
+		}
 	}
 }
@@ -0,0 +1,79 @@
+package net.mpolonioli.janusgraphimporter.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Supplier;
+
+import com.codahale.metrics.Meter;
+
+import net.mpolonioli.janusgraphimporter.io.CsvRow;
+import net.mpolonioli.janusgraphimporter.io.DeadLetterWriter;
+import net.mpolonioli.janusgraphimporter.io.LineChunk;
+
+/*
+ * parse worker of a LoadPipeline: tokenizes the lines of LineChunks and
+ * parses them into RowBatches taken from the pool of the pipeline, new ones
+ * only when the pool is empty, skipping blank lines. A line that cannot be
+ * parsed goes to the dead letter file of the pipeline if there is one,
+ * otherwise it fails the pipeline.
+ */
+public class ParseThread<B extends RowBatch> extends Thread {
+
+	private LoadPipeline<B> pipeline;
+	private Supplier<B> newBatch;
+	private CsvRow row = new CsvRow();
+
+	public ParseThread(LoadPipeline<B> pipeline, Supplier<B> newBatch)
+	{
+		this.pipeline = pipeline;
+		this.newBatch = newBatch;
+	}
+
+	@Override
+	public void run() {
+		Meter rowsParsed = pipeline.getMetrics().rowsParsed();
+		Meter workerRowsParsed = pipeline.getMetrics().rowsParsed(getName());
+		DeadLetterWriter deadLetter = pipeline.getDeadLetterWriter();
+		try {
+			LineChunk chunk;
+			while((chunk = pipeline.takeLines()) != null)
+			{
+				B batch = pipeline.takeBatch();
+				if(batch == null)
+				{
+					batch = newBatch.get();
+				}
+				for (int i = 0; i < chunk.size(); i++) {
+					row.reset(chunk.getBuffer(), chunk.getLineStart(i), chunk.getLineEnd(i));
+					if(row.isBlank())
+					{
+						continue;
+					}
+					try {
+						batch.add(row, i);
+					} catch (RuntimeException e) {
+						if(deadLetter == null)
+						{
+							throw new RuntimeException(String.format(
+									"ERROR: Could not parse line %d, (file lines [%d,%d])" +
+											"aborting...", chunk.getLineCount() + 2 + i,
+									chunk.getLineCount() + 2, (chunk.getLineCount() + 2) + (chunk.size() - 1)), e);
+						}
+						deadLetter.write(chunk.getLineCount() + 2 + i, e.toString(),
+								chunk.getBuffer(), chunk.getLineStart(i), chunk.getLineEnd(i));
+						pipeline.getMetrics().deadLetters().inc();
+					}
+				}
+				rowsParsed.mark(batch.size());
+				workerRowsParsed.mark(batch.size());
+				pipeline.putRows(new ParsedChunk<>(chunk, batch));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			pipeline.fail(new UncheckedIOException(e));
+		} catch (RuntimeException e) {
+			pipeline.fail(e);
+		}
+	}
+}
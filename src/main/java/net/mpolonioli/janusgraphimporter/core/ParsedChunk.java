@@ -0,0 +1,108 @@
+package net.mpolonioli.janusgraphimporter.core;
+
+import net.mpolonioli.janusgraphimporter.io.LineChunk;
+
+/*
+ * the rows [from, to) of a RowBatch parsed from a LineChunk, handed from
+ * the parse stage to the commit stage of a LoadPipeline; row i of the chunk
+ * is row from + i of the batch
+ */
+public class ParsedChunk<B extends RowBatch> {
+
+	private final LineChunk source;
+	private final B batch;
+	private final int from;
+	private final int to;
+
+	public ParsedChunk(LineChunk source, B batch)
+	{
+		this(source, batch, 0, batch.size());
+	}
+
+	private ParsedChunk(LineChunk source, B batch, int from, int to)
+	{
+		this.source = source;
+		this.batch = batch;
+		this.from = from;
+		this.to = to;
+	}
+
+	public LineChunk getSource() {
+		return source;
+	}
+
+	public B getBatch() {
+		return batch;
+	}
+
+	/*
+	 * the first row of the batch in this chunk
+	 */
+	public int getFrom() {
+		return from;
+	}
+
+	/*
+	 * the row of the batch after the last one in this chunk
+	 */
+	public int getTo() {
+		return to;
+	}
+
+	/*
+	 * the line of the LineChunk of the given row of the chunk
+	 */
+	public int getSourceLine(int row) {
+		return batch.getSourceLine(from + row);
+	}
+
+	public long getLineCount() {
+		return source.getLineCount();
+	}
+
+	public int size() {
+		return to - from;
+	}
+
+	/*
+	 * the number of lines of the LineChunk, blank and rejected lines included
+	 */
+	public int getLines() {
+		return source.size();
+	}
+
+	/*
+	 * the size of the lines of the rows, line terminators excluded
+	 */
+	public long getBytes() {
+		long bytes = 0;
+		for(int row = from; row < to; row++)
+		{
+			int line = batch.getSourceLine(row);
+			bytes += source.getLineEnd(line) - source.getLineStart(line);
+		}
+		return bytes;
+	}
+
+	/*
+	 * the rows [from, to) of this chunk
+	 */
+	public ParsedChunk<B> subChunk(int from, int to) {
+		return new ParsedChunk<>(source, batch, this.from + from, this.from + to);
+	}
+
+	/*
+	 * line number of the given row in the file, header included
+	 */
+	public long getFileLine(int row) {
+		return source.getLineCount() + 2 + getSourceLine(row);
+	}
+
+	public long getFirstFileLine() {
+		return size() == 0 ? source.getLineCount() + 2 : getFileLine(0);
+	}
+
+	public long getLastFileLine() {
+		return size() == 0 ? source.getLineCount() + 1 + source.size() : getFileLine(size() - 1);
+	}
+}
@@ -0,0 +1,48 @@
+package net.mpolonioli.janusgraphimporter.core;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * how a LoadThread retries a chunk whose transaction fails to commit:
+ * at most maxRetries times, pausing between attempts for an exponentially
+ * growing, jittered backoff
+ */
+public class RetryPolicy {
+
+	public static final RetryPolicy DEFAULT = new RetryPolicy(20, 100, 30000);
+	// the parts of a chunk being split to find its bad rows: one more
+	// attempt, without pause, since the whole chunk already used its retries
+	public static final RetryPolicy ISOLATE = new RetryPolicy(1, 0, 0);
+
+	private final int maxRetries;
+	private final long initialBackoffMillis;
+	private final long maxBackoffMillis;
+
+	public RetryPolicy(int maxRetries, long initialBackoffMillis, long maxBackoffMillis)
+	{
+		this.maxRetries = maxRetries;
+		this.initialBackoffMillis = initialBackoffMillis;
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	/*
+	 * the pause before the given retry (1 for the first one): half of
+	 * initialBackoff * 2^(retry - 1), capped at maxBackoff, plus a random
+	 * amount up to the other half, so that workers failing together on the
+	 * same region do not retry together
+	 */
+	public long backoffMillis(int retry) {
+		long backoff = maxBackoffMillis;
+		int shift = retry - 1;
+		if(shift < 62 && initialBackoffMillis <= (maxBackoffMillis >> shift))
+		{
+			backoff = initialBackoffMillis << shift;
+		}
+		long half = backoff / 2;
+		return half + ThreadLocalRandom.current().nextLong(backoff - half + 1);
+	}
+}
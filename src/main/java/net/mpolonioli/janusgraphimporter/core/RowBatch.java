@@ -0,0 +1,160 @@
+package net.mpolonioli.janusgraphimporter.core;
+
+import java.util.Arrays;
+
+import net.mpolonioli.janusgraphimporter.codec.ColumnBinding;
+import net.mpolonioli.janusgraphimporter.io.CsvRow;
+
+/*
+ * the rows parsed from a LineChunk, kept by column in ColumnVectors.
+ *
+ * A batch is filled by a ParseThread, loaded by a LoadThread and given back
+ * to the pool of the LoadPipeline to be filled again, so that in the steady
+ * state the parse stage allocates nothing besides the strings and the
+ * objects of the types without a primitive codec. Row i comes from line
+ * getSourceLine(i) of the LineChunk.
+ */
+public abstract class RowBatch {
+
+	protected final ColumnBinding[] columns;
+	// the vector of each bound column, null for the others
+	protected final ColumnVector[] vectors;
+	// the flag column, -1 if none
+	private final int tombstoneColumn;
+	private int[] sourceLines = new int[64];
+	private int size = 0;
+
+	protected RowBatch(ColumnBinding[] columns)
+	{
+		this.columns = columns;
+		this.vectors = new ColumnVector[columns.length];
+		int tombstone = -1;
+		for(int j = 0; j < columns.length; j++)
+		{
+			if(columns[j] != null)
+			{
+				vectors[j] = new ColumnVector(columns[j]);
+				if(!columns[j].isProperty() && tombstone < 0)
+				{
+					tombstone = j;
+				}
+			}
+		}
+		this.tombstoneColumn = tombstone;
+	}
+
+	public ColumnBinding[] getColumns() {
+		return columns;
+	}
+
+	/*
+	 * the values of the given column, null for an unbound one
+	 */
+	public ColumnVector getVector(int column) {
+		return vectors[column];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getSourceLine(int row) {
+		return sourceLines[row];
+	}
+
+	/*
+	 * whether the flag column of the batch, if any, marks the row deleted
+	 */
+	public boolean isTombstone(int row) {
+		if(tombstoneColumn < 0)
+		{
+			return false;
+		}
+		ColumnVector flag = vectors[tombstoneColumn];
+		return flag.count(row) > 0 && Boolean.TRUE.equals(flag.get(row, 0));
+	}
+
+	/*
+	 * drop all the rows
+	 */
+	public void clear() {
+		for(ColumnVector vector : vectors)
+		{
+			if(vector != null)
+			{
+				vector.clear();
+			}
+		}
+		size = 0;
+	}
+
+	/*
+	 * parse a line into a new row; when it throws the row is not added
+	 */
+	public void add(CsvRow row, int sourceLine) {
+		if(size == sourceLines.length)
+		{
+			sourceLines = Arrays.copyOf(sourceLines, size * 2);
+		}
+		for(ColumnVector vector : vectors)
+		{
+			if(vector != null)
+			{
+				vector.startRow(size);
+			}
+		}
+		parseRow(row, size);
+		for(ColumnVector vector : vectors)
+		{
+			if(vector != null)
+			{
+				vector.endRow(size);
+			}
+		}
+		sourceLines[size++] = sourceLine;
+	}
+
+	/*
+	 * fill the given row: the row specific fields and the vectors
+	 */
+	protected abstract void parseRow(CsvRow row, int index);
+
+	/*
+	 * write the name/value pairs of the SINGLE valued properties of the row
+	 * from the given column on to keyValues, from offset; returns the offset
+	 * after the last pair
+	 */
+	protected int singleKeyValues(int row, int firstColumn, Object[] keyValues, int offset) {
+		for(int j = firstColumn; j < vectors.length; j++)
+		{
+			ColumnVector vector = vectors[j];
+			if(vector != null && isSingleProperty(j) && vector.count(row) > 0)
+			{
+				keyValues[offset++] = columns[j].getName();
+				keyValues[offset++] = vector.get(row, 0);
+			}
+		}
+		return offset;
+	}
+
+	/*
+	 * the number of SINGLE valued properties of the row with a value, from the
+	 * given column on
+	 */
+	protected int singleCount(int row, int firstColumn) {
+		int count = 0;
+		for(int j = firstColumn; j < vectors.length; j++)
+		{
+			ColumnVector vector = vectors[j];
+			if(vector != null && isSingleProperty(j) && vector.count(row) > 0)
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	protected boolean isSingleProperty(int column) {
+		return columns[column].isProperty() && !columns[column].isMultiValued();
+	}
+}
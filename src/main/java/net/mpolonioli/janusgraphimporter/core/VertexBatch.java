@@ -0,0 +1,87 @@
+package net.mpolonioli.janusgraphimporter.core;
+
+import java.util.Arrays;
+
+import org.apache.tinkerpop.gremlin.structure.T;
+
+import net.mpolonioli.janusgraphimporter.codec.ColumnBinding;
+import net.mpolonioli.janusgraphimporter.io.CsvRow;
+
+/*
+ * a batch of parsed vertex lines: the value of the key column of every row
+ * and the values of every column, the multiple values of the properties
+ * with a cardinality other than SINGLE included
+ */
+public class VertexBatch extends RowBatch {
+
+	private String vertexLabel;
+	private String[] keys = new String[64];
+	private CsvRow values = new CsvRow(CsvRow.VALUE_SEPARATOR);
+
+	public VertexBatch(ColumnBinding[] columns, String vertexLabel)
+	{
+		super(columns);
+		this.vertexLabel = vertexLabel;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(keys, 0, size(), null);
+		super.clear();
+	}
+
+	@Override
+	protected void parseRow(CsvRow row, int index) {
+		if(index == keys.length)
+		{
+			keys = Arrays.copyOf(keys, index * 2);
+		}
+		for (int j = 0; j < row.size(); ++j) {
+			if(row.isEmpty(j))
+			{
+				continue;
+			}
+			ColumnVector vector = vectors[j];
+			if(!columns[j].isMultiValued())
+			{
+				vector.add(row, j);
+			}else
+			{
+				values.reset(row.getBuffer(), row.getStart(j), row.getEnd(j));
+				for(int v = 0; v < values.size(); v++)
+				{
+					if(!values.isEmpty(v))
+					{
+						vector.add(values, v);
+					}
+				}
+			}
+		}
+		keys[index] = row.getString(0);
+	}
+
+	/*
+	 * the value of the first column, the one edge files refer to
+	 */
+	public String getKey(int row) {
+		return keys[row];
+	}
+
+	/*
+	 * the length of the key/values passed to addVertex for the row
+	 */
+	public int keyValueCount(int row) {
+		return 2 * singleCount(row, 0) + 2;
+	}
+
+	/*
+	 * write the key/values passed to addVertex for the row, the label
+	 * included, to keyValues from offset; returns the offset after them
+	 */
+	public int keyValues(int row, Object[] keyValues, int offset) {
+		offset = singleKeyValues(row, 0, keyValues, offset);
+		keyValues[offset++] = T.label;
+		keyValues[offset++] = vertexLabel;
+		return offset;
+	}
+}
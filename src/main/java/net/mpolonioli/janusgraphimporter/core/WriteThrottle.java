@@ -0,0 +1,166 @@
+package net.mpolonioli.janusgraphimporter.core;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/*
+ * a limit on the writes of all the loads of an importer, shared by all their
+ * commit workers: at most mutationsPerSecond vertices or edges and
+ * bytesPerSecond bytes of input lines per second, 0 meaning unlimited. The
+ * limits can be changed while the loads run.
+ *
+ * With a latency threshold set, every commit slower than the threshold
+ * lowers the limits by BACKOFF, and every faster one raises them back by
+ * RECOVERY up to the configured values. When no mutation limit is set, the
+ * back off starts from the write rate of the last WINDOW_COMMITS commits,
+ * their vertices and edges over the time they took to commit, at least
+ * MIN_BASELINE, so that idle periods between the loads do not lower it.
+ *
+ * A single acquire takes at most a second worth of the limit, so that a
+ * large chunk at a low limit does not hold the next commits for minutes.
+ */
+public class WriteThrottle {
+
+	private static final double BACKOFF = 0.8;
+	private static final double RECOVERY = 1.02;
+	private static final double MIN_FACTOR = 0.01;
+	private static final int WINDOW_COMMITS = 64;
+	private static final double MIN_BASELINE = 100;
+
+	private RateLimiter mutationLimiter = RateLimiter.create(1);
+	private RateLimiter byteLimiter = RateLimiter.create(1);
+
+	private double mutationsPerSecond;
+	private double bytesPerSecond;
+	private volatile long latencyThresholdNanos = 0;
+
+	// the mutations and commit times of the last WINDOW_COMMITS commits, a ring
+	private int[] windowMutations = new int[WINDOW_COMMITS];
+	private long[] windowNanos = new long[WINDOW_COMMITS];
+	private int windowNext = 0;
+
+	// scale of the limits set by the latency back off, 1 when not backing off
+	private double factor = 1;
+	private double observedMutationsPerSecond = 0;
+	private volatile boolean mutationsLimited;
+	private volatile boolean bytesLimited;
+
+	public WriteThrottle(double mutationsPerSecond, double bytesPerSecond)
+	{
+		this.mutationsPerSecond = mutationsPerSecond;
+		this.bytesPerSecond = bytesPerSecond;
+		applyRates();
+	}
+
+	public synchronized void setMutationsPerSecond(double mutationsPerSecond) {
+		this.mutationsPerSecond = mutationsPerSecond;
+		applyRates();
+	}
+
+	public synchronized void setBytesPerSecond(double bytesPerSecond) {
+		this.bytesPerSecond = bytesPerSecond;
+		applyRates();
+	}
+
+	/*
+	 * back off when commits take longer than the given time, 0 to disable
+	 */
+	public synchronized void setLatencyThreshold(long millis) {
+		this.latencyThresholdNanos = millis * 1000000;
+		if(millis == 0)
+		{
+			factor = 1;
+			applyRates();
+		}
+	}
+
+	public synchronized double getFactor() {
+		return factor;
+	}
+
+	/*
+	 * wait for the permission to commit the given number of vertices or
+	 * edges, read from the given number of bytes
+	 */
+	public void acquire(int mutationCount, long byteCount) {
+		if(mutationsLimited && mutationCount > 0)
+		{
+			mutationLimiter.acquire(bounded(mutationLimiter, mutationCount));
+		}
+		if(bytesLimited && byteCount > 0)
+		{
+			byteLimiter.acquire(bounded(byteLimiter, byteCount));
+		}
+	}
+
+	/*
+	 * feed the latency of a successful commit of the given number of
+	 * vertices or edges to the back off
+	 */
+	public void commitTook(long nanos, int mutationCount) {
+		if(latencyThresholdNanos == 0)
+		{
+			return;
+		}
+		synchronized(this)
+		{
+			windowMutations[windowNext] = mutationCount;
+			windowNanos[windowNext] = nanos;
+			windowNext = (windowNext + 1) % WINDOW_COMMITS;
+			if(nanos > latencyThresholdNanos)
+			{
+				if(factor == 1)
+				{
+					observedMutationsPerSecond = windowRate();
+				}
+				factor = Math.max(MIN_FACTOR, factor * BACKOFF);
+			}
+			else if(factor < 1)
+			{
+				factor = Math.min(1, factor * RECOVERY);
+			}
+			else
+			{
+				return;
+			}
+			applyRates();
+		}
+	}
+
+	/*
+	 * the vertices and edges of the commits of the window over their commit
+	 * time, per second, at least MIN_BASELINE
+	 */
+	private double windowRate() {
+		long mutationCount = 0;
+		long nanos = 0;
+		for(int i = 0; i < WINDOW_COMMITS; i++)
+		{
+			mutationCount += windowMutations[i];
+			nanos += windowNanos[i];
+		}
+		return nanos == 0 ? MIN_BASELINE : Math.max(MIN_BASELINE, mutationCount * 1e9 / nanos);
+	}
+
+	/*
+	 * the permits to take for the given count, at most a second worth of the
+	 * rate of the limiter
+	 */
+	private static int bounded(RateLimiter limiter, long count) {
+		return (int) Math.max(1, Math.min(count, Math.min(Integer.MAX_VALUE, (long) limiter.getRate())));
+	}
+
+	private synchronized void applyRates() {
+		double mutationRate = mutationsPerSecond > 0 ? mutationsPerSecond :
+			(factor < 1 ? observedMutationsPerSecond : 0);
+		mutationsLimited = mutationRate > 0;
+		if(mutationsLimited)
+		{
+			mutationLimiter.setRate(mutationRate * factor);
+		}
+		bytesLimited = bytesPerSecond > 0;
+		if(bytesLimited)
+		{
+			byteLimiter.setRate(bytesPerSecond * factor);
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package net.mpolonioli.janusgraphimporter.dictionary;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/*
+ * a Bloom filter of (out vertex id, label, in vertex id) triples, to find
+ * the edges that may have been loaded already without reading the graph.
+ *
+ * The bits live off heap, in direct buffers of at most SEGMENT_BYTES each,
+ * so that a filter of billions of edges neither counts against the heap nor
+ * slows the garbage collector. The k bit positions of a triple come from
+ * the two halves of its 128 bit murmur3 hash (double hashing). Bits are set
+ * under striped locks, so that no concurrent put is lost.
+ */
+public class EdgeBloomFilter {
+
+	private static final int SEGMENT_BYTES = 1 << 30;
+	private static final int SEGMENT_WORDS = SEGMENT_BYTES / Long.BYTES;
+	private static final int LOCK_STRIPES = 1024;
+	private static final HashFunction HASH = Hashing.murmur3_128();
+
+	private final long bitCount;
+	private final int hashCount;
+	private final LongBuffer[] segments;
+	private final Object[] locks = new Object[LOCK_STRIPES];
+
+	/*
+	 * sized for the given number of edges at the given false positive rate
+	 */
+	public EdgeBloomFilter(long expectedEdges, double falsePositiveRate)
+	{
+		if(expectedEdges < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1)
+		{
+			throw new IllegalArgumentException(
+					"ERROR: a Bloom filter needs expected edges >= 1 and a false positive rate in (0, 1)");
+		}
+		long bits = (long) Math.ceil(-expectedEdges * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		long words = (Math.max(bits, Long.SIZE) + Long.SIZE - 1) / Long.SIZE;
+		this.bitCount = words * Long.SIZE;
+		this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedEdges * Math.log(2)));
+		this.segments = new LongBuffer[(int) ((words + SEGMENT_WORDS - 1) / SEGMENT_WORDS)];
+		for(int i = 0; i < segments.length; i++)
+		{
+			long segmentWords = Math.min(SEGMENT_WORDS, words - (long) i * SEGMENT_WORDS);
+			segments[i] = ByteBuffer.allocateDirect((int) segmentWords * Long.BYTES).asLongBuffer();
+		}
+		for(int i = 0; i < LOCK_STRIPES; i++)
+		{
+			locks[i] = new Object();
+		}
+	}
+
+	public long getBitCount() {
+		return bitCount;
+	}
+
+	public int getHashCount() {
+		return hashCount;
+	}
+
+	/*
+	 * add the edge to the filter; returns false if it was certainly not in
+	 * it, true if it may have been (a duplicate or a false positive)
+	 */
+	public boolean put(long outId, String label, long inId) {
+		HashCode hash = HASH.newHasher()
+				.putLong(outId)
+				.putString(label, StandardCharsets.UTF_8)
+				.putLong(inId)
+				.hash();
+		byte[] bytes = hash.asBytes();
+		long hash1 = 0;
+		long hash2 = 0;
+		for(int i = 0; i < 8; i++)
+		{
+			hash1 |= (bytes[i] & 0xFFL) << (8 * i);
+			hash2 |= (bytes[8 + i] & 0xFFL) << (8 * i);
+		}
+
+		boolean present = true;
+		long combined = hash1;
+		for(int i = 0; i < hashCount; i++)
+		{
+			long bit = Long.remainderUnsigned(combined, bitCount);
+			long word = bit >>> 6;
+			long mask = 1L << bit;
+			LongBuffer segment = segments[(int) (word / SEGMENT_WORDS)];
+			int index = (int) (word % SEGMENT_WORDS);
+			synchronized(locks[(int) (word % LOCK_STRIPES)])
+			{
+				long value = segment.get(index);
+				if((value & mask) == 0)
+				{
+					present = false;
+					segment.put(index, value | mask);
+				}
+			}
+			combined += hash2;
+		}
+		return present;
+	}
+}
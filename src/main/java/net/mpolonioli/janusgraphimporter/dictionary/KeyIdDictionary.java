@@ -0,0 +1,39 @@
+package net.mpolonioli.janusgraphimporter.dictionary;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/*
+ * maps the CSV key of a vertex to its JanusGraph vertex id, filled by the
+ * vertex loads and read by the edge loads; implementations are thread-safe.
+ *
+ * A key put twice with different ids is marked ambiguous and reported as
+ * missing, so that the caller falls back to an index lookup.
+ */
+public interface KeyIdDictionary extends Closeable {
+
+	long NO_ID = 0;
+
+	/*
+	 * record the id of the vertex with the given key
+	 */
+	void put(String key, long id);
+
+	/*
+	 * record the first count key/id pairs at once
+	 */
+	void putAll(String[] keys, long[] ids, int count);
+
+	/*
+	 * the id of the vertex with the given key, NO_ID if unknown or ambiguous
+	 */
+	long get(String key);
+
+	long size();
+
+	void clear();
+
+	@Override
+	default void close() throws IOException {
+	}
+}
@@ -0,0 +1,379 @@
+package net.mpolonioli.janusgraphimporter.dictionary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/*
+ * a KeyIdDictionary kept in a memory mapped file, for graphs whose keys do
+ * not fit in the heap; the file is reused when it already exists, so that
+ * the ids of the vertices loaded by a run are found by the next one.
+ *
+ * The file is an open addressing table of 24 byte slots { key, key, id },
+ * mapped in segments of 2^24 slots. A key in canonical decimal form is
+ * stored as { key, 0 }, any other key as its 128 bit murmur3 hash with the
+ * lowest bit set, so that every lookup reads a single slot, plus the next
+ * ones on a collision: about one random page read per miss of the page
+ * cache, which SSDs serve at a high rate. The table doubles, into a new file
+ * that replaces the old one, when it is more than 60% full; size it up front
+ * to avoid it. The number of entries is kept in the header of the file on
+ * every put.
+ *
+ * An optional cache of the most used keys sits in front of the table.
+ */
+public class MappedVertexIdDictionary implements KeyIdDictionary {
+
+	private static final int MAGIC = 0x4A474431;
+	private static final int HEADER_BYTES = 64;
+	private static final int CAPACITY_OFFSET = 8;
+	private static final int SIZE_OFFSET = 16;
+	private static final int SLOT_BYTES = 24;
+	private static final int SEGMENT_BITS = 24;
+	private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+	private static final long AMBIGUOUS = -1;
+	private static final float MAX_LOAD = 0.6f;
+	private static final HashFunction HASH = Hashing.murmur3_128();
+
+	private File file;
+	private ReadWriteLock lock = new ReentrantReadWriteLock();
+	private FileChannel channel;
+	private MappedByteBuffer header;
+	private MappedByteBuffer[] segments;
+	private long capacity;
+	private long size;
+	// key -> id of the keys read last, null without a cache
+	private Cache<String, Long> hotKeys;
+
+	/*
+	 * open the dictionary of the given file, creating it for expectedSize
+	 * keys if missing; cacheSize is the number of keys of the cache, 0 for
+	 * none
+	 */
+	public MappedVertexIdDictionary(File file, long expectedSize, int cacheSize) throws IOException
+	{
+		this.file = file;
+		if(cacheSize > 0)
+		{
+			hotKeys = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
+		}
+		if(file.exists() && file.length() > 0)
+		{
+			open();
+		}else
+		{
+			create(file, tableCapacity(expectedSize));
+			open();
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	@Override
+	public void put(String key, long id) {
+		long[] slotKey = slotKey(key);
+		lock.writeLock().lock();
+		try {
+			putUnlocked(key, slotKey[0], slotKey[1], id);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * record the first count key/id pairs under a single lock
+	 */
+	@Override
+	public void putAll(String[] keys, long[] ids, int count) {
+		long[][] slotKeys = new long[count][];
+		for(int i = 0; i < count; i++)
+		{
+			slotKeys[i] = slotKey(keys[i]);
+		}
+		lock.writeLock().lock();
+		try {
+			for(int i = 0; i < count; i++)
+			{
+				putUnlocked(keys[i], slotKeys[i][0], slotKeys[i][1], ids[i]);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public long get(String key) {
+		if(hotKeys != null)
+		{
+			Long cached = hotKeys.getIfPresent(key);
+			if(cached != null)
+			{
+				return cached;
+			}
+		}
+		long[] slotKey = slotKey(key);
+		lock.readLock().lock();
+		try {
+			long id = idAt(segments, findSlot(segments, capacity, slotKey[0], slotKey[1]));
+			if(id == AMBIGUOUS)
+			{
+				return NO_ID;
+			}
+			// under the read lock, so that a put marking the key ambiguous invalidates it after
+			if(id != NO_ID && hotKeys != null)
+			{
+				hotKeys.put(key, id);
+			}
+			return id;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public long size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * drop all the entries, the file keeps its capacity
+	 */
+	@Override
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			channel.close();
+			create(file, capacity);
+			open();
+			if(hotKeys != null)
+			{
+				hotKeys.invalidateAll();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("ERROR: could not clear " + file, e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * write the table to the disk and close the file
+	 */
+	@Override
+	public void close() throws IOException {
+		lock.writeLock().lock();
+		try {
+			if(channel.isOpen())
+			{
+				force(header, segments);
+				channel.close();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void putUnlocked(String key, long key1, long key2, long id) {
+		if(size + 1 > capacity * MAX_LOAD)
+		{
+			grow();
+		}
+		long slot = findSlot(segments, capacity, key1, key2);
+		long previous = idAt(segments, slot);
+		if(previous == NO_ID)
+		{
+			writeSlot(segments, slot, key1, key2, id);
+			size++;
+			header.putLong(SIZE_OFFSET, size);
+		}
+		else if(previous != id && previous != AMBIGUOUS)
+		{
+			writeSlot(segments, slot, key1, key2, AMBIGUOUS);
+			if(hotKeys != null)
+			{
+				hotKeys.invalidate(key);
+			}
+		}
+	}
+
+	/*
+	 * rehash the table into a file twice as large, which replaces this one
+	 */
+	private void grow() {
+		File grown = new File(file.getPath() + ".grow");
+		try {
+			long grownCapacity = capacity * 2;
+			create(grown, grownCapacity);
+			try(RandomAccessFile grownFile = new RandomAccessFile(grown, "rw"))
+			{
+				FileChannel grownChannel = grownFile.getChannel();
+				MappedByteBuffer grownHeader = grownChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+				MappedByteBuffer[] grownSegments = map(grownChannel, grownCapacity);
+				for(long slot = 0; slot < capacity; slot++)
+				{
+					long id = idAt(segments, slot);
+					if(id != NO_ID)
+					{
+						MappedByteBuffer segment = segments[(int) (slot >>> SEGMENT_BITS)];
+						int offset = (int) (slot & SEGMENT_MASK) * SLOT_BYTES;
+						long key1 = segment.getLong(offset);
+						long key2 = segment.getLong(offset + 8);
+						writeSlot(grownSegments, findSlot(grownSegments, grownCapacity, key1, key2), key1, key2, id);
+					}
+				}
+				grownHeader.putLong(SIZE_OFFSET, size);
+				force(grownHeader, grownSegments);
+			}
+			channel.close();
+			Files.move(grown.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			open();
+		} catch (IOException e) {
+			throw new IllegalStateException("ERROR: could not grow " + file, e);
+		}
+	}
+
+	/*
+	 * map the file and read its header
+	 */
+	private void open() throws IOException {
+		@SuppressWarnings("resource")
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		channel = randomAccessFile.getChannel();
+		header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+		if(header.getInt(0) != MAGIC)
+		{
+			channel.close();
+			throw new IOException("ERROR: " + file + " is not a key -> id dictionary");
+		}
+		capacity = header.getLong(CAPACITY_OFFSET);
+		size = header.getLong(SIZE_OFFSET);
+		if(file.length() < HEADER_BYTES + capacity * SLOT_BYTES)
+		{
+			channel.close();
+			throw new IOException("ERROR: " + file + " is truncated");
+		}
+		segments = map(channel, capacity);
+	}
+
+	/*
+	 * write an empty table of the given capacity to the file; the slots are
+	 * not written, the file is sparse until they are
+	 */
+	private static void create(File file, long capacity) throws IOException {
+		try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw"))
+		{
+			randomAccessFile.setLength(0);
+			randomAccessFile.setLength(HEADER_BYTES + capacity * SLOT_BYTES);
+			randomAccessFile.writeInt(MAGIC);
+			randomAccessFile.seek(CAPACITY_OFFSET);
+			randomAccessFile.writeLong(capacity);
+			randomAccessFile.writeLong(0);
+		}
+	}
+
+	private static MappedByteBuffer[] map(FileChannel channel, long capacity) throws IOException {
+		long segmentSlots = 1L << SEGMENT_BITS;
+		MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((capacity + segmentSlots - 1) / segmentSlots)];
+		for(int i = 0; i < segments.length; i++)
+		{
+			long slots = Math.min(segmentSlots, capacity - i * segmentSlots);
+			segments[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+					HEADER_BYTES + i * segmentSlots * SLOT_BYTES, slots * SLOT_BYTES);
+		}
+		return segments;
+	}
+
+	private static void force(MappedByteBuffer header, MappedByteBuffer[] segments) {
+		for(MappedByteBuffer segment : segments)
+		{
+			segment.force();
+		}
+		header.force();
+	}
+
+	/*
+	 * the slot holding the key, or the free slot where it goes
+	 */
+	private static long findSlot(MappedByteBuffer[] segments, long capacity, long key1, long key2) {
+		long mask = capacity - 1;
+		for(long slot = mix(key1 ^ (key2 * 0x9E3779B97F4A7C15L)) & mask; ; slot = (slot + 1) & mask)
+		{
+			MappedByteBuffer segment = segments[(int) (slot >>> SEGMENT_BITS)];
+			int offset = (int) (slot & SEGMENT_MASK) * SLOT_BYTES;
+			if(segment.getLong(offset + 16) == NO_ID
+					|| (segment.getLong(offset) == key1 && segment.getLong(offset + 8) == key2))
+			{
+				return slot;
+			}
+		}
+	}
+
+	private static long idAt(MappedByteBuffer[] segments, long slot) {
+		return segments[(int) (slot >>> SEGMENT_BITS)].getLong((int) (slot & SEGMENT_MASK) * SLOT_BYTES + 16);
+	}
+
+	private static void writeSlot(MappedByteBuffer[] segments, long slot, long key1, long key2, long id) {
+		MappedByteBuffer segment = segments[(int) (slot >>> SEGMENT_BITS)];
+		int offset = (int) (slot & SEGMENT_MASK) * SLOT_BYTES;
+		segment.putLong(offset, key1);
+		segment.putLong(offset + 8, key2);
+		segment.putLong(offset + 16, id);
+	}
+
+	/*
+	 * { key, key } of the slot of a key
+	 */
+	private static long[] slotKey(String key) {
+		if(VertexIdDictionary.isNumeric(key))
+		{
+			return new long[] { Long.parseLong(key), 0 };
+		}
+		HashCode hash = HASH.hashString(key, StandardCharsets.UTF_8);
+		byte[] bytes = hash.asBytes();
+		long key1 = 0;
+		long key2 = 0;
+		for(int i = 0; i < 8; i++)
+		{
+			key1 = (key1 << 8) | (bytes[i] & 0xFF);
+			key2 = (key2 << 8) | (bytes[8 + i] & 0xFF);
+		}
+		return new long[] { key1, key2 | 1 };
+	}
+
+	private static long tableCapacity(long expectedSize) {
+		long capacity = 1024;
+		while(capacity * MAX_LOAD < expectedSize)
+		{
+			capacity *= 2;
+		}
+		return capacity;
+	}
+
+	private static long mix(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return key;
+	}
+}
@@ -0,0 +1,368 @@
+package net.mpolonioli.janusgraphimporter.dictionary;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * a KeyIdDictionary on the heap.
+ *
+ * Keys in canonical decimal form (the common case) are kept as longs in an
+ * open addressing table of primitive arrays; any other key is kept in a
+ * second table whose characters live in a single char arena. Nothing is
+ * boxed and there is no object per entry. A table holds at most
+ * MAX_CAPACITY slots, a larger dictionary must be memory mapped (see
+ * MappedVertexIdDictionary).
+ */
+public class VertexIdDictionary implements KeyIdDictionary {
+
+	private static final long AMBIGUOUS = -1;
+	private static final float MAX_LOAD = 0.6f;
+	private static final int MAX_NUMERIC_DIGITS = 18;
+	// the largest power of two an int array length can be
+	private static final int MAX_CAPACITY = 1 << 30;
+	// the VM refuses arrays a few elements short of Integer.MAX_VALUE
+	private static final int MAX_ARENA = Integer.MAX_VALUE - 8;
+
+	private ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// numeric keys: a slot is free when its id is NO_ID
+	private long[] numKeys;
+	private long[] numIds;
+	private int numSize = 0;
+
+	// other keys: strSlots holds entry index + 1, 0 when free
+	private int[] strSlots;
+	private int[] strHashes;
+	private int[] strOffsets;
+	private int[] strLengths;
+	private long[] strIds;
+	private char[] arena;
+	private int arenaSize = 0;
+	private int strSize = 0;
+
+	public VertexIdDictionary()
+	{
+		this(1024);
+	}
+
+	public VertexIdDictionary(int expectedSize)
+	{
+		int capacity = tableCapacity(expectedSize);
+		numKeys = new long[capacity];
+		numIds = new long[capacity];
+		strSlots = new int[16];
+		strHashes = new int[16];
+		strOffsets = new int[16];
+		strLengths = new int[16];
+		strIds = new long[16];
+		arena = new char[256];
+	}
+
+	@Override
+	public void put(String key, long id) {
+		lock.writeLock().lock();
+		try {
+			putUnlocked(key, id);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * record the first count key/id pairs under a single lock
+	 */
+	@Override
+	public void putAll(String[] keys, long[] ids, int count) {
+		lock.writeLock().lock();
+		try {
+			for(int i = 0; i < count; i++)
+			{
+				putUnlocked(keys[i], ids[i]);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public long get(String key) {
+		lock.readLock().lock();
+		try {
+			long id;
+			if(isNumeric(key))
+			{
+				id = getNumeric(Long.parseLong(key));
+			}else
+			{
+				id = getString(key);
+			}
+			return id == AMBIGUOUS ? NO_ID : id;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public long size() {
+		lock.readLock().lock();
+		try {
+			return numSize + strSize;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			Arrays.fill(numKeys, 0);
+			Arrays.fill(numIds, NO_ID);
+			Arrays.fill(strSlots, 0);
+			numSize = 0;
+			strSize = 0;
+			arenaSize = 0;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void putUnlocked(String key, long id) {
+		if(isNumeric(key))
+		{
+			putNumeric(Long.parseLong(key), id);
+		}else
+		{
+			putString(key, id);
+		}
+	}
+
+	/*
+	 * numeric table
+	 */
+
+	private long getNumeric(long key) {
+		int mask = numKeys.length - 1;
+		for(int slot = mix(key) & mask; ; slot = (slot + 1) & mask)
+		{
+			if(numIds[slot] == NO_ID)
+			{
+				return NO_ID;
+			}
+			if(numKeys[slot] == key)
+			{
+				return numIds[slot];
+			}
+		}
+	}
+
+	private void putNumeric(long key, long id) {
+		if(numSize + 1 > numKeys.length * MAX_LOAD)
+		{
+			growNumeric();
+		}
+		int mask = numKeys.length - 1;
+		for(int slot = mix(key) & mask; ; slot = (slot + 1) & mask)
+		{
+			if(numIds[slot] == NO_ID)
+			{
+				numKeys[slot] = key;
+				numIds[slot] = id;
+				numSize++;
+				return;
+			}
+			if(numKeys[slot] == key)
+			{
+				if(numIds[slot] != id)
+				{
+					numIds[slot] = AMBIGUOUS;
+				}
+				return;
+			}
+		}
+	}
+
+	private void growNumeric() {
+		long[] oldKeys = numKeys;
+		long[] oldIds = numIds;
+		int capacity = grownCapacity(oldKeys.length, numSize);
+		numKeys = new long[capacity];
+		numIds = new long[capacity];
+		int mask = numKeys.length - 1;
+		for(int i = 0; i < oldKeys.length; i++)
+		{
+			if(oldIds[i] != NO_ID)
+			{
+				int slot = mix(oldKeys[i]) & mask;
+				while(numIds[slot] != NO_ID)
+				{
+					slot = (slot + 1) & mask;
+				}
+				numKeys[slot] = oldKeys[i];
+				numIds[slot] = oldIds[i];
+			}
+		}
+	}
+
+	/*
+	 * string table
+	 */
+
+	private long getString(String key) {
+		int hash = mix(key.hashCode());
+		int mask = strSlots.length - 1;
+		for(int slot = hash & mask; ; slot = (slot + 1) & mask)
+		{
+			int entry = strSlots[slot] - 1;
+			if(entry < 0)
+			{
+				return NO_ID;
+			}
+			if(strHashes[entry] == hash && arenaEquals(entry, key))
+			{
+				return strIds[entry];
+			}
+		}
+	}
+
+	private void putString(String key, long id) {
+		if(strSize + 1 > strSlots.length * MAX_LOAD)
+		{
+			growString();
+		}
+		int hash = mix(key.hashCode());
+		int mask = strSlots.length - 1;
+		for(int slot = hash & mask; ; slot = (slot + 1) & mask)
+		{
+			int entry = strSlots[slot] - 1;
+			if(entry < 0)
+			{
+				entry = strSize++;
+				if(arenaSize + key.length() > arena.length)
+				{
+					growArena(key.length());
+				}
+				key.getChars(0, key.length(), arena, arenaSize);
+				strHashes[entry] = hash;
+				strOffsets[entry] = arenaSize;
+				strLengths[entry] = key.length();
+				strIds[entry] = id;
+				arenaSize += key.length();
+				strSlots[slot] = entry + 1;
+				return;
+			}
+			if(strHashes[entry] == hash && arenaEquals(entry, key))
+			{
+				if(strIds[entry] != id)
+				{
+					strIds[entry] = AMBIGUOUS;
+				}
+				return;
+			}
+		}
+	}
+
+	private void growString() {
+		int capacity = grownCapacity(strSlots.length, strSize);
+		strSlots = new int[capacity];
+		strHashes = Arrays.copyOf(strHashes, capacity);
+		strOffsets = Arrays.copyOf(strOffsets, capacity);
+		strLengths = Arrays.copyOf(strLengths, capacity);
+		strIds = Arrays.copyOf(strIds, capacity);
+		int mask = capacity - 1;
+		for(int entry = 0; entry < strSize; entry++)
+		{
+			int slot = strHashes[entry] & mask;
+			while(strSlots[slot] != 0)
+			{
+				slot = (slot + 1) & mask;
+			}
+			strSlots[slot] = entry + 1;
+		}
+	}
+
+	private void growArena(int length) {
+		long needed = (long) arenaSize + length;
+		if(needed > MAX_ARENA)
+		{
+			throw new IllegalStateException("ERROR: the keys of the dictionary take more than " + MAX_ARENA +
+					" chars, use setDictionaryDirectory to keep the dictionaries in memory mapped files");
+		}
+		arena = Arrays.copyOf(arena, (int) Math.min(MAX_ARENA, Math.max(2L * arena.length, needed)));
+	}
+
+	private boolean arenaEquals(int entry, String key) {
+		int length = strLengths[entry];
+		if(length != key.length())
+		{
+			return false;
+		}
+		int offset = strOffsets[entry];
+		for(int i = 0; i < length; i++)
+		{
+			if(arena[offset + i] != key.charAt(i))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * true if the key is a long written the way Long.toString writes it,
+	 * so that "01" and "1" stay different keys
+	 */
+	public static boolean isNumeric(String key) {
+		int length = key.length();
+		int start = (length > 0 && key.charAt(0) == '-') ? 1 : 0;
+		int digits = length - start;
+		if(digits == 0 || digits > MAX_NUMERIC_DIGITS)
+		{
+			return false;
+		}
+		if(key.charAt(start) == '0' && (digits > 1 || start == 1))
+		{
+			return false;
+		}
+		for(int i = start; i < length; i++)
+		{
+			char c = key.charAt(i);
+			if(c < '0' || c > '9')
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int tableCapacity(int expectedSize) {
+		int capacity = 16;
+		while(capacity < MAX_CAPACITY && capacity * MAX_LOAD < expectedSize)
+		{
+			capacity *= 2;
+		}
+		return capacity;
+	}
+
+	/*
+	 * twice the capacity of a full table, if it is allowed
+	 */
+	private static int grownCapacity(int capacity, int size) {
+		if(capacity >= MAX_CAPACITY)
+		{
+			throw new IllegalStateException("ERROR: the dictionary is full at " + size + " keys, " +
+					"use setDictionaryDirectory to keep the dictionaries in memory mapped files");
+		}
+		return capacity * 2;
+	}
+
+	private static int mix(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+}
@@ -0,0 +1,214 @@
+package net.mpolonioli.janusgraphimporter.dictionary;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/*
+ * derives the JanusGraph vertex id of a vertex from the name of its key
+ * property and its key, so that the loads of the edges, in this process or
+ * in another one, compute the ids of the endpoints instead of looking them
+ * up. The graph must be opened with graph.set-vertex-id.
+ *
+ * A vertex id is laid out as JanusGraph's IDManager lays out the ids of
+ * normal vertices: ((count << partition bits) | partition) << 3, with
+ * partition bits = log2(cluster.max-partitions). The count is
+ *
+ * 0 | key name code (10 bits) | key		for numeric keys that fit
+ * 1 | hash of key name and key			for any other key
+ *
+ * and the partition is a hash of the count. Numeric keys map one to one; the
+ * codes of the key names are checked for collisions, and so are the hashes
+ * of the vertices created through this instance (see newVertexId), in a
+ * table of 16 bytes per key: a collision throws. The ids only looked up, by
+ * the edge loads, are not recorded, and the keys mapped by different
+ * processes are not checked against each other.
+ */
+public class VertexIdMapper {
+
+	public static final int DEFAULT_MAX_PARTITIONS = 32;
+
+	private static final int PADDING_BITS = 3;
+	private static final int CODE_BITS = 10;
+	private static final HashFunction HASH = Hashing.murmur3_128();
+	private static final int STRIPES = 64;
+
+	private final int partitionBits;
+	private final int numericBits;
+	private final long hashMask;
+
+	// key name code -> key name
+	private ConcurrentHashMap<Integer, String> codes = new ConcurrentHashMap<>();
+	// hashed id -> fingerprint of its key name and key, for the vertices created
+	private HashedIds[] hashedIds = new HashedIds[STRIPES];
+
+	/*
+	 * maxPartitions is the cluster.max-partitions of the graph, a power of 2
+	 */
+	public VertexIdMapper(int maxPartitions)
+	{
+		if(maxPartitions < 1 || Integer.bitCount(maxPartitions) != 1)
+		{
+			throw new IllegalArgumentException("ERROR: cluster.max-partitions must be a power of 2, got " + maxPartitions);
+		}
+		this.partitionBits = Integer.numberOfTrailingZeros(maxPartitions);
+		int countBits = Long.SIZE - 1 - PADDING_BITS - partitionBits;
+		this.numericBits = countBits - 1 - CODE_BITS;
+		this.hashMask = (1L << (countBits - 1)) - 1;
+		for(int i = 0; i < STRIPES; i++)
+		{
+			hashedIds[i] = new HashedIds();
+		}
+	}
+
+	/*
+	 * the name the keys of a vertex label are mapped under, by this class and
+	 * by the key -> id dictionaries: the key name, or the label and the key
+	 * name when the keys are scoped by label (vertexLabel not null), so that
+	 * labels sharing a key name do not share ids
+	 */
+	public static String namespace(String vertexLabel, String keyName) {
+		return vertexLabel == null ? keyName : vertexLabel + ":" + keyName;
+	}
+
+	/*
+	 * the vertex id of the given key
+	 */
+	public long vertexId(String keyName, String key) {
+		return vertexId(keyName, key, false);
+	}
+
+	/*
+	 * the id of a vertex about to be created with the given key; throws if it
+	 * is already the id of a vertex created with another key
+	 */
+	public long newVertexId(String keyName, String key) {
+		return vertexId(keyName, key, true);
+	}
+
+	private long vertexId(String keyName, String key, boolean created) {
+		long count;
+		long numericKey = numericKey(key);
+		if(numericKey >= 0)
+		{
+			count = ((long) code(keyName) << numericBits) | numericKey;
+		}
+		else
+		{
+			long[] hash = hash(keyName, key);
+			count = (hashMask + 1) | (hash[0] & hashMask);
+			if(created && !hashedIds[(int) ((hash[1] >>> 1) % STRIPES)].add(count, hash[1]))
+			{
+				throw new IllegalStateException("ERROR: the id of " + keyName + "=" + key +
+						" is already taken by another key");
+			}
+		}
+		long partition = partitionBits == 0 ? 0 : (count * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - partitionBits);
+		return ((count << partitionBits) | partition) << PADDING_BITS;
+	}
+
+	/*
+	 * the key as a long if it is numeric and fits, -1 otherwise
+	 */
+	private long numericKey(String key) {
+		if(!VertexIdDictionary.isNumeric(key) || key.charAt(0) == '-')
+		{
+			return -1;
+		}
+		long value = Long.parseLong(key);
+		return value < (1L << numericBits) ? value : -1;
+	}
+
+	/*
+	 * the code of a key name, never 0 so that no count is 0
+	 */
+	private int code(String keyName) {
+		int code = (HASH.hashString(keyName, StandardCharsets.UTF_8).asInt() & 0x7FFFFFFF) % ((1 << CODE_BITS) - 1) + 1;
+		String previous = codes.putIfAbsent(code, keyName);
+		if(previous != null && !previous.equals(keyName))
+		{
+			throw new IllegalStateException("ERROR: the key properties " + previous + " and " + keyName +
+					" have the same id range, rename one of them");
+		}
+		return code;
+	}
+
+	/*
+	 * an open addressing table of hashed id -> fingerprint
+	 */
+	private static class HashedIds {
+
+		private long[] ids = new long[1024];
+		private long[] fingerprints = new long[1024];
+		private int size = 0;
+
+		/*
+		 * record the fingerprint of the id, false if the id has another one
+		 */
+		synchronized boolean add(long id, long fingerprint) {
+			int slot = slot(ids, id);
+			if(ids[slot] == id)
+			{
+				return fingerprints[slot] == fingerprint;
+			}
+			ids[slot] = id;
+			fingerprints[slot] = fingerprint;
+			if(++size > ids.length / 2)
+			{
+				grow();
+			}
+			return true;
+		}
+
+		private void grow() {
+			long[] oldIds = ids;
+			long[] oldFingerprints = fingerprints;
+			ids = new long[oldIds.length * 2];
+			fingerprints = new long[oldIds.length * 2];
+			for(int i = 0; i < oldIds.length; i++)
+			{
+				if(oldIds[i] != 0)
+				{
+					int slot = slot(ids, oldIds[i]);
+					ids[slot] = oldIds[i];
+					fingerprints[slot] = oldFingerprints[i];
+				}
+			}
+		}
+
+		/*
+		 * the slot of the id, or the free slot where it goes; a hashed id is
+		 * never 0
+		 */
+		private static int slot(long[] ids, long id) {
+			int mask = ids.length - 1;
+			int slot = (int) (id ^ (id >>> 32)) & mask;
+			while(ids[slot] != 0 && ids[slot] != id)
+			{
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+	}
+
+	/*
+	 * { id hash, fingerprint } of a key
+	 */
+	private static long[] hash(String keyName, String key) {
+		byte[] bytes = HASH.newHasher()
+				.putString(keyName, StandardCharsets.UTF_8)
+				.putByte((byte) 0)
+				.putString(key, StandardCharsets.UTF_8)
+				.hash().asBytes();
+		long id = 0;
+		long fingerprint = 0;
+		for(int i = 0; i < 8; i++)
+		{
+			id = (id << 8) | (bytes[i] & 0xFF);
+			fingerprint = (fingerprint << 8) | (bytes[8 + i] & 0xFF);
+		}
+		return new long[] { id, fingerprint };
+	}
+}
@@ -9,6 +9,7 @@ import java.util.List;
 
 import org.janusgraph.core.Cardinality;
 
+import net.mpolonioli.janusgraphimporter.core.BulkLoadSettings;
 import net.mpolonioli.janusgraphimporter.core.JanusGraphImporter;
 
 public class ExampleApp {
@@ -59,15 +60,19 @@ public class ExampleApp {
 		boolean undirected = true;
 		
 		JanusGraphImporter importer = new JanusGraphImporter(conf);
+		importer.getMetrics().startJmxReporter();
 		try {
 			importer.clearGraph();
+			importer.setBulkLoadSettings(BulkLoadSettings.DEFAULT);
 			importer.defineSchema(vertexLabels, edgeLabels, propertyKeys, propertyHasCardinality, propertyHasType, propertiesWithIndex);
 			importer.loadVertices(vertexFile, printLoadingDots, batchSize, progReportPeriod, threadCount, propertyHasType, propertyHasCardinality);
 			importer.loadEdges(edgeFile, edgeHasLabel, undirected, printLoadingDots, batchSize, progReportPeriod, threadCount, propertyHasType);
-			importer.closeConnection();
 		}catch(Exception e)
 		{
 			e.printStackTrace();
+		}finally
+		{
+			// also switches the bulk load mode off, even when a load failed
 			importer.closeConnection();
 		}
 	}
@@ -0,0 +1,128 @@
+package net.mpolonioli.janusgraphimporter.examples;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+import org.janusgraph.core.Cardinality;
+
+import net.mpolonioli.janusgraphimporter.core.JanusGraphImporter;
+import net.mpolonioli.janusgraphimporter.shard.ShardCoordinator;
+import net.mpolonioli.janusgraphimporter.shard.ShardWorker;
+
+/*
+ * the import of ExampleApp split across processes. Start the coordinator
+ * with
+ *
+ *   ShardedExampleApp coordinator <port>
+ *
+ * then one or more workers, on this host or others that see the files at
+ * the same paths, with
+ *
+ *   ShardedExampleApp worker <host> <port> <journal directory>
+ *
+ * The journal directory must be shared by every worker, so that a shard
+ * handed out again resumes where its previous worker stopped.
+ */
+public class ShardedExampleApp {
+
+	private static final long SHARD_BYTES = 64L << 20;
+	private static final int MAX_ATTEMPTS = 3;
+	private static final int LEASE_MILLIS = 60000;
+
+	@SuppressWarnings({ "rawtypes", "serial" })
+	public static void main(String[] args) {
+		
+		if(args.length < 2 || !(args[0].equals("coordinator") || args[0].equals("worker") && args.length == 4))
+		{
+			System.out.println("usage: ShardedExampleApp coordinator <port>");
+			System.out.println("       ShardedExampleApp worker <host> <port> <journal directory>");
+			return;
+		}
+		
+		String s = File.separator;
+		
+		String conf = "example-resources" + s + "janusgraph-properties" + s + "janusgraph-hbase.properties";
+		
+		File vertexFile = new File("example-resources" + s + "data-csv" + s + "vertices" + s + "person.csv").getAbsoluteFile();
+		File edgeFile = new File("example-resources" + s + "data-csv" + s + "edges" + s + "knowsFile.csv").getAbsoluteFile();
+		
+		List<String> vertexLabels = new ArrayList<>(Arrays.asList("person"));
+		List<String> edgeLabels = new ArrayList<>(Arrays.asList("knows"));
+		List<String> propertyKeys = new ArrayList<>(Arrays.asList("id", "name", "surname", "birthdate", "email"));
+		List<String> propertiesWithIndex = new ArrayList<>(Arrays.asList("id"));
+		HashMap<String, Cardinality> propertyHasCardinality = new HashMap<String, Cardinality>() {
+			{
+				put("birthdate", Cardinality.SINGLE); 
+				put("surname", Cardinality.SINGLE);
+				put("name", Cardinality.SINGLE);
+				put("id", Cardinality.SINGLE);
+				put("email", Cardinality.LIST);
+			};
+		};
+		HashMap<String, Class> propertyHasType = new HashMap<String, Class>() {
+			{
+				put("birthdate", Date.class); 
+				put("surname", String.class);
+				put("name", String.class);
+				put("id", Long.class);
+				put("email", String.class);
+			};
+		};
+		HashMap<String, String> edgeHasLabel = new HashMap<String, String>() {
+			{
+				put("knowsFile", "knows");
+			};
+		};
+		
+		
+		boolean printLoadingDots = false;
+		int batchSize = 20000;
+		long progReportPeriod = 10;
+		int threadCount = 4;
+		boolean undirected = true;
+		
+		JanusGraphImporter importer = new JanusGraphImporter(conf);
+		try {
+			if(args[0].equals("coordinator"))
+			{
+				// the schema is defined once, before any worker loads
+				importer.clearGraph();
+				importer.defineSchema(vertexLabels, edgeLabels, propertyKeys, propertyHasCardinality, propertyHasType, propertiesWithIndex);
+				importer.closeConnection();
+				
+				ShardCoordinator coordinator = new ShardCoordinator(
+						Integer.parseInt(args[1]), SHARD_BYTES, MAX_ATTEMPTS, true, LEASE_MILLIS);
+				coordinator.addVertexFiles(Arrays.asList(vertexFile));
+				coordinator.addEdgeFiles(Arrays.asList(edgeFile));
+				coordinator.run();
+			}
+			else
+			{
+				importer.setJournalDirectory(new File(args[3]));
+				new ShardWorker(args[1], Integer.parseInt(args[2]), shard -> {
+					if(shard.isEdges())
+					{
+						importer.loadEdges(shard.getFile(), shard.getStart(), shard.getEnd(), edgeHasLabel, undirected,
+								printLoadingDots, batchSize, progReportPeriod, threadCount, propertyHasType);
+					}
+					else
+					{
+						importer.loadVertices(shard.getFile(), shard.getStart(), shard.getEnd(),
+								printLoadingDots, batchSize, progReportPeriod, threadCount, propertyHasType, propertyHasCardinality);
+					}
+				}).run();
+			}
+		}catch(Exception e)
+		{
+			e.printStackTrace();
+		}finally
+		{
+			importer.closeConnection();
+		}
+	}
+
+}
@@ -0,0 +1,243 @@
+package net.mpolonioli.janusgraphimporter.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/*
+ * reads a BGZF file (the blocked gzip written by bgzip), inflating several
+ * blocks at once.
+ *
+ * Every block is a gzip member whose header records the size of the block,
+ * so the blocks can be cut from the compressed stream without inflating
+ * them; they are handed to a pool of threads and read back in order.
+ */
+public class BgzfInputStream extends InputStream {
+
+	private static final int FIXED_HEADER = 12;
+	private static final int FEXTRA = 4;
+	private static final int BLOCKS_PER_THREAD = 4;
+
+	private InputStream in;
+	private ExecutorService executor;
+	private Deque<Future<byte[]>> pending = new ArrayDeque<>();
+	private int maxPending;
+	private boolean eof = false;
+
+	private byte[] current = new byte[0];
+	private int position = 0;
+
+	public BgzfInputStream(InputStream in, int threads)
+	{
+		this.in = in;
+		this.executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+			Thread thread = new Thread(r, "bgzf-inflate");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.maxPending = Math.max(1, threads) * BLOCKS_PER_THREAD;
+	}
+
+	/*
+	 * whether the first n bytes of a file start a BGZF block
+	 */
+	static boolean isBgzf(byte[] head, int n) {
+		if(n < FIXED_HEADER || (head[3] & FEXTRA) == 0)
+		{
+			return false;
+		}
+		return blockSize(head, Math.min(n, FIXED_HEADER + unsignedShort(head, 10))) > 0;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if(!nextBlock())
+		{
+			return -1;
+		}
+		return current[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len == 0)
+		{
+			return 0;
+		}
+		if(!nextBlock())
+		{
+			return -1;
+		}
+		int n = Math.min(len, current.length - position);
+		System.arraycopy(current, position, b, off, n);
+		position += n;
+		return n;
+	}
+
+	@Override
+	public void close() throws IOException {
+		executor.shutdownNow();
+		in.close();
+	}
+
+	/*
+	 * make sure that the current block has unread bytes, false at the end
+	 */
+	private boolean nextBlock() throws IOException {
+		while(position == current.length)
+		{
+			fill();
+			Future<byte[]> next = pending.poll();
+			if(next == null)
+			{
+				return false;
+			}
+			try {
+				current = next.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			} catch (ExecutionException e) {
+				throw new IOException(e.getCause());
+			}
+			position = 0;
+		}
+		return true;
+	}
+
+	/*
+	 * cut blocks from the compressed stream until enough are in flight
+	 */
+	private void fill() throws IOException {
+		while(!eof && pending.size() < maxPending)
+		{
+			byte[] block = readBlock();
+			if(block == null)
+			{
+				eof = true;
+			}
+			else
+			{
+				pending.add(executor.submit(() -> inflate(block)));
+			}
+		}
+	}
+
+	/*
+	 * the next whole compressed block, null at the end of the stream
+	 */
+	private byte[] readBlock() throws IOException {
+		byte[] header = new byte[FIXED_HEADER];
+		int n = readFully(header, 0, FIXED_HEADER);
+		if(n == 0)
+		{
+			return null;
+		}
+		if(n < FIXED_HEADER)
+		{
+			throw new EOFException("ERROR: truncated BGZF block header");
+		}
+		int extraLength = unsignedShort(header, 10);
+		byte[] block = new byte[FIXED_HEADER + extraLength];
+		System.arraycopy(header, 0, block, 0, FIXED_HEADER);
+		if(readFully(block, FIXED_HEADER, extraLength) < extraLength)
+		{
+			throw new EOFException("ERROR: truncated BGZF block header");
+		}
+		int size = blockSize(block, block.length);
+		if(size <= 0)
+		{
+			throw new IOException("ERROR: not a BGZF block, the file must be read as plain gzip");
+		}
+		byte[] whole = new byte[size];
+		System.arraycopy(block, 0, whole, 0, block.length);
+		if(readFully(whole, block.length, size - block.length) < size - block.length)
+		{
+			throw new EOFException("ERROR: truncated BGZF block");
+		}
+		return whole;
+	}
+
+	private static byte[] inflate(byte[] block) throws IOException {
+		int dataStart = FIXED_HEADER + unsignedShort(block, 10);
+		int dataLength = block.length - dataStart - 8;
+		long crc = unsignedInt(block, block.length - 8);
+		int size = (int) unsignedInt(block, block.length - 4);
+		byte[] data = new byte[size];
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(block, dataStart, dataLength);
+			int n = 0;
+			while(n < size)
+			{
+				int inflated = inflater.inflate(data, n, size - n);
+				if(inflated == 0 && (inflater.finished() || inflater.needsInput()))
+				{
+					throw new IOException("ERROR: BGZF block shorter than its recorded size");
+				}
+				n += inflated;
+			}
+		} catch (DataFormatException e) {
+			throw new IOException(e);
+		} finally {
+			inflater.end();
+		}
+		CRC32 check = new CRC32();
+		check.update(data, 0, size);
+		if(check.getValue() != crc)
+		{
+			throw new IOException("ERROR: BGZF block CRC mismatch");
+		}
+		return data;
+	}
+
+	/*
+	 * the total size of the block from the BC extra subfield of its header,
+	 * given the first length bytes of the block, -1 if there is none
+	 */
+	private static int blockSize(byte[] header, int length) {
+		int i = FIXED_HEADER;
+		while(i + 4 <= length)
+		{
+			int subfieldLength = unsignedShort(header, i + 2);
+			if(header[i] == 'B' && header[i + 1] == 'C' && subfieldLength == 2 && i + 6 <= length)
+			{
+				return unsignedShort(header, i + 4) + 1;
+			}
+			i += 4 + subfieldLength;
+		}
+		return -1;
+	}
+
+	private int readFully(byte[] b, int off, int len) throws IOException {
+		int n = 0;
+		while(n < len)
+		{
+			int read = in.read(b, off + n, len - n);
+			if(read < 0)
+			{
+				break;
+			}
+			n += read;
+		}
+		return n;
+	}
+
+	private static int unsignedShort(byte[] b, int i) {
+		return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8;
+	}
+
+	private static long unsignedInt(byte[] b, int i) {
+		return (unsignedShort(b, i) | (long) unsignedShort(b, i + 2) << 16);
+	}
+}
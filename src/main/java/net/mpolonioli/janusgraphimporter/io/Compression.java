@@ -0,0 +1,82 @@
+package net.mpolonioli.janusgraphimporter.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+import net.jpountz.lz4.LZ4FrameInputStream;
+
+/*
+ * the compression formats of the input files, detected from their first
+ * bytes
+ */
+public enum Compression {
+
+	NONE,
+	GZIP,
+	// gzip made of independent blocks that record their size (bgzip)
+	BGZF,
+	ZSTD,
+	LZ4;
+
+	private static final int BUFFER_SIZE = 256 * 1024;
+	private static final int HEADER_PROBE = 64;
+
+	public static Compression detect(File file) throws IOException {
+		byte[] head = new byte[HEADER_PROBE];
+		int n = 0;
+		try(InputStream in = new FileInputStream(file))
+		{
+			int read;
+			while(n < head.length && (read = in.read(head, n, head.length - n)) > 0)
+			{
+				n += read;
+			}
+		}
+		if(n >= 2 && (head[0] & 0xff) == 0x1f && (head[1] & 0xff) == 0x8b)
+		{
+			return BgzfInputStream.isBgzf(head, n) ? BGZF : GZIP;
+		}
+		if(n >= 4 && (head[0] & 0xff) == 0x28 && (head[1] & 0xff) == 0xb5
+				&& (head[2] & 0xff) == 0x2f && (head[3] & 0xff) == 0xfd)
+		{
+			return ZSTD;
+		}
+		if(n >= 4 && (head[0] & 0xff) == 0x04 && (head[1] & 0xff) == 0x22
+				&& (head[2] & 0xff) == 0x4d && (head[3] & 0xff) == 0x18)
+		{
+			return LZ4;
+		}
+		return NONE;
+	}
+
+	/*
+	 * the uncompressed content of the file; BGZF blocks are inflated by the
+	 * given number of threads at once, the other formats are sequential
+	 */
+	public InputStream open(File file, int threads) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			switch(this)
+			{
+			case GZIP:
+				return new GZIPInputStream(in, BUFFER_SIZE);
+			case BGZF:
+				return new BgzfInputStream(in, threads);
+			case ZSTD:
+				return new ZstdInputStream(in);
+			case LZ4:
+				return new LZ4FrameInputStream(in);
+			default:
+				return in;
+			}
+		} catch (IOException | RuntimeException e) {
+			in.close();
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package net.mpolonioli.janusgraphimporter.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/*
+ * the reader stage of a load: reads the header of a CSV file and then hands
+ * out its data lines in chunks
+ */
+public interface CsvReader extends Closeable {
+
+	/*
+	 * the fields of the header line
+	 */
+	String[] getColNames();
+
+	/*
+	 * the next maxLines data lines (fewer at the end of the input), null once
+	 * the input is exhausted
+	 */
+	LineChunk nextChunk(int maxLines) throws IOException;
+}
@@ -0,0 +1,85 @@
+package net.mpolonioli.janusgraphimporter.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/*
+ * opens the right CsvReader for a file: memory mapped for plain files,
+ * streaming for compressed ones
+ */
+public class CsvReaders {
+
+	private static final int INFLATE_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	private static final String[] COMPRESSED_EXTENSIONS = { ".gz", ".bgz", ".zst", ".lz4" };
+
+	private CsvReaders()
+	{
+	}
+
+	public static CsvReader open(File file) throws IOException {
+		Compression compression = Compression.detect(file);
+		if(compression == Compression.NONE)
+		{
+			return new MappedCsvReader(file);
+		}
+		return new StreamCsvReader(file, compression, INFLATE_THREADS);
+	}
+
+	/*
+	 * read only the given ranges, as by ImportJournal.getPendingRanges()
+	 */
+	public static CsvReader open(File file, List<long[]> ranges) throws IOException {
+		Compression compression = Compression.detect(file);
+		if(compression == Compression.NONE)
+		{
+			return new RangesCsvReader(file, ranges);
+		}
+		return new StreamCsvReader(file, compression, INFLATE_THREADS, ranges);
+	}
+
+	/*
+	 * the name of the file without the .csv extension and the extension of
+	 * its compression, if any: the label the file is loaded as
+	 */
+	public static String baseName(File file) {
+		String name = file.getName();
+		for(String extension : COMPRESSED_EXTENSIONS)
+		{
+			if(name.endsWith(extension))
+			{
+				name = name.substring(0, name.length() - extension.length());
+				break;
+			}
+		}
+		return name.endsWith(".csv") ? name.substring(0, name.length() - 4) : name;
+	}
+
+	/*
+	 * true for the names of .csv files, compressed or not
+	 */
+	public static boolean isCsvName(String name) {
+		for(String extension : COMPRESSED_EXTENSIONS)
+		{
+			if(name.endsWith(".csv" + extension))
+			{
+				return true;
+			}
+		}
+		return name.endsWith(".csv");
+	}
+
+	public static String[] readColNames(File file) throws IOException {
+		if(Compression.detect(file) == Compression.NONE)
+		{
+			try(MappedCsvReader reader = new MappedCsvReader(file, 0, 0))
+			{
+				return reader.getColNames();
+			}
+		}
+		try(CsvReader reader = open(file))
+		{
+			return reader.getColNames();
+		}
+	}
+}
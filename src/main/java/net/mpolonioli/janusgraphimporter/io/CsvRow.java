@@ -0,0 +1,196 @@
+package net.mpolonioli.janusgraphimporter.io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * a reusable tokenizer over a line (or a field) held in a ByteBuffer.
+ *
+ * reset() finds the delimiters with a plain byte scan and only records the
+ * field bounds; a String is built only when getString() asks for one, and the
+ * numeric getters parse the bytes in place. The same class splits a field
+ * into its multiple values by resetting a second instance, created with the
+ * VALUE_SEPARATOR, over the bounds of that field.
+ */
+public class CsvRow {
+
+	public static final byte DELIMITER = '|';
+	public static final byte VALUE_SEPARATOR = ';';
+
+	private final byte delimiter;
+
+	private ByteBuffer source;
+	private ByteBuffer view;
+	private int start;
+	private int end;
+	private int[] fieldStarts = new int[16];
+	private int[] fieldEnds = new int[16];
+	private int fieldCount;
+	private byte[] scratch = new byte[64];
+
+	public CsvRow()
+	{
+		this(DELIMITER);
+	}
+
+	public CsvRow(byte delimiter)
+	{
+		this.delimiter = delimiter;
+	}
+
+	/*
+	 * tokenize the bytes [start, end) of the buffer
+	 */
+	public void reset(ByteBuffer buffer, int start, int end) {
+		if(buffer != source)
+		{
+			source = buffer;
+			view = buffer.duplicate();
+		}
+		this.start = start;
+		this.end = end;
+
+		fieldCount = 0;
+		int fieldStart = start;
+		for(int i = start; i < end; i++)
+		{
+			if(buffer.get(i) == delimiter)
+			{
+				addField(fieldStart, i);
+				fieldStart = i + 1;
+			}
+		}
+		addField(fieldStart, end);
+	}
+
+	public ByteBuffer getBuffer() {
+		return source;
+	}
+
+	public int size() {
+		return fieldCount;
+	}
+
+	/*
+	 * true for a line without any character
+	 */
+	public boolean isBlank() {
+		return start == end;
+	}
+
+	public int getStart(int field) {
+		return fieldStarts[field];
+	}
+
+	public int getEnd(int field) {
+		return fieldEnds[field];
+	}
+
+	public boolean isEmpty(int field) {
+		return fieldStarts[field] == fieldEnds[field];
+	}
+
+	public String getString(int field) {
+		return getString(fieldStarts[field], fieldEnds[field]);
+	}
+
+	/*
+	 * the whole tokenized range, delimiters included
+	 */
+	public String getLine() {
+		return getString(start, end);
+	}
+
+	public String getString(int from, int to) {
+		int length = to - from;
+		if(scratch.length < length)
+		{
+			scratch = new byte[Math.max(length, scratch.length * 2)];
+		}
+		view.position(from);
+		view.get(scratch, 0, length);
+		return new String(scratch, 0, length, StandardCharsets.UTF_8);
+	}
+
+	public long getLong(int field) {
+		return parseLong(fieldStarts[field], fieldEnds[field]);
+	}
+
+	public int getInt(int field) {
+		long value = getLong(field);
+		if(value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+		{
+			throw new NumberFormatException("For input string: \"" + getString(field) + "\"");
+		}
+		return (int) value;
+	}
+
+	/*
+	 * same as Boolean.parseBoolean: true only for "true", ignoring case
+	 */
+	public boolean getBoolean(int field) {
+		int from = fieldStarts[field];
+		if(fieldEnds[field] - from != 4)
+		{
+			return false;
+		}
+		return (source.get(from) | 0x20) == 't' && (source.get(from + 1) | 0x20) == 'r'
+				&& (source.get(from + 2) | 0x20) == 'u' && (source.get(from + 3) | 0x20) == 'e';
+	}
+
+	/*
+	 * same as Long.parseLong, on the bytes [from, to)
+	 */
+	public long parseLong(int from, int to) {
+		if(from == to)
+		{
+			throw new NumberFormatException("For input string: \"\"");
+		}
+		int i = from;
+		boolean negative = false;
+		byte first = source.get(i);
+		if(first == '-' || first == '+')
+		{
+			negative = first == '-';
+			i++;
+			if(i == to)
+			{
+				throw numberFormatException(from, to);
+			}
+		}
+		long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		long multmin = limit / 10;
+		long result = 0;
+		for(; i < to; i++)
+		{
+			int digit = source.get(i) - '0';
+			if(digit < 0 || digit > 9 || result < multmin)
+			{
+				throw numberFormatException(from, to);
+			}
+			result *= 10;
+			if(result < limit + digit)
+			{
+				throw numberFormatException(from, to);
+			}
+			result -= digit;
+		}
+		return negative ? result : -result;
+	}
+
+	private NumberFormatException numberFormatException(int from, int to) {
+		return new NumberFormatException("For input string: \"" + getString(from, to) + "\"");
+	}
+
+	private void addField(int fieldStart, int fieldEnd) {
+		if(fieldCount == fieldStarts.length)
+		{
+			fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+			fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+		}
+		fieldStarts[fieldCount] = fieldStart;
+		fieldEnds[fieldCount] = fieldEnd;
+		fieldCount++;
+	}
+}
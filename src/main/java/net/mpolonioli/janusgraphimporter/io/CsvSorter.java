@@ -0,0 +1,315 @@
+package net.mpolonioli.janusgraphimporter.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/*
+ * external merge sort of the data lines of a CSV file by one of its fields,
+ * or by a run of consecutive fields compared one after the other.
+ *
+ * The lines are read in runs that fit the memory budget, each run is sorted
+ * and spilled to a temporary file, then the runs are merged into the output
+ * file, header first. At most MAX_FAN_IN runs are merged at once: with more,
+ * groups of them are first merged into longer runs, in as many passes as
+ * needed, so that the open files and their buffers stay bounded. Keys are
+ * compared as bytes, which is enough to bring together the lines of the same
+ * key; lines with equal keys keep their order. Empty lines are dropped.
+ */
+public class CsvSorter {
+
+	// estimated heap cost of a line besides its bytes
+	private static final int LINE_OVERHEAD = 64;
+	private static final int READ_CHUNK_LINES = 4096;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_FAN_IN = 64;
+
+	private File tempDirectory;
+	private long memoryBytes;
+
+	/*
+	 * the runs are spilled to tempDirectory, and hold at most memoryBytes of
+	 * lines each
+	 */
+	public CsvSorter(File tempDirectory, long memoryBytes)
+	{
+		this.tempDirectory = tempDirectory;
+		this.memoryBytes = memoryBytes;
+	}
+
+	public File getTempDirectory() {
+		return tempDirectory;
+	}
+
+	/*
+	 * write the lines of input sorted by the field keyColumn to output
+	 */
+	public void sort(File input, int keyColumn, File output) throws IOException {
+		sort(input, keyColumn, 1, output);
+	}
+
+	/*
+	 * write the lines of input sorted by the keyColumns fields from
+	 * keyColumn on to output
+	 */
+	public void sort(File input, int keyColumn, int keyColumns, File output) throws IOException {
+		tempDirectory.mkdirs();
+		List<File> runs = new ArrayList<>();
+		try {
+			String[] colNames;
+			try(CsvReader reader = CsvReaders.open(input))
+			{
+				colNames = reader.getColNames();
+				List<Line> lines = new ArrayList<>();
+				long used = 0;
+				LineChunk chunk;
+				while((chunk = reader.nextChunk(READ_CHUNK_LINES)) != null)
+				{
+					ByteBuffer buffer = chunk.getBuffer().duplicate();
+					for(int i = 0; i < chunk.size(); i++)
+					{
+						int start = chunk.getLineStart(i);
+						int end = chunk.getLineEnd(i);
+						// the lines the loads skip, as by CsvRow.isBlank
+						if(start == end)
+						{
+							continue;
+						}
+						byte[] bytes = new byte[end - start];
+						buffer.position(start);
+						buffer.get(bytes);
+						lines.add(new Line(bytes, keyColumn, keyColumns));
+						used += bytes.length + LINE_OVERHEAD;
+						if(used >= memoryBytes)
+						{
+							runs.add(spill(lines));
+							lines.clear();
+							used = 0;
+						}
+					}
+				}
+				if(!lines.isEmpty())
+				{
+					runs.add(spill(lines));
+				}
+			}
+			while(runs.size() > MAX_FAN_IN)
+			{
+				runs = mergePass(runs, keyColumn, keyColumns);
+			}
+			try(OutputStream out = new BufferedOutputStream(new FileOutputStream(output), BUFFER_SIZE))
+			{
+				out.write(String.join(String.valueOf((char) CsvRow.DELIMITER), colNames).getBytes(StandardCharsets.UTF_8));
+				out.write('\n');
+				merge(runs, keyColumn, keyColumns, bytes -> {
+					out.write(bytes);
+					out.write('\n');
+				});
+			}
+		} finally {
+			for(File run : runs)
+			{
+				run.delete();
+			}
+		}
+	}
+
+	/*
+	 * sort the lines and write them to a new run file
+	 */
+	private File spill(List<Line> lines) throws IOException {
+		Collections.sort(lines, KEY_ORDER);
+		File run = File.createTempFile("run-", ".sort", tempDirectory);
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), BUFFER_SIZE)))
+		{
+			for(Line line : lines)
+			{
+				out.writeInt(line.bytes.length);
+				out.write(line.bytes);
+			}
+		}
+		return run;
+	}
+
+	/*
+	 * merge every MAX_FAN_IN consecutive runs into a new run, deleting them;
+	 * consecutive runs keep the sort stable
+	 */
+	private List<File> mergePass(List<File> runs, int keyColumn, int keyColumns) throws IOException {
+		List<File> merged = new ArrayList<>();
+		try {
+			for(int from = 0; from < runs.size(); from += MAX_FAN_IN)
+			{
+				List<File> group = runs.subList(from, Math.min(runs.size(), from + MAX_FAN_IN));
+				File run = File.createTempFile("run-", ".sort", tempDirectory);
+				merged.add(run);
+				try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), BUFFER_SIZE)))
+				{
+					merge(group, keyColumn, keyColumns, bytes -> {
+						out.writeInt(bytes.length);
+						out.write(bytes);
+					});
+				}
+				for(File done : group)
+				{
+					done.delete();
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			for(File run : merged)
+			{
+				run.delete();
+			}
+			throw e;
+		}
+		return merged;
+	}
+
+	/*
+	 * k-way merge of the runs, ties broken by run order so that the sort is
+	 * stable
+	 */
+	private void merge(List<File> runs, int keyColumn, int keyColumns, LineWriter out) throws IOException {
+		List<RunCursor> cursors = new ArrayList<>();
+		PriorityQueue<RunCursor> queue = new PriorityQueue<>(Math.max(1, runs.size()),
+				(a, b) -> {
+					int c = KEY_ORDER.compare(a.line, b.line);
+					return c != 0 ? c : Integer.compare(a.index, b.index);
+				});
+		try
+		{
+			for(int i = 0; i < runs.size(); i++)
+			{
+				RunCursor cursor = new RunCursor(runs.get(i), i);
+				cursors.add(cursor);
+				if(cursor.advance(keyColumn, keyColumns))
+				{
+					queue.add(cursor);
+				}
+			}
+			RunCursor cursor;
+			while((cursor = queue.poll()) != null)
+			{
+				out.write(cursor.line.bytes);
+				if(cursor.advance(keyColumn, keyColumns))
+				{
+					queue.add(cursor);
+				}
+			}
+		} finally {
+			for(RunCursor c : cursors)
+			{
+				c.in.close();
+			}
+		}
+	}
+
+	/*
+	 * bytewise, the delimiter lowest so that the fields of a multi field key
+	 * compare one after the other
+	 */
+	private static final Comparator<Line> KEY_ORDER = (a, b) -> {
+		int length = Math.min(a.keyEnd - a.keyStart, b.keyEnd - b.keyStart);
+		for(int i = 0; i < length; i++)
+		{
+			int c = keyByte(a.bytes[a.keyStart + i]) - keyByte(b.bytes[b.keyStart + i]);
+			if(c != 0)
+			{
+				return c;
+			}
+		}
+		return (a.keyEnd - a.keyStart) - (b.keyEnd - b.keyStart);
+	};
+
+	private static int keyByte(byte b) {
+		return b == CsvRow.DELIMITER ? -1 : b & 0xff;
+	}
+
+	private interface LineWriter {
+		void write(byte[] bytes) throws IOException;
+	}
+
+	/*
+	 * a data line and the bounds of its key fields
+	 */
+	private static class Line {
+
+		private final byte[] bytes;
+		private int keyStart = 0;
+		private int keyEnd;
+
+		Line(byte[] bytes, int keyColumn, int keyColumns)
+		{
+			this.bytes = bytes;
+			int field = 0;
+			int i = 0;
+			while(field < keyColumn && i < bytes.length)
+			{
+				if(bytes[i++] == CsvRow.DELIMITER)
+				{
+					field++;
+					keyStart = i;
+				}
+			}
+			if(field < keyColumn)
+			{
+				keyStart = bytes.length;
+			}
+			keyEnd = keyStart;
+			for(int k = 0; k < keyColumns && keyEnd < bytes.length; k++)
+			{
+				if(k > 0)
+				{
+					keyEnd++;
+				}
+				while(keyEnd < bytes.length && bytes[keyEnd] != CsvRow.DELIMITER)
+				{
+					keyEnd++;
+				}
+			}
+		}
+	}
+
+	private static class RunCursor {
+
+		private final DataInputStream in;
+		private final int index;
+		private Line line;
+
+		RunCursor(File run, int index) throws IOException
+		{
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), BUFFER_SIZE));
+			this.index = index;
+		}
+
+		/*
+		 * read the next line of the run, false at its end
+		 */
+		boolean advance(int keyColumn, int keyColumns) throws IOException {
+			int length;
+			try {
+				length = in.readInt();
+			} catch (EOFException e) {
+				return false;
+			}
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			line = new Line(bytes, keyColumn, keyColumns);
+			return true;
+		}
+	}
+}
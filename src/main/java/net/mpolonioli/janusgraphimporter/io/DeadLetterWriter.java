@@ -0,0 +1,69 @@
+package net.mpolonioli.janusgraphimporter.io;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * collects the lines that could not be parsed or loaded, one per line as
+ *
+ * <file line number> TAB <reason> TAB <the line as read>
+ *
+ * The file is deleted on close if it is empty.
+ */
+public class DeadLetterWriter implements Closeable {
+
+	private File file;
+	private OutputStream out;
+	private long count = 0;
+
+	public DeadLetterWriter(File file) throws IOException
+	{
+		this(file, false);
+	}
+
+	/*
+	 * append to the file instead of replacing it, when resuming a load
+	 */
+	public DeadLetterWriter(File file, boolean append) throws IOException
+	{
+		this.file = file;
+		this.out = new BufferedOutputStream(new FileOutputStream(file, append));
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/*
+	 * write the line held in the bytes [start, end) of the buffer
+	 */
+	public synchronized void write(long fileLine, String reason, ByteBuffer buffer, int start, int end) throws IOException {
+		String cleanReason = String.valueOf(reason).replace('\t', ' ').replace('\r', ' ').replace('\n', ' ');
+		out.write((fileLine + "\t" + cleanReason + "\t").getBytes(StandardCharsets.UTF_8));
+		for(int i = start; i < end; i++)
+		{
+			out.write(buffer.get(i));
+		}
+		out.write('\n');
+		count++;
+	}
+
+	public synchronized long getCount() {
+		return count;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		out.close();
+		if(file.length() == 0)
+		{
+			file.delete();
+		}
+	}
+}
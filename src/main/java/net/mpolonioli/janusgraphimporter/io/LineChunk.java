@@ -0,0 +1,75 @@
+package net.mpolonioli.janusgraphimporter.io;
+
+import java.nio.ByteBuffer;
+
+/*
+ * a run of consecutive data lines of a CSV file, handed from the reader to
+ * the parse stage of a LoadPipeline.
+ *
+ * The lines are not copied: line i is the bytes [getLineStart(i),
+ * getLineEnd(i)) of the buffer, which is shared with the reader and the other
+ * chunks and must only be read with absolute gets.
+ */
+public class LineChunk {
+
+	private final long lineCount;
+	private final ByteBuffer buffer;
+	private final int[] lineStarts;
+	private final int[] lineEnds;
+	private final int size;
+	private final long startOffset;
+	private final long endOffset;
+
+	/*
+	 * lineCount is the number of data lines that precede this chunk in the
+	 * file, startOffset and endOffset the byte range of the chunk in the file
+	 */
+	public LineChunk(
+			long lineCount,
+			ByteBuffer buffer,
+			int[] lineStarts,
+			int[] lineEnds,
+			int size,
+			long startOffset,
+			long endOffset)
+	{
+		this.lineCount = lineCount;
+		this.buffer = buffer;
+		this.lineStarts = lineStarts;
+		this.lineEnds = lineEnds;
+		this.size = size;
+		this.startOffset = startOffset;
+		this.endOffset = endOffset;
+	}
+
+	public long getLineCount() {
+		return lineCount;
+	}
+
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	public int getLineStart(int i) {
+		return lineStarts[i];
+	}
+
+	/*
+	 * exclusive, line terminators excluded
+	 */
+	public int getLineEnd(int i) {
+		return lineEnds[i];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long getStartOffset() {
+		return startOffset;
+	}
+
+	public long getEndOffset() {
+		return endOffset;
+	}
+}
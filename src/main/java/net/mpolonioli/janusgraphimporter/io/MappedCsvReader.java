@@ -0,0 +1,231 @@
+package net.mpolonioli.janusgraphimporter.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * reads a CSV file through memory mapped segments.
+ *
+ * The file is mapped in segments of at most SEGMENT_SIZE bytes, each one
+ * ending on a line boundary, so that no line is split between two segments.
+ * The reader only looks for the line terminators; the chunks it hands out
+ * point into the mapped segment and are tokenized by the parse workers.
+ */
+public class MappedCsvReader implements CsvReader {
+
+	private static final long SEGMENT_SIZE = 1L << 30;
+	private static final int PROBE_SIZE = 64 * 1024;
+
+	private FileChannel channel;
+	private String[] colNames;
+	private long rangeEnd;
+
+	private MappedByteBuffer segment;
+	private long segmentStart;
+	private int position;
+	private long lineCount = 0;
+
+	/*
+	 * read the whole file
+	 */
+	public MappedCsvReader(File file) throws IOException
+	{
+		this(file, -1, -1);
+	}
+
+	/*
+	 * read the data lines of the range [start, end) of the file, as returned
+	 * by split(); line counts are relative to the start of the range
+	 */
+	public MappedCsvReader(File file, long start, long end) throws IOException
+	{
+		this(file, start, end, 0);
+	}
+
+	/*
+	 * read the data lines of the range [start, end) of the file, numbering
+	 * them from the given number of data lines preceding start
+	 */
+	public MappedCsvReader(File file, long start, long end, long lineCount) throws IOException
+	{
+		this.lineCount = lineCount;
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			long dataStart = readHeader();
+			segmentStart = start < 0 ? dataStart : Math.max(start, dataStart);
+			rangeEnd = end < 0 ? channel.size() : Math.min(end, channel.size());
+			if(segmentStart < rangeEnd)
+			{
+				mapSegment();
+			}
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/*
+	 * divide the data lines of the file in at most parts byte ranges aligned
+	 * to line boundaries, to be read by as many readers at once
+	 */
+	public static List<long[]> split(File file, int parts) throws IOException {
+		List<long[]> ranges = new ArrayList<>();
+		try(MappedCsvReader reader = new MappedCsvReader(file))
+		{
+			long dataStart = reader.segmentStart;
+			long size = reader.channel.size();
+			long step = Math.max(1, (size - dataStart) / parts);
+			long start = dataStart;
+			while(start < size)
+			{
+				long end = start + step >= size ? size : reader.nextLineStart(start + step);
+				ranges.add(new long[] { start, end });
+				start = end;
+			}
+		}
+		return ranges;
+	}
+
+	@Override
+	public String[] getColNames() {
+		return colNames;
+	}
+
+	@Override
+	public LineChunk nextChunk(int maxLines) throws IOException {
+		if(segmentStart >= rangeEnd)
+		{
+			return null;
+		}
+		if(position == segment.limit())
+		{
+			segmentStart += segment.limit();
+			if(segmentStart >= rangeEnd)
+			{
+				return null;
+			}
+			mapSegment();
+		}
+
+		int[] lineStarts = new int[maxLines];
+		int[] lineEnds = new int[maxLines];
+		int chunkStart = position;
+		int limit = segment.limit();
+		int size = 0;
+		while(size < maxLines && position < limit)
+		{
+			int lineStart = position;
+			int lineEnd = lineStart;
+			while(lineEnd < limit && segment.get(lineEnd) != '\n')
+			{
+				lineEnd++;
+			}
+			position = lineEnd < limit ? lineEnd + 1 : limit;
+			if(lineEnd > lineStart && segment.get(lineEnd - 1) == '\r')
+			{
+				lineEnd--;
+			}
+			lineStarts[size] = lineStart;
+			lineEnds[size] = lineEnd;
+			size++;
+		}
+
+		LineChunk chunk = new LineChunk(
+				lineCount,
+				segment,
+				lineStarts,
+				lineEnds,
+				size,
+				segmentStart + chunkStart,
+				segmentStart + position
+				);
+		lineCount += size;
+		return chunk;
+	}
+
+	@Override
+	public void close() throws IOException {
+		segment = null;
+		channel.close();
+	}
+
+	/*
+	 * read the header line, returns the offset of the first data line
+	 */
+	private long readHeader() throws IOException {
+		long end = nextLineStart(0);
+		ByteBuffer header = ByteBuffer.allocate((int) end);
+		channel.read(header, 0);
+		int headerEnd = (int) end;
+		while(headerEnd > 0 && (header.get(headerEnd - 1) == '\n' || header.get(headerEnd - 1) == '\r'))
+		{
+			headerEnd--;
+		}
+		CsvRow row = new CsvRow();
+		row.reset(header, 0, headerEnd);
+		colNames = new String[row.size()];
+		for(int i = 0; i < colNames.length; i++)
+		{
+			colNames[i] = row.getString(i);
+		}
+		return end;
+	}
+
+	/*
+	 * map the segment starting at segmentStart, cut after its last line
+	 * terminator unless it reaches the end of the range
+	 */
+	private void mapSegment() throws IOException {
+		long length = Math.min(SEGMENT_SIZE, rangeEnd - segmentStart);
+		segment = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, length);
+		if(segmentStart + length < rangeEnd)
+		{
+			int limit = (int) length;
+			while(limit > 0 && segment.get(limit - 1) != '\n')
+			{
+				limit--;
+			}
+			if(limit == 0)
+			{
+				throw new IOException(String.format(
+						"ERROR: line at offset %d longer than %d bytes", segmentStart, SEGMENT_SIZE));
+			}
+			segment.limit(limit);
+		}
+		position = 0;
+	}
+
+	/*
+	 * the offset of the first line starting after the given offset, or the
+	 * file size if there is none
+	 */
+	private long nextLineStart(long offset) throws IOException {
+		long size = channel.size();
+		ByteBuffer probe = ByteBuffer.allocate(PROBE_SIZE);
+		long probeStart = offset;
+		while(probeStart < size)
+		{
+			probe.clear();
+			int read = channel.read(probe, probeStart);
+			if(read <= 0)
+			{
+				break;
+			}
+			for(int i = 0; i < read; i++)
+			{
+				if(probe.get(i) == '\n')
+				{
+					return probeStart + i + 1;
+				}
+			}
+			probeStart += read;
+		}
+		return size;
+	}
+}
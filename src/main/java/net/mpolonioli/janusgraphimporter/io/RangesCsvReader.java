@@ -0,0 +1,76 @@
+package net.mpolonioli.janusgraphimporter.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/*
+ * reads a list of byte ranges of a CSV file one after the other, as given
+ * by ImportJournal.getPendingRanges(): { start, end, number of data lines
+ * preceding start }
+ */
+public class RangesCsvReader implements CsvReader {
+
+	private File file;
+	private List<long[]> ranges;
+	private String[] colNames;
+	private MappedCsvReader reader;
+	private int next = 0;
+
+	public RangesCsvReader(File file, List<long[]> ranges) throws IOException
+	{
+		this.file = file;
+		this.ranges = ranges;
+		// the header is read even when there is nothing left to read
+		reader = openNext();
+		if(reader == null)
+		{
+			try(MappedCsvReader header = new MappedCsvReader(file, 0, 0))
+			{
+				colNames = header.getColNames();
+			}
+		}
+		else
+		{
+			colNames = reader.getColNames();
+		}
+	}
+
+	@Override
+	public String[] getColNames() {
+		return colNames;
+	}
+
+	@Override
+	public LineChunk nextChunk(int maxLines) throws IOException {
+		while(reader != null)
+		{
+			LineChunk chunk = reader.nextChunk(maxLines);
+			if(chunk != null)
+			{
+				return chunk;
+			}
+			reader.close();
+			reader = openNext();
+		}
+		return null;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(reader != null)
+		{
+			reader.close();
+			reader = null;
+		}
+	}
+
+	private MappedCsvReader openNext() throws IOException {
+		if(next == ranges.size())
+		{
+			return null;
+		}
+		long[] range = ranges.get(next++);
+		return new MappedCsvReader(file, range[0], range[1], range[2]);
+	}
+}
@@ -0,0 +1,286 @@
+package net.mpolonioli.janusgraphimporter.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/*
+ * reads a compressed CSV file.
+ *
+ * A dedicated thread decompresses the file into blocks handed to the reader
+ * through a bounded queue, so that decompression overlaps with cutting the
+ * lines (and with the parse and commit stages behind the reader). The chunks
+ * point into the blocks; a line split between two blocks is copied in front
+ * of the second one. Offsets are those of the uncompressed data. The
+ * decompression thread owns the compressed stream and closes it on its way
+ * out, so that it is never closed under a read in progress.
+ */
+public class StreamCsvReader implements CsvReader {
+
+	private static final int BLOCK_SIZE = 4 * 1024 * 1024;
+	private static final int QUEUE_BLOCKS = 4;
+	private static final byte[] END = new byte[0];
+	private static final long JOIN_MILLIS = 100;
+
+	private InputStream in;
+	private Thread decompressThread;
+	private BlockingQueue<byte[]> blocks = new ArrayBlockingQueue<>(QUEUE_BLOCKS);
+	private volatile IOException error = null;
+	private volatile boolean closed = false;
+
+	private String[] colNames;
+	private byte[] buffer = new byte[0];
+	private ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+	private long bufferOffset = 0;
+	private int position = 0;
+	private boolean eof = false;
+	private long lineCount = 0;
+
+	// the byte ranges to read, as by ImportJournal.getPendingRanges(), null for all
+	private List<long[]> ranges;
+	private int range = 0;
+
+	/*
+	 * read the whole file
+	 */
+	public StreamCsvReader(File file, Compression compression, int threads) throws IOException
+	{
+		this(file, compression, threads, null);
+	}
+
+	/*
+	 * read only the lines starting in the given ranges, { start, end, ... }
+	 * in uncompressed offsets; the file is still decompressed from the start
+	 */
+	public StreamCsvReader(File file, Compression compression, int threads, List<long[]> ranges) throws IOException
+	{
+		this.ranges = ranges;
+		this.in = compression.open(file, threads);
+		decompressThread = new Thread(this::decompress, file.getName() + "-decompress");
+		decompressThread.setDaemon(true);
+		decompressThread.start();
+		try {
+			readHeader();
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	@Override
+	public String[] getColNames() {
+		return colNames;
+	}
+
+	@Override
+	public LineChunk nextChunk(int maxLines) throws IOException {
+		int[] lineStarts = new int[maxLines];
+		int[] lineEnds = new int[maxLines];
+		int size = 0;
+		long startOffset = 0;
+		while(size < maxLines)
+		{
+			int newline = indexOfNewline();
+			if(newline < 0 && !eof)
+			{
+				// the chunks must not span two buffers
+				if(size > 0)
+				{
+					break;
+				}
+				refill();
+				continue;
+			}
+			if(position == buffer.length)
+			{
+				break;
+			}
+			int lineStart = position;
+			int lineEnd = newline < 0 ? buffer.length : newline;
+			int next = newline < 0 ? buffer.length : newline + 1;
+			if(ranges != null)
+			{
+				long lineOffset = bufferOffset + lineStart;
+				while(range < ranges.size() && ranges.get(range)[1] <= lineOffset)
+				{
+					range++;
+				}
+				if(range == ranges.size())
+				{
+					break;
+				}
+				if(lineOffset < ranges.get(range)[0])
+				{
+					// committed already: skip it, but chunks must not span it
+					if(size > 0)
+					{
+						break;
+					}
+					position = next;
+					lineCount++;
+					continue;
+				}
+			}
+			if(lineEnd > lineStart && buffer[lineEnd - 1] == '\r')
+			{
+				lineEnd--;
+			}
+			if(size == 0)
+			{
+				startOffset = bufferOffset + lineStart;
+			}
+			lineStarts[size] = lineStart;
+			lineEnds[size] = lineEnd;
+			size++;
+			position = next;
+		}
+		if(size == 0)
+		{
+			return null;
+		}
+		LineChunk chunk = new LineChunk(
+				lineCount,
+				wrapped,
+				lineStarts,
+				lineEnds,
+				size,
+				startOffset,
+				bufferOffset + position
+				);
+		lineCount += size;
+		return chunk;
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		decompressThread.interrupt();
+		try {
+			// drain the queue until the thread is out, a put may be blocked on it
+			while(decompressThread.isAlive())
+			{
+				blocks.clear();
+				decompressThread.join(JOIN_MILLIS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		blocks.clear();
+	}
+
+	private void readHeader() throws IOException {
+		int newline;
+		while((newline = indexOfNewline()) < 0 && !eof)
+		{
+			refill();
+		}
+		int headerEnd = newline < 0 ? buffer.length : newline;
+		while(headerEnd > position && buffer[headerEnd - 1] == '\r')
+		{
+			headerEnd--;
+		}
+		CsvRow row = new CsvRow();
+		row.reset(wrapped, position, headerEnd);
+		colNames = new String[row.size()];
+		for(int i = 0; i < colNames.length; i++)
+		{
+			colNames[i] = row.getString(i);
+		}
+		position = newline < 0 ? buffer.length : newline + 1;
+	}
+
+	private int indexOfNewline() {
+		for(int i = position; i < buffer.length; i++)
+		{
+			if(buffer[i] == '\n')
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * append the next decompressed block to the unread part of the buffer;
+	 * the buffers already handed out in chunks are left untouched
+	 */
+	private void refill() throws IOException {
+		byte[] block;
+		try {
+			block = blocks.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		if(block == END)
+		{
+			if(error != null)
+			{
+				throw error;
+			}
+			eof = true;
+			return;
+		}
+		int remaining = buffer.length - position;
+		byte[] next;
+		if(remaining == 0)
+		{
+			next = block;
+		}
+		else
+		{
+			next = Arrays.copyOfRange(buffer, position, position + remaining + block.length);
+			System.arraycopy(block, 0, next, remaining, block.length);
+		}
+		bufferOffset += position;
+		buffer = next;
+		wrapped = ByteBuffer.wrap(buffer);
+		position = 0;
+	}
+
+	/*
+	 * body of the decompression thread
+	 */
+	private void decompress() {
+		try {
+			try {
+				while(!closed)
+				{
+					byte[] block = new byte[BLOCK_SIZE];
+					int n = 0;
+					int read;
+					while(n < BLOCK_SIZE && (read = in.read(block, n, BLOCK_SIZE - n)) >= 0)
+					{
+						n += read;
+					}
+					if(n > 0)
+					{
+						blocks.put(n == BLOCK_SIZE ? block : Arrays.copyOf(block, n));
+					}
+					if(n < BLOCK_SIZE)
+					{
+						break;
+					}
+				}
+			} catch (IOException e) {
+				error = e;
+			}
+			blocks.put(END);
+		} catch (InterruptedException e) {
+			// closed
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// the data, if any, was read already
+			}
+		}
+	}
+}
@@ -0,0 +1,379 @@
+package net.mpolonioli.janusgraphimporter.journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import net.mpolonioli.janusgraphimporter.dictionary.KeyIdDictionary;
+import net.mpolonioli.janusgraphimporter.io.LineChunk;
+
+/*
+ * the progress of the load of a single CSV file, kept in an append only
+ * file so that an interrupted load can be resumed.
+ *
+ * The journal holds a record for every committed LineChunk (its byte range
+ * and line numbers) and, for vertex files, the key -> vertex id pairs of the
+ * chunk, written before the chunk record. On open the chunk records give the
+ * byte ranges left to load, and the ids of the committed chunks can be put
+ * back in the dictionary. A record cut by a crash is discarded; the chunks
+ * that were being committed at the time of the crash are loaded again.
+ *
+ * A journal is open in one process at a time: it holds an exclusive lock on
+ * <journal>.lock until it is closed, and waits up to LOCK_WAIT_MILLIS for a
+ * process that holds it, so that two processes never load the same file or
+ * range at once.
+ */
+public class ImportJournal implements Closeable {
+
+	private static final int MAGIC = 0x4A474A31;
+	private static final byte IDS = 'I';
+	private static final byte CHUNK = 'C';
+	private static final long LOCK_WAIT_MILLIS = 120000;
+	private static final long LOCK_POLL_MILLIS = 1000;
+
+	private File journalFile;
+	private FileChannel lockChannel;
+	private long dataLength;
+	private DataOutputStream out;
+
+	// start offset -> { end offset, line count, lines } of the committed chunks
+	private TreeMap<Long, long[]> committed = new TreeMap<>();
+	private long committedLines = 0;
+
+	/*
+	 * open the journal of the given data file, creating it if missing; fails
+	 * if the journal was written for a different version of the data file,
+	 * or if another process keeps it open
+	 */
+	public ImportJournal(File journalFile, File dataFile) throws IOException
+	{
+		this.journalFile = journalFile;
+		lock();
+		try {
+			open(dataFile);
+		} catch (IOException | RuntimeException e) {
+			lockChannel.close();
+			throw e;
+		}
+	}
+
+	private void open(File dataFile) throws IOException {
+		this.dataLength = dataFile.length();
+		long lastModified = dataFile.lastModified();
+
+		long validLength = 0;
+		if(journalFile.length() > 0)
+		{
+			validLength = readChunks(lastModified);
+			if(validLength < journalFile.length())
+			{
+				// drop the record cut by a crash
+				try(RandomAccessFile file = new RandomAccessFile(journalFile, "rw"))
+				{
+					file.setLength(validLength);
+				}
+			}
+		}
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+		if(validLength == 0)
+		{
+			out.writeInt(MAGIC);
+			out.writeLong(dataLength);
+			out.writeLong(lastModified);
+			out.flush();
+		}
+	}
+
+	public File getFile() {
+		return journalFile;
+	}
+
+	/*
+	 * whether a previous run committed part of the file
+	 */
+	public boolean isResumed() {
+		return !committed.isEmpty();
+	}
+
+	public long getCommittedLines() {
+		return committedLines;
+	}
+
+	/*
+	 * the byte ranges of the file not committed yet, as { start, end, number
+	 * of data lines preceding start }; the first range starts at 0, header
+	 * included, and the last one is open ended. Offsets are those of the
+	 * uncompressed data when the file is compressed.
+	 */
+	public synchronized List<long[]> getPendingRanges() {
+		List<long[]> ranges = new ArrayList<>();
+		long start = 0;
+		long lineCount = 0;
+		for(long[] chunk : mergedChunks())
+		{
+			if(chunk[0] > start)
+			{
+				ranges.add(new long[] { start, chunk[0], lineCount });
+			}
+			start = chunk[1];
+			lineCount = chunk[2];
+		}
+		ranges.add(new long[] { start, Long.MAX_VALUE, lineCount });
+		return ranges;
+	}
+
+	/*
+	 * put the key -> id pairs of the committed chunks in the dictionary
+	 */
+	public synchronized void replayIds(KeyIdDictionary dictionary) throws IOException {
+		out.flush();
+		Set<Long> done = new HashSet<>(committed.keySet());
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile))))
+		{
+			in.readInt();
+			in.readLong();
+			in.readLong();
+			String[] keys = new String[0];
+			long[] ids = new long[0];
+			int type;
+			while((type = in.read()) >= 0)
+			{
+				if(type == IDS)
+				{
+					long chunkStart = in.readLong();
+					int count = in.readInt();
+					if(keys.length < count)
+					{
+						keys = new String[count];
+						ids = new long[count];
+					}
+					for(int i = 0; i < count; i++)
+					{
+						keys[i] = in.readUTF();
+						ids[i] = in.readLong();
+					}
+					if(done.contains(chunkStart))
+					{
+						dictionary.putAll(keys, ids, count);
+					}
+				}
+				else
+				{
+					in.readLong();
+					in.readLong();
+					in.readLong();
+					in.readInt();
+				}
+			}
+		}
+	}
+
+	/*
+	 * record the key -> vertex id pairs loaded from the given chunk; they are
+	 * replayed only if the chunk itself is recorded as committed
+	 */
+	public synchronized void vertexIds(LineChunk chunk, String[] keys, long[] ids, int count) throws IOException {
+		out.writeByte(IDS);
+		out.writeLong(chunk.getStartOffset());
+		out.writeInt(count);
+		for(int i = 0; i < count; i++)
+		{
+			out.writeUTF(keys[i]);
+			out.writeLong(ids[i]);
+		}
+	}
+
+	/*
+	 * record a committed chunk; flushed at once, so that it survives a crash
+	 * of the process
+	 */
+	public synchronized void chunkCommitted(LineChunk chunk) throws IOException {
+		out.writeByte(CHUNK);
+		out.writeLong(chunk.getStartOffset());
+		out.writeLong(chunk.getEndOffset());
+		out.writeLong(chunk.getLineCount());
+		out.writeInt(chunk.size());
+		out.flush();
+		committed.put(chunk.getStartOffset(), new long[] {
+				chunk.getEndOffset(), chunk.getLineCount() + chunk.size(), chunk.size() });
+		committedLines += chunk.size();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			out.close();
+		} finally {
+			// releases the lock
+			lockChannel.close();
+		}
+	}
+
+	/*
+	 * take the lock of the journal, waiting for the process that holds it
+	 */
+	@SuppressWarnings("resource")
+	private void lock() throws IOException {
+		File lockFile = new File(journalFile.getPath() + ".lock");
+		lockChannel = new RandomAccessFile(lockFile, "rw").getChannel();
+		long deadline = System.currentTimeMillis() + LOCK_WAIT_MILLIS;
+		try {
+			while(true)
+			{
+				FileLock lock;
+				try {
+					lock = lockChannel.tryLock();
+				} catch (OverlappingFileLockException e) {
+					// held by this process
+					lock = null;
+				}
+				if(lock != null)
+				{
+					return;
+				}
+				if(System.currentTimeMillis() > deadline)
+				{
+					throw new IOException("ERROR: " + journalFile + " is in use by another load, " +
+							"still locked after " + LOCK_WAIT_MILLIS / 1000 + " s");
+				}
+				Thread.sleep(LOCK_POLL_MILLIS);
+			}
+		} catch (IOException | RuntimeException e) {
+			lockChannel.close();
+			throw e;
+		} catch (InterruptedException e) {
+			lockChannel.close();
+			Thread.currentThread().interrupt();
+			throw new IOException("ERROR: interrupted while waiting for the lock of " + journalFile, e);
+		}
+	}
+
+	/*
+	 * load the chunk records, returns the length of the journal up to the
+	 * last complete record
+	 */
+	private long readChunks(long lastModified) throws IOException {
+		try(CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+				DataInputStream in = new DataInputStream(counter))
+		{
+			long validLength = 0;
+			try {
+				if(in.readInt() != MAGIC)
+				{
+					throw new IOException("ERROR: " + journalFile + " is not an import journal");
+				}
+				if(in.readLong() != dataLength || in.readLong() != lastModified)
+				{
+					throw new IOException("ERROR: " + journalFile + " was written for a different version of the file, " +
+							"delete it to load the file from the start");
+				}
+				validLength = counter.count;
+				int type;
+				while((type = in.read()) >= 0)
+				{
+					if(type == IDS)
+					{
+						in.readLong();
+						int count = in.readInt();
+						for(int i = 0; i < count; i++)
+						{
+							in.readUTF();
+							in.readLong();
+						}
+					}
+					else if(type == CHUNK)
+					{
+						long start = in.readLong();
+						long end = in.readLong();
+						long lineCount = in.readLong();
+						int lines = in.readInt();
+						committed.put(start, new long[] { end, lineCount + lines, lines });
+						committedLines += lines;
+					}
+					else
+					{
+						break;
+					}
+					validLength = counter.count;
+				}
+			} catch (EOFException e) {
+				// cut by a crash
+			}
+			return validLength;
+		}
+	}
+
+	/*
+	 * the committed chunks, adjacent ones merged, as { start, end, line count
+	 * at end }
+	 */
+	private List<long[]> mergedChunks() {
+		List<long[]> merged = new ArrayList<>();
+		long[] last = null;
+		for(Map.Entry<Long, long[]> entry : committed.entrySet())
+		{
+			long start = entry.getKey();
+			long[] chunk = entry.getValue();
+			if(last != null && last[1] == start)
+			{
+				last[1] = chunk[0];
+				last[2] = chunk[1];
+			}
+			else
+			{
+				last = new long[] { start, chunk[0], chunk[1] };
+				merged.add(last);
+			}
+		}
+		return merged;
+	}
+
+	private static class CountingInputStream extends FilterInputStream {
+
+		private long count = 0;
+
+		CountingInputStream(InputStream in)
+		{
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if(b >= 0)
+			{
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if(read > 0)
+			{
+				count += read;
+			}
+			return read;
+		}
+	}
+}
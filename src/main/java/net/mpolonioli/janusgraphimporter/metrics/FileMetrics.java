@@ -0,0 +1,114 @@
+package net.mpolonioli.janusgraphimporter.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/*
+ * the metrics of the load of a file, named importer.<file>.<metric> and,
+ * per worker thread, importer.<file>.<thread>.<metric>:
+ *
+ * rows.parsed      meter, rows out of the parse stage
+ * written          meter, vertices or edges committed
+ * commit           timer, latency of the successful tx commits
+ * commit.nanos     counter, total time of the successful tx commits
+ * commit.failures  meter, failed tx commits (each one is retried)
+ * vertices.missing counter, edge endpoints not found
+ * edges.duplicate  counter, edges not added because already in the graph
+ * updated          counter, vertices or edges updated by the upsert mode
+ * deleted          counter, vertices or edges removed by the upsert mode
+ * dead.letters     counter, lines written to the dead letter file
+ * queue.lines      gauge, chunks waiting for the parse stage
+ * queue.rows       gauge, chunks waiting for the commit stage
+ */
+public class FileMetrics {
+
+	private MetricRegistry registry;
+	private String prefix;
+	private List<String> gauges = new ArrayList<>();
+
+	FileMetrics(MetricRegistry registry, String prefix)
+	{
+		this.registry = registry;
+		this.prefix = prefix;
+	}
+
+	public Meter rowsParsed() {
+		return registry.meter(MetricRegistry.name(prefix, "rows.parsed"));
+	}
+
+	public Meter rowsParsed(String worker) {
+		return registry.meter(MetricRegistry.name(prefix, worker, "rows.parsed"));
+	}
+
+	public Meter written() {
+		return registry.meter(MetricRegistry.name(prefix, "written"));
+	}
+
+	public Meter written(String worker) {
+		return registry.meter(MetricRegistry.name(prefix, worker, "written"));
+	}
+
+	public Timer commits() {
+		return registry.timer(MetricRegistry.name(prefix, "commit"));
+	}
+
+	public Timer commits(String worker) {
+		return registry.timer(MetricRegistry.name(prefix, worker, "commit"));
+	}
+
+	public Counter commitNanos() {
+		return registry.counter(MetricRegistry.name(prefix, "commit.nanos"));
+	}
+
+	public Meter commitFailures() {
+		return registry.meter(MetricRegistry.name(prefix, "commit.failures"));
+	}
+
+	public Meter commitFailures(String worker) {
+		return registry.meter(MetricRegistry.name(prefix, worker, "commit.failures"));
+	}
+
+	public Counter missingVertices() {
+		return registry.counter(MetricRegistry.name(prefix, "vertices.missing"));
+	}
+
+	public Counter duplicateEdges() {
+		return registry.counter(MetricRegistry.name(prefix, "edges.duplicate"));
+	}
+
+	public Counter updated() {
+		return registry.counter(MetricRegistry.name(prefix, "updated"));
+	}
+
+	public Counter deleted() {
+		return registry.counter(MetricRegistry.name(prefix, "deleted"));
+	}
+
+	public Counter deadLetters() {
+		return registry.counter(MetricRegistry.name(prefix, "dead.letters"));
+	}
+
+	/*
+	 * gauges read live objects, they are removed by unregisterGauges()
+	 */
+	public synchronized void registerGauge(String name, Gauge<?> gauge) {
+		String fullName = MetricRegistry.name(prefix, name);
+		registry.remove(fullName);
+		registry.register(fullName, gauge);
+		gauges.add(fullName);
+	}
+
+	public synchronized void unregisterGauges() {
+		for(String name : gauges)
+		{
+			registry.remove(name);
+		}
+		gauges.clear();
+	}
+}
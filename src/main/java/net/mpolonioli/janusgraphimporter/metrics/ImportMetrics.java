@@ -0,0 +1,89 @@
+package net.mpolonioli.janusgraphimporter.metrics;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.CsvReporter;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+
+/*
+ * the metrics of an importer: a MetricRegistry holding a FileMetrics per
+ * loaded file, which can be exposed over JMX and dumped to CSV files
+ */
+public class ImportMetrics {
+
+	public static final String PREFIX = "importer";
+	public static final String JMX_DOMAIN = "janusgraph-csv-importer";
+
+	private MetricRegistry registry;
+	private JmxReporter jmxReporter;
+	private CsvReporter csvReporter;
+
+	public ImportMetrics()
+	{
+		this(new MetricRegistry());
+	}
+
+	public ImportMetrics(MetricRegistry registry)
+	{
+		this.registry = registry;
+	}
+
+	public MetricRegistry getRegistry() {
+		return registry;
+	}
+
+	/*
+	 * the metrics of the given file, created on first use
+	 */
+	public FileMetrics forFile(String fileName) {
+		return new FileMetrics(registry, MetricRegistry.name(PREFIX, fileName));
+	}
+
+	/*
+	 * expose the registry as MBeans of the JMX_DOMAIN domain
+	 */
+	public synchronized void startJmxReporter() {
+		if(jmxReporter == null)
+		{
+			jmxReporter = JmxReporter.forRegistry(registry)
+					.inDomain(JMX_DOMAIN)
+					.convertRatesTo(TimeUnit.SECONDS)
+					.convertDurationsTo(TimeUnit.MILLISECONDS)
+					.build();
+			jmxReporter.start();
+		}
+	}
+
+	/*
+	 * append every metric to a CSV file of the given directory, one per metric,
+	 * every period
+	 */
+	public synchronized void startCsvReporter(File directory, long period, TimeUnit unit) {
+		if(csvReporter == null)
+		{
+			directory.mkdirs();
+			csvReporter = CsvReporter.forRegistry(registry)
+					.formatFor(Locale.US)
+					.convertRatesTo(TimeUnit.SECONDS)
+					.convertDurationsTo(TimeUnit.MILLISECONDS)
+					.build(directory);
+			csvReporter.start(period, unit);
+		}
+	}
+
+	public synchronized void stopReporters() {
+		if(jmxReporter != null)
+		{
+			jmxReporter.stop();
+			jmxReporter = null;
+		}
+		if(csvReporter != null)
+		{
+			csvReporter.stop();
+			csvReporter = null;
+		}
+	}
+}
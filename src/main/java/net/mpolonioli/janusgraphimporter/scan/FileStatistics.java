@@ -0,0 +1,157 @@
+package net.mpolonioli.janusgraphimporter.scan;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * what the pre-scan found in a file, or in a part of it: row count,
+ * distinct key estimates, per column empty fields and parse errors, rows
+ * with more fields than the header and, for edge files, references to keys
+ * that no scanned vertex file holds
+ */
+public class FileStatistics {
+
+	static final int MAX_SAMPLES = 10;
+
+	private final File file;
+	private final String[] colNames;
+	private final boolean edges;
+
+	long rows = 0;
+	long malformedRows = 0;
+	final long[] emptyFields;
+	final long[] parseErrors;
+	final String[] firstParseErrors;
+	final HyperLogLog[] keys;
+	long danglingReferences = 0;
+	final List<String> danglingSamples = new ArrayList<>();
+
+	FileStatistics(File file, String[] colNames, boolean edges)
+	{
+		this.file = file;
+		this.colNames = colNames;
+		this.edges = edges;
+		this.emptyFields = new long[colNames.length];
+		this.parseErrors = new long[colNames.length];
+		this.firstParseErrors = new String[colNames.length];
+		this.keys = new HyperLogLog[edges ? 2 : 1];
+		for(int i = 0; i < keys.length; i++)
+		{
+			keys[i] = new HyperLogLog();
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public String[] getColNames() {
+		return colNames;
+	}
+
+	public boolean isEdges() {
+		return edges;
+	}
+
+	public long getRows() {
+		return rows;
+	}
+
+	public long getMalformedRows() {
+		return malformedRows;
+	}
+
+	public long getEmptyFields(int column) {
+		return emptyFields[column];
+	}
+
+	public long getParseErrors(int column) {
+		return parseErrors[column];
+	}
+
+	/*
+	 * estimated distinct keys of the key column, or of the source (0) and
+	 * target (1) columns of an edge file
+	 */
+	public long getDistinctKeys(int keyColumn) {
+		return keys[keyColumn].estimate();
+	}
+
+	public long getDanglingReferences() {
+		return danglingReferences;
+	}
+
+	public List<String> getDanglingSamples() {
+		return danglingSamples;
+	}
+
+	public boolean hasErrors() {
+		if(malformedRows > 0 || danglingReferences > 0)
+		{
+			return true;
+		}
+		for(long errors : parseErrors)
+		{
+			if(errors > 0)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	void merge(FileStatistics part) {
+		rows += part.rows;
+		malformedRows += part.malformedRows;
+		for(int j = 0; j < colNames.length; j++)
+		{
+			emptyFields[j] += part.emptyFields[j];
+			parseErrors[j] += part.parseErrors[j];
+			if(firstParseErrors[j] == null)
+			{
+				firstParseErrors[j] = part.firstParseErrors[j];
+			}
+		}
+		for(int i = 0; i < keys.length; i++)
+		{
+			keys[i].merge(part.keys[i]);
+		}
+		danglingReferences += part.danglingReferences;
+		for(String sample : part.danglingSamples)
+		{
+			if(danglingSamples.size() < MAX_SAMPLES)
+			{
+				danglingSamples.add(sample);
+			}
+		}
+	}
+
+	void print() {
+		StringBuilder keyCounts = new StringBuilder();
+		for(int i = 0; i < keys.length; i++)
+		{
+			keyCounts.append(i == 0 ? "" : ", ").append("~").append(keys[i].estimate())
+				.append(" distinct ").append(colNames[i]);
+		}
+		System.out.println(String.format("%s: %d rows, %s%s", file.getName(), rows, keyCounts,
+				malformedRows > 0 ? ", " + malformedRows + " rows with too many fields" : ""));
+		for(int j = 0; j < colNames.length; j++)
+		{
+			if(parseErrors[j] > 0)
+			{
+				System.out.println(String.format("  %s: %d parse errors, first: %s",
+						colNames[j], parseErrors[j], firstParseErrors[j]));
+			}
+			if(emptyFields[j] > 0)
+			{
+				System.out.println(String.format("  %s: %d empty", colNames[j], emptyFields[j]));
+			}
+		}
+		if(danglingReferences > 0)
+		{
+			System.out.println(String.format("  %d references to missing vertices, e.g. %s",
+					danglingReferences, danglingSamples));
+		}
+	}
+}
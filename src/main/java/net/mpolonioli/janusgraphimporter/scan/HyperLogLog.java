@@ -0,0 +1,76 @@
+package net.mpolonioli.janusgraphimporter.scan;
+
+import java.nio.ByteBuffer;
+
+/*
+ * estimates the number of distinct keys of a column in 2^PRECISION bytes,
+ * with a standard error of about 1.04 / sqrt(2^PRECISION), 0.8%
+ */
+public class HyperLogLog {
+
+	private static final int PRECISION = 14;
+	private static final int REGISTERS = 1 << PRECISION;
+	private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+	private byte[] registers = new byte[REGISTERS];
+
+	/*
+	 * add the key held in the bytes [start, end) of the buffer
+	 */
+	public void add(ByteBuffer buffer, int start, int end) {
+		// FNV-1a, then the murmur3 finalizer to spread the bits
+		long hash = 0xcbf29ce484222325L;
+		for(int i = start; i < end; i++)
+		{
+			hash ^= buffer.get(i) & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		addHash(hash);
+	}
+
+	public void addHash(long hash) {
+		int index = (int) (hash >>> (64 - PRECISION));
+		// the guard bit bounds the rank when the remaining bits are all 0
+		long rest = (hash << PRECISION) | (1L << (PRECISION - 1));
+		byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+		if(registers[index] < rank)
+		{
+			registers[index] = rank;
+		}
+	}
+
+	public void merge(HyperLogLog other) {
+		for(int i = 0; i < REGISTERS; i++)
+		{
+			if(registers[i] < other.registers[i])
+			{
+				registers[i] = other.registers[i];
+			}
+		}
+	}
+
+	public long estimate() {
+		double sum = 0;
+		int zeros = 0;
+		for(byte register : registers)
+		{
+			sum += 1.0 / (1L << register);
+			if(register == 0)
+			{
+				zeros++;
+			}
+		}
+		double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+		if(estimate <= 2.5 * REGISTERS && zeros > 0)
+		{
+			// linear counting is more accurate for small cardinalities
+			estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+		}
+		return Math.round(estimate);
+	}
+}
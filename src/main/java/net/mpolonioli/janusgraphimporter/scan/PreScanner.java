@@ -0,0 +1,326 @@
+package net.mpolonioli.janusgraphimporter.scan;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.janusgraph.core.Cardinality;
+
+import net.mpolonioli.janusgraphimporter.codec.CodecRegistry;
+import net.mpolonioli.janusgraphimporter.codec.ColumnBinding;
+import net.mpolonioli.janusgraphimporter.dictionary.KeyIdDictionary;
+import net.mpolonioli.janusgraphimporter.dictionary.MappedVertexIdDictionary;
+import net.mpolonioli.janusgraphimporter.dictionary.VertexIdDictionary;
+import net.mpolonioli.janusgraphimporter.dictionary.VertexIdMapper;
+import net.mpolonioli.janusgraphimporter.io.Compression;
+import net.mpolonioli.janusgraphimporter.io.CsvReader;
+import net.mpolonioli.janusgraphimporter.io.CsvReaders;
+import net.mpolonioli.janusgraphimporter.io.CsvRow;
+import net.mpolonioli.janusgraphimporter.io.LineChunk;
+import net.mpolonioli.janusgraphimporter.io.MappedCsvReader;
+
+/*
+ * reads the input files before a load, without writing anything, to find
+ * the bad data and to size the load.
+ *
+ * Every field is decoded with the codec it would be loaded with. The files
+ * are split in parts scanned in parallel (compressed files are scanned
+ * whole). The vertex files go first, so that the keys they hold are known
+ * when the edge files are checked for references to missing vertices; the
+ * endpoints of an edge file are looked up among the keys of the vertex files
+ * whose key column has the same name, and are not checked if there is none.
+ * When the keys are scoped by label (see setLabelScopedKeys), they are looked
+ * up among the keys of the vertex files of the endpoint labels instead.
+ * The keys are held on the heap or, given a directory, in memory mapped
+ * dictionaries (see MappedVertexIdDictionary) whose files are deleted at the
+ * end of the scan.
+ */
+public class PreScanner {
+
+	private static final int SCAN_CHUNK_LINES = 4096;
+	// bytes per row assumed to size a mapped key set from the file size
+	private static final int ESTIMATED_ROW_BYTES = 32;
+
+	private CodecRegistry codecRegistry;
+	private int threadCount;
+	private File keySetDirectory;
+	// vertex file -> label and edge file -> endpoint labels, null if the keys are not scoped
+	private Map<File, String> vertexLabels = null;
+	private Map<File, String[]> endpointLabels = null;
+
+	public PreScanner(CodecRegistry codecRegistry, int threadCount)
+	{
+		this(codecRegistry, threadCount, null);
+	}
+
+	/*
+	 * keySetDirectory holds the vertex keys during the scan, null to keep
+	 * them on the heap
+	 */
+	public PreScanner(CodecRegistry codecRegistry, int threadCount, File keySetDirectory)
+	{
+		this.codecRegistry = codecRegistry;
+		this.threadCount = threadCount;
+		this.keySetDirectory = keySetDirectory;
+	}
+
+	/*
+	 * scope the vertex keys by label, as the loads do: vertexLabels gives the
+	 * label of every vertex file, endpointLabels the { source label, target
+	 * label } of the edge files; the endpoints of an edge file without labels
+	 * are not checked
+	 */
+	public void setLabelScopedKeys(Map<File, String> vertexLabels, Map<File, String[]> endpointLabels) {
+		this.vertexLabels = vertexLabels;
+		this.endpointLabels = vertexLabels == null ? null : endpointLabels;
+	}
+
+	/*
+	 * scan the files; the vertex keys are kept, for the dangling reference
+	 * check, only if there are edge files
+	 */
+	public ScanReport scan(
+			List<File> vertexFiles,
+			List<File> edgeFiles,
+			@SuppressWarnings("rawtypes") HashMap<String, Class> propertyHasType,
+			HashMap<String, Cardinality> propertyHasCardinality
+			) throws IOException, InterruptedException {
+
+		Map<String, KeyIdDictionary> keySets = edgeFiles.isEmpty() ? null : new ConcurrentHashMap<>();
+		List<FileStatistics> statistics = new ArrayList<>();
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			for(File file : vertexFiles)
+			{
+				statistics.add(scanFile(executor, file, false, propertyHasType, propertyHasCardinality, keySets));
+			}
+			for(File file : edgeFiles)
+			{
+				statistics.add(scanFile(executor, file, true, propertyHasType, null, keySets));
+			}
+		} finally {
+			executor.shutdownNow();
+			if(keySets != null)
+			{
+				deleteKeySets(keySets.values());
+			}
+		}
+		return new ScanReport(statistics);
+	}
+
+	/*
+	 * a set for the keys of the given vertex file
+	 */
+	private KeyIdDictionary newKeySet(File file) {
+		if(keySetDirectory == null)
+		{
+			return new VertexIdDictionary();
+		}
+		try {
+			File keySetFile = File.createTempFile("prescan-", ".keys", keySetDirectory);
+			return new MappedVertexIdDictionary(keySetFile, file.length() / ESTIMATED_ROW_BYTES, 0);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void deleteKeySets(Iterable<KeyIdDictionary> keySets) throws IOException {
+		for(KeyIdDictionary keySet : keySets)
+		{
+			keySet.close();
+			if(keySet instanceof MappedVertexIdDictionary)
+			{
+				((MappedVertexIdDictionary) keySet).getFile().delete();
+			}
+		}
+	}
+
+	private FileStatistics scanFile(
+			ExecutorService executor,
+			File file,
+			boolean edges,
+			@SuppressWarnings("rawtypes") HashMap<String, Class> propertyHasType,
+			HashMap<String, Cardinality> propertyHasCardinality,
+			Map<String, KeyIdDictionary> keySets
+			) throws IOException, InterruptedException {
+
+		String[] colNames = CsvReaders.readColNames(file);
+		ColumnBinding[] columns = ColumnBinding.resolve(
+				colNames, edges ? 2 : 0, propertyHasType, propertyHasCardinality, codecRegistry);
+
+		KeyIdDictionary[] endpointKeys = new KeyIdDictionary[edges ? 2 : 1];
+		if(keySets != null)
+		{
+			if(edges && vertexLabels == null)
+			{
+				endpointKeys[0] = keySets.get(colNames[0]);
+				endpointKeys[1] = keySets.get(colNames[1]);
+			}
+			else if(edges)
+			{
+				String[] labels = endpointLabels == null ? null : endpointLabels.get(file);
+				if(labels != null)
+				{
+					endpointKeys[0] = keySets.get(VertexIdMapper.namespace(labels[0], colNames[0]));
+					endpointKeys[1] = keySets.get(VertexIdMapper.namespace(labels[1], colNames[1]));
+				}
+			}
+			else
+			{
+				String label = vertexLabels == null ? null : vertexLabels.get(file);
+				endpointKeys[0] = keySets.computeIfAbsent(VertexIdMapper.namespace(label, colNames[0]), k -> newKeySet(file));
+			}
+		}
+
+		List<Future<FileStatistics>> parts = new ArrayList<>();
+		if(Compression.detect(file) == Compression.NONE)
+		{
+			for(long[] range : MappedCsvReader.split(file, threadCount))
+			{
+				parts.add(executor.submit(scanPart(file, colNames, columns, edges, endpointKeys,
+						() -> new MappedCsvReader(file, range[0], range[1]))));
+			}
+		}
+		else
+		{
+			parts.add(executor.submit(scanPart(file, colNames, columns, edges, endpointKeys,
+					() -> CsvReaders.open(file))));
+		}
+
+		FileStatistics statistics = new FileStatistics(file, colNames, edges);
+		for(Future<FileStatistics> part : parts)
+		{
+			try {
+				statistics.merge(part.get());
+			} catch (ExecutionException e) {
+				if(e.getCause() instanceof IOException)
+				{
+					throw (IOException) e.getCause();
+				}
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		return statistics;
+	}
+
+	private interface ReaderFactory {
+
+		CsvReader open() throws IOException;
+	}
+
+	private Callable<FileStatistics> scanPart(
+			File file,
+			String[] colNames,
+			ColumnBinding[] columns,
+			boolean edges,
+			KeyIdDictionary[] endpointKeys,
+			ReaderFactory readerFactory) {
+
+		return () -> {
+			FileStatistics statistics = new FileStatistics(file, colNames, edges);
+			CsvRow row = new CsvRow();
+			CsvRow values = new CsvRow(CsvRow.VALUE_SEPARATOR);
+			int firstColumn = edges ? 2 : 0;
+			try(CsvReader reader = readerFactory.open())
+			{
+				LineChunk chunk;
+				while((chunk = reader.nextChunk(SCAN_CHUNK_LINES)) != null)
+				{
+					for(int i = 0; i < chunk.size(); i++)
+					{
+						row.reset(chunk.getBuffer(), chunk.getLineStart(i), chunk.getLineEnd(i));
+						if(row.isBlank())
+						{
+							continue;
+						}
+						statistics.rows++;
+						if(row.size() > colNames.length)
+						{
+							statistics.malformedRows++;
+						}
+						for(int j = row.size(); j < colNames.length; j++)
+						{
+							statistics.emptyFields[j]++;
+						}
+
+						for(int k = 0; k < statistics.keys.length && k < row.size(); k++)
+						{
+							if(row.isEmpty(k))
+							{
+								continue;
+							}
+							statistics.keys[k].add(row.getBuffer(), row.getStart(k), row.getEnd(k));
+							if(endpointKeys[k] == null)
+							{
+								continue;
+							}
+							if(!edges)
+							{
+								endpointKeys[k].put(row.getString(k), 1);
+							}
+							else if(endpointKeys[k].get(row.getString(k)) == KeyIdDictionary.NO_ID)
+							{
+								statistics.danglingReferences++;
+								if(statistics.danglingSamples.size() < FileStatistics.MAX_SAMPLES)
+								{
+									statistics.danglingSamples.add(colNames[k] + "=" + row.getString(k));
+								}
+							}
+						}
+
+						int fields = Math.min(row.size(), colNames.length);
+						for(int j = 0; j < fields; j++)
+						{
+							if(row.isEmpty(j))
+							{
+								statistics.emptyFields[j]++;
+								continue;
+							}
+							if(j < firstColumn)
+							{
+								continue;
+							}
+							try {
+								ColumnBinding column = columns[j];
+								if(!column.isMultiValued())
+								{
+									column.getCodec().decode(row, j);
+								}
+								else
+								{
+									values.reset(row.getBuffer(), row.getStart(j), row.getEnd(j));
+									for(int v = 0; v < values.size(); v++)
+									{
+										if(!values.isEmpty(v))
+										{
+											column.getCodec().decode(values, v);
+										}
+									}
+								}
+							} catch (RuntimeException e) {
+								statistics.parseErrors[j]++;
+								if(statistics.firstParseErrors[j] == null)
+								{
+									// parts number their lines from their own start, offsets are exact
+									statistics.firstParseErrors[j] = String.format("byte offset %d: %s",
+											chunk.getStartOffset() + chunk.getLineStart(i) - chunk.getLineStart(0), e);
+								}
+							}
+						}
+					}
+				}
+			}
+			return statistics;
+		};
+	}
+}
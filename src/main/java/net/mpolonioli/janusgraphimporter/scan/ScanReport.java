@@ -0,0 +1,56 @@
+package net.mpolonioli.janusgraphimporter.scan;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * the statistics of all the files of a pre-scan
+ */
+public class ScanReport {
+
+	private List<FileStatistics> files;
+
+	ScanReport(List<FileStatistics> files)
+	{
+		this.files = files;
+	}
+
+	public List<FileStatistics> getFiles() {
+		return files;
+	}
+
+	public boolean hasErrors() {
+		for(FileStatistics file : files)
+		{
+			if(file.hasErrors())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * key column name -> estimated distinct keys of the vertex files with
+	 * that key column
+	 */
+	public Map<String, Long> getDistinctVertexKeys() {
+		Map<String, Long> distinct = new HashMap<>();
+		for(FileStatistics file : files)
+		{
+			if(!file.isEdges())
+			{
+				distinct.merge(file.getColNames()[0], file.getDistinctKeys(0), Long::sum);
+			}
+		}
+		return distinct;
+	}
+
+	public void print() {
+		for(FileStatistics file : files)
+		{
+			file.print();
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package net.mpolonioli.janusgraphimporter.shard;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+
+/*
+ * a unit of work of a sharded import: the lines starting in the byte range
+ * [start, end) of a vertex or edge file; end is Long.MAX_VALUE for the rest
+ * of the file
+ */
+public class Shard {
+
+	private final int id;
+	private final boolean edges;
+	private final String path;
+	private final long start;
+	private final long end;
+
+	public Shard(int id, boolean edges, String path, long start, long end)
+	{
+		this.id = id;
+		this.edges = edges;
+		this.path = path;
+		this.start = start;
+		this.end = end;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	/*
+	 * whether the file is an edge file, a vertex file otherwise
+	 */
+	public boolean isEdges() {
+		return edges;
+	}
+
+	/*
+	 * the absolute path of the file, the same for every worker
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	public File getFile() {
+		return new File(path);
+	}
+
+	public long getStart() {
+		return start;
+	}
+
+	public long getEnd() {
+		return end;
+	}
+
+	void write(DataOutput out) throws IOException {
+		out.writeInt(id);
+		out.writeBoolean(edges);
+		out.writeUTF(path);
+		out.writeLong(start);
+		out.writeLong(end);
+	}
+
+	static Shard read(DataInput in) throws IOException {
+		return new Shard(in.readInt(), in.readBoolean(), in.readUTF(), in.readLong(), in.readLong());
+	}
+
+	@Override
+	public String toString() {
+		return String.format("#%d %s [%d,%s)", id, path, start, end == Long.MAX_VALUE ? "end" : Long.toString(end));
+	}
+}
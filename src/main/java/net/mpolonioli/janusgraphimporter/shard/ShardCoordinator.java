@@ -0,0 +1,308 @@
+package net.mpolonioli.janusgraphimporter.shard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.mpolonioli.janusgraphimporter.io.Compression;
+import net.mpolonioli.janusgraphimporter.io.MappedCsvReader;
+
+/*
+ * hands the shards of a set of vertex and edge files to ShardWorkers over
+ * TCP, on one host or many.
+ *
+ * Plain files are split in byte ranges of about shardBytes aligned to line
+ * boundaries, compressed files are a single shard. Workers ask for a shard,
+ * load it and report whether it was loaded; the edge shards are handed out
+ * once every vertex shard is loaded, so that the endpoints exist. The
+ * workers must see the files at the same absolute paths.
+ *
+ * A worker holds its shard under a lease: it sends a heartbeat while it
+ * loads, and a worker silent for leaseMillis is considered gone. A shard
+ * that fails, or whose worker disconnects or loses its lease before
+ * reporting, may be partly loaded: it is handed out again, up to maxAttempts
+ * times, only if the workers can load it again without duplicating data,
+ * that is with a shared journal directory, so that the new attempt resumes
+ * where the previous one stopped; otherwise the run fails. A worker whose
+ * lease expired may still be loading when its shard is handed out again:
+ * the new attempt waits on the lock of the journal of the shard until the
+ * old one aborts (see ImportJournal and ShardWorker).
+ *
+ * Protocol, worker -> coordinator: 'R' (request), 'H' (heartbeat), 'D' id
+ * (done), 'F' id message (failed); coordinator -> worker: 'S' shard, 'W'
+ * millis (wait and ask again), 'X' (no more work).
+ */
+public class ShardCoordinator {
+
+	private static final long WAIT_MILLIS = 1000;
+	// returned by next() when there is no work left
+	private static final Shard FINISHED = new Shard(-1, false, "", 0, 0);
+
+	private ServerSocket server;
+	private long shardBytes;
+	private int maxAttempts;
+	private boolean resumable;
+	private int leaseMillis;
+
+	private Deque<Shard> vertexShards = new ArrayDeque<>();
+	private Deque<Shard> edgeShards = new ArrayDeque<>();
+	private Map<Integer, Integer> attempts = new HashMap<>();
+	private int nextId = 0;
+	private int pendingVertexShards = 0;
+	private int pendingShards = 0;
+	private String failure = null;
+	private boolean finished = false;
+
+	/*
+	 * listen on the given port, 0 for any free one; resumable tells whether
+	 * the workers load with a shared journal directory, so that the shards
+	 * that fail can be handed out again. leaseMillis must leave room for a
+	 * few heartbeats (see ShardWorker.HEARTBEAT_MILLIS).
+	 */
+	public ShardCoordinator(int port, long shardBytes, int maxAttempts, boolean resumable, int leaseMillis) throws IOException
+	{
+		if(leaseMillis < 3 * ShardWorker.HEARTBEAT_MILLIS)
+		{
+			throw new IllegalArgumentException("ERROR: the lease must be at least " + 3 * ShardWorker.HEARTBEAT_MILLIS +
+					" ms, got " + leaseMillis);
+		}
+		this.server = new ServerSocket(port);
+		this.shardBytes = shardBytes;
+		this.maxAttempts = maxAttempts;
+		this.resumable = resumable;
+		this.leaseMillis = leaseMillis;
+	}
+
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	public synchronized void addVertexFiles(List<File> files) throws IOException {
+		for(File file : files)
+		{
+			for(Shard shard : split(file, false))
+			{
+				vertexShards.add(shard);
+				pendingVertexShards++;
+				pendingShards++;
+			}
+		}
+	}
+
+	public synchronized void addEdgeFiles(List<File> files) throws IOException {
+		for(File file : files)
+		{
+			for(Shard shard : split(file, true))
+			{
+				edgeShards.add(shard);
+				pendingShards++;
+			}
+		}
+	}
+
+	/*
+	 * serve the workers until every shard is loaded; throws if a shard
+	 * failed maxAttempts times
+	 */
+	public void run() throws IOException, InterruptedException {
+		System.out.println(String.format("Coordinating %d shards on port %d", pendingShards, getPort()));
+		long startTime = System.currentTimeMillis();
+		Thread acceptor = new Thread(this::accept, "shard-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		try {
+			synchronized(this)
+			{
+				while(pendingShards > 0 && failure == null)
+				{
+					wait();
+				}
+				finished = true;
+			}
+		} finally {
+			server.close();
+		}
+		if(failure != null)
+		{
+			throw new RuntimeException(failure);
+		}
+		long timeElapsed = System.currentTimeMillis() - startTime;
+		System.out.println(String.format(
+				"All shards loaded in %03dm.%02ds", (timeElapsed/1000)/60, (timeElapsed/1000) % 60));
+	}
+
+	private List<Shard> split(File file, boolean edges) throws IOException {
+		String path = file.getAbsolutePath();
+		List<Shard> shards = new ArrayList<>();
+		if(Compression.detect(file) != Compression.NONE || file.length() <= shardBytes)
+		{
+			shards.add(new Shard(nextId++, edges, path, 0, Long.MAX_VALUE));
+			return shards;
+		}
+		int parts = (int) Math.min(Integer.MAX_VALUE, (file.length() + shardBytes - 1) / shardBytes);
+		for(long[] range : MappedCsvReader.split(file, parts))
+		{
+			shards.add(new Shard(nextId++, edges, path, range[0], range[1]));
+		}
+		return shards;
+	}
+
+	private void accept() {
+		while(!server.isClosed())
+		{
+			try {
+				Socket socket = server.accept();
+				Thread connection = new Thread(() -> serve(socket), "shard-" + socket.getRemoteSocketAddress());
+				connection.setDaemon(true);
+				connection.start();
+			} catch (IOException e) {
+				// closed by run()
+			}
+		}
+	}
+
+	/*
+	 * the conversation with a worker; the shard it holds fails if it
+	 * disconnects or stays silent longer than the lease
+	 */
+	private void serve(Socket socket) {
+		String worker = String.valueOf(socket.getRemoteSocketAddress());
+		Shard held = null;
+		try(Socket s = socket;
+				DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream())))
+		{
+			s.setKeepAlive(true);
+			s.setSoTimeout(leaseMillis);
+			int type;
+			while((type = in.read()) >= 0)
+			{
+				if(type == 'R')
+				{
+					Shard next = next();
+					if(next != null && next != FINISHED)
+					{
+						held = next;
+						System.out.println("Shard " + held + " -> " + worker);
+						out.writeByte('S');
+						held.write(out);
+					}
+					else if(next == null)
+					{
+						out.writeByte('W');
+						out.writeLong(WAIT_MILLIS);
+					}
+					else
+					{
+						out.writeByte('X');
+						out.flush();
+						return;
+					}
+					out.flush();
+				}
+				else if(type == 'H')
+				{
+					// the lease is renewed by the read
+					continue;
+				}
+				else if(type == 'D' || type == 'F')
+				{
+					int id = in.readInt();
+					if(held == null || held.getId() != id)
+					{
+						throw new IOException("ERROR: " + worker + " reported shard #" + id + " it does not hold");
+					}
+					if(type == 'D')
+					{
+						System.out.println("Shard " + held + " loaded by " + worker);
+						done(held);
+					}
+					else
+					{
+						failed(held, worker + ": " + in.readUTF());
+					}
+					held = null;
+				}
+				else
+				{
+					throw new IOException("ERROR: unexpected message " + type + " from " + worker);
+				}
+			}
+		} catch (SocketTimeoutException e) {
+			if(held != null)
+			{
+				failed(held, worker + " lost its lease, silent for " + leaseMillis + " ms");
+				held = null;
+			}
+		} catch (SocketException e) {
+			// the worker is gone
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+		}
+		if(held != null)
+		{
+			failed(held, worker + " disconnected");
+		}
+	}
+
+	/*
+	 * the next shard to load, null to wait, FINISHED when there is no work
+	 * left
+	 */
+	private synchronized Shard next() {
+		if(finished || failure != null || pendingShards == 0)
+		{
+			return FINISHED;
+		}
+		if(!vertexShards.isEmpty())
+		{
+			return vertexShards.poll();
+		}
+		if(pendingVertexShards > 0)
+		{
+			return null;
+		}
+		return edgeShards.poll();
+	}
+
+	private synchronized void done(Shard shard) {
+		pendingShards--;
+		if(!shard.isEdges())
+		{
+			pendingVertexShards--;
+		}
+		notifyAll();
+	}
+
+	private synchronized void failed(Shard shard, String reason) {
+		int attempt = attempts.merge(shard.getId(), 1, Integer::sum);
+		System.out.println(String.format("Shard %s failed (attempt %d of %d): %s", shard, attempt, maxAttempts, reason));
+		if(!resumable)
+		{
+			failure = "ERROR: shard " + shard + " failed and may be partly loaded, it is not loaded again " +
+					"without a shared journal directory: " + reason;
+			notifyAll();
+			return;
+		}
+		if(attempt >= maxAttempts)
+		{
+			failure = "ERROR: shard " + shard + " failed " + attempt + " times, last: " + reason;
+			notifyAll();
+			return;
+		}
+		(shard.isEdges() ? edgeShards : vertexShards).addFirst(shard);
+	}
+}
@@ -0,0 +1,10 @@
+package net.mpolonioli.janusgraphimporter.shard;
+
+/*
+ * loads a shard in a ShardWorker, typically with
+ * JanusGraphImporter.loadVertices or loadEdges on the range of the shard
+ */
+public interface ShardLoader {
+
+	void load(Shard shard) throws Exception;
+}
@@ -0,0 +1,135 @@
+package net.mpolonioli.janusgraphimporter.shard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/*
+ * a process of a sharded import: asks a ShardCoordinator for shards and
+ * loads them with the given ShardLoader, one at a time, until there is no
+ * work left. A shard that throws is reported as failed and the worker goes
+ * on with the next one. A heartbeat is sent every HEARTBEAT_MILLIS while a
+ * shard loads, to keep the lease of the worker on it; when it cannot be sent,
+ * the coordinator has dropped the worker and may hand the shard to another
+ * one, so the load is interrupted and run() throws.
+ */
+public class ShardWorker {
+
+	static final int HEARTBEAT_MILLIS = 10000;
+	// writeUTF takes at most 65535 bytes
+	private static final int MAX_MESSAGE_LENGTH = 16384;
+
+	private String host;
+	private int port;
+	private ShardLoader loader;
+
+	public ShardWorker(String host, int port, ShardLoader loader)
+	{
+		this.host = host;
+		this.port = port;
+		this.loader = loader;
+	}
+
+	/*
+	 * returns the number of shards loaded by this worker
+	 */
+	public int run() throws IOException, InterruptedException {
+		int loaded = 0;
+		try(Socket socket = new Socket(host, port);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())))
+		{
+			socket.setKeepAlive(true);
+			while(true)
+			{
+				out.writeByte('R');
+				out.flush();
+				int type = in.read();
+				if(type == 'S')
+				{
+					Shard shard = Shard.read(in);
+					System.out.println("Loading shard " + shard);
+					Thread loading = Thread.currentThread();
+					Thread heartbeat = new Thread(() -> heartbeat(out, loading), "shard-heartbeat");
+					heartbeat.setDaemon(true);
+					heartbeat.start();
+					Exception error = null;
+					try {
+						loader.load(shard);
+					} catch (InterruptedException e) {
+						throw e;
+					} catch (Exception e) {
+						error = e;
+					} finally {
+						stop(heartbeat);
+					}
+					if(error == null)
+					{
+						out.writeByte('D');
+						out.writeInt(shard.getId());
+						loaded++;
+					}
+					else
+					{
+						error.printStackTrace();
+						String message = error.toString();
+						out.writeByte('F');
+						out.writeInt(shard.getId());
+						out.writeUTF(message.length() > MAX_MESSAGE_LENGTH ? message.substring(0, MAX_MESSAGE_LENGTH) : message);
+					}
+				}
+				else if(type == 'W')
+				{
+					Thread.sleep(in.readLong());
+				}
+				else if(type == 'X' || type < 0)
+				{
+					System.out.println(loaded + " shards loaded");
+					return loaded;
+				}
+				else
+				{
+					throw new IOException("ERROR: unexpected message " + type + " from " + host + ":" + port);
+				}
+			}
+		}
+	}
+
+	/*
+	 * send a heartbeat every HEARTBEAT_MILLIS until interrupted; interrupt
+	 * the loading thread if the coordinator is gone
+	 */
+	private static void heartbeat(DataOutputStream out, Thread loading) {
+		try {
+			while(true)
+			{
+				Thread.sleep(HEARTBEAT_MILLIS);
+				synchronized(out)
+				{
+					if(Thread.currentThread().isInterrupted())
+					{
+						return;
+					}
+					out.writeByte('H');
+					out.flush();
+				}
+			}
+		} catch (InterruptedException e) {
+			// the shard is over
+		} catch (IOException e) {
+			System.out.println("Lost the coordinator, aborting the shard: " + e);
+			loading.interrupt();
+		}
+	}
+
+	/*
+	 * stop the heartbeat before the report of the shard is written
+	 */
+	private static void stop(Thread heartbeat) throws InterruptedException {
+		heartbeat.interrupt();
+		heartbeat.join();
+	}
+}
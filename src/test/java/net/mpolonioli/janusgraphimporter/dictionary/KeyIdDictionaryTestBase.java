@@ -0,0 +1,174 @@
+package net.mpolonioli.janusgraphimporter.dictionary;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+/*
+ * the behaviour shared by the KeyIdDictionary implementations
+ */
+public abstract class KeyIdDictionaryTestBase {
+
+	private static final long NO_ID = KeyIdDictionary.NO_ID;
+
+	/*
+	 * an empty dictionary sized for expectedSize keys
+	 */
+	protected abstract KeyIdDictionary newDictionary(int expectedSize) throws IOException;
+
+	@Test
+	public void findsWhatWasPut() throws IOException {
+		try(KeyIdDictionary dictionary = newDictionary(16))
+		{
+			dictionary.put("42", 1);
+			dictionary.put("-7", 2);
+			dictionary.put("alice", 3);
+			dictionary.put("", 4);
+			assertEquals(1, dictionary.get("42"));
+			assertEquals(2, dictionary.get("-7"));
+			assertEquals(3, dictionary.get("alice"));
+			assertEquals(4, dictionary.get(""));
+			assertEquals(NO_ID, dictionary.get("43"));
+			assertEquals(NO_ID, dictionary.get("bob"));
+			assertEquals(4, dictionary.size());
+		}
+	}
+
+	@Test
+	public void keepsNonCanonicalNumbersApart() throws IOException {
+		try(KeyIdDictionary dictionary = newDictionary(16))
+		{
+			String[] keys = { "1", "01", "+1", "1.0", " 1", "0", "-0", "00",
+					"999999999999999999", "9999999999999999999", "-9223372036854775808" };
+			for(int i = 0; i < keys.length; i++)
+			{
+				dictionary.put(keys[i], i + 1);
+			}
+			for(int i = 0; i < keys.length; i++)
+			{
+				assertEquals(keys[i], i + 1, dictionary.get(keys[i]));
+			}
+			assertEquals(keys.length, dictionary.size());
+		}
+	}
+
+	@Test
+	public void separatesCollidingKeys() throws IOException {
+		try(KeyIdDictionary dictionary = newDictionary(16))
+		{
+			// all of them have the same String.hashCode
+			String[] keys = { "Aa", "BB", "AaAa", "AaBB", "BBAa", "BBBB" };
+			for(int i = 0; i < keys.length; i++)
+			{
+				dictionary.put(keys[i], i + 1);
+			}
+			for(int i = 0; i < keys.length; i++)
+			{
+				assertEquals(keys[i], i + 1, dictionary.get(keys[i]));
+			}
+		}
+	}
+
+	@Test
+	public void growsPastItsExpectedSize() throws IOException {
+		int count = 200000;
+		try(KeyIdDictionary dictionary = newDictionary(16))
+		{
+			for(int i = 0; i < count; i++)
+			{
+				dictionary.put(Integer.toString(i * 7919), i + 1);
+				dictionary.put("v" + i, count + i + 1);
+			}
+			assertEquals(2 * count, dictionary.size());
+			for(int i = 0; i < count; i++)
+			{
+				assertEquals(i + 1, dictionary.get(Integer.toString(i * 7919)));
+				assertEquals(count + i + 1, dictionary.get("v" + i));
+			}
+			assertEquals(NO_ID, dictionary.get("v" + count));
+		}
+	}
+
+	@Test
+	public void putAllMatchesPut() throws IOException {
+		try(KeyIdDictionary dictionary = newDictionary(16))
+		{
+			String[] keys = new String[1000];
+			long[] ids = new long[keys.length];
+			for(int i = 0; i < keys.length; i++)
+			{
+				keys[i] = i % 2 == 0 ? Integer.toString(i) : "k" + i;
+				ids[i] = 1000 + i;
+			}
+			// only the first count pairs
+			dictionary.putAll(keys, ids, 900);
+			assertEquals(900, dictionary.size());
+			assertEquals(1000, dictionary.get("0"));
+			assertEquals(1899, dictionary.get("k899"));
+			assertEquals(NO_ID, dictionary.get("900"));
+		}
+	}
+
+	@Test
+	public void reportsAmbiguousKeysAsMissing() throws IOException {
+		try(KeyIdDictionary dictionary = newDictionary(16))
+		{
+			dictionary.put("1", 10);
+			dictionary.put("1", 10);
+			assertEquals(10, dictionary.get("1"));
+			dictionary.put("1", 11);
+			assertEquals(NO_ID, dictionary.get("1"));
+			// ambiguous for good, even when put again with either id
+			dictionary.put("1", 10);
+			assertEquals(NO_ID, dictionary.get("1"));
+
+			dictionary.put("alice", 20);
+			dictionary.put("alice", 21);
+			assertEquals(NO_ID, dictionary.get("alice"));
+			dictionary.put("alice", 20);
+			assertEquals(NO_ID, dictionary.get("alice"));
+			assertEquals(2, dictionary.size());
+		}
+	}
+
+	@Test
+	public void staysAmbiguousAcrossGrowth() throws IOException {
+		try(KeyIdDictionary dictionary = newDictionary(16))
+		{
+			dictionary.put("7", 1);
+			dictionary.put("7", 2);
+			dictionary.put("x", 1);
+			dictionary.put("x", 2);
+			for(int i = 100; i < 10000; i++)
+			{
+				dictionary.put(Integer.toString(i), i);
+				dictionary.put("y" + i, i);
+			}
+			assertEquals(NO_ID, dictionary.get("7"));
+			assertEquals(NO_ID, dictionary.get("x"));
+			assertEquals(500, dictionary.get("500"));
+		}
+	}
+
+	@Test
+	public void clearsEverything() throws IOException {
+		try(KeyIdDictionary dictionary = newDictionary(16))
+		{
+			for(int i = 0; i < 1000; i++)
+			{
+				dictionary.put(Integer.toString(i), i + 1);
+				dictionary.put("s" + i, i + 1);
+			}
+			dictionary.clear();
+			assertEquals(0, dictionary.size());
+			assertEquals(NO_ID, dictionary.get("5"));
+			assertEquals(NO_ID, dictionary.get("s5"));
+			dictionary.put("5", 3);
+			dictionary.put("s5", 4);
+			assertEquals(3, dictionary.get("5"));
+			assertEquals(4, dictionary.get("s5"));
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package net.mpolonioli.janusgraphimporter.dictionary;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedVertexIdDictionaryTest extends KeyIdDictionaryTestBase {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Override
+	protected KeyIdDictionary newDictionary(int expectedSize) throws IOException {
+		return new MappedVertexIdDictionary(new File(folder.getRoot(), "keys.dict"), expectedSize, 0);
+	}
+
+	@Test
+	public void reopensWithItsEntries() throws IOException {
+		File file = new File(folder.getRoot(), "reopened.dict");
+		try(KeyIdDictionary dictionary = new MappedVertexIdDictionary(file, 16, 0))
+		{
+			for(int i = 0; i < 10000; i++)
+			{
+				dictionary.put(Integer.toString(i), i + 1);
+				dictionary.put("k" + i, i + 1);
+			}
+			dictionary.put("k0", 99);
+		}
+		try(KeyIdDictionary dictionary = new MappedVertexIdDictionary(file, 16, 0))
+		{
+			assertEquals(20000, dictionary.size());
+			assertEquals(1, dictionary.get("0"));
+			assertEquals(10000, dictionary.get("k9999"));
+			assertEquals(KeyIdDictionary.NO_ID, dictionary.get("k0"));
+		}
+	}
+
+	@Test
+	public void cacheForgetsKeysTurnedAmbiguous() throws IOException {
+		try(KeyIdDictionary dictionary = new MappedVertexIdDictionary(new File(folder.getRoot(), "cached.dict"), 16, 100))
+		{
+			dictionary.put("alice", 1);
+			// cached by the read
+			assertEquals(1, dictionary.get("alice"));
+			assertEquals(1, dictionary.get("alice"));
+			dictionary.put("alice", 2);
+			assertEquals(KeyIdDictionary.NO_ID, dictionary.get("alice"));
+		}
+	}
+}
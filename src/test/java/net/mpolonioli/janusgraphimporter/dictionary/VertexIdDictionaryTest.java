@@ -0,0 +1,29 @@
+package net.mpolonioli.janusgraphimporter.dictionary;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class VertexIdDictionaryTest extends KeyIdDictionaryTestBase {
+
+	@Override
+	protected KeyIdDictionary newDictionary(int expectedSize) {
+		return new VertexIdDictionary(expectedSize);
+	}
+
+	@Test
+	public void numericKeysAreCanonicalLongs() {
+		assertTrue(VertexIdDictionary.isNumeric("0"));
+		assertTrue(VertexIdDictionary.isNumeric("-12"));
+		assertTrue(VertexIdDictionary.isNumeric("999999999999999999"));
+		assertFalse(VertexIdDictionary.isNumeric(""));
+		assertFalse(VertexIdDictionary.isNumeric("-"));
+		assertFalse(VertexIdDictionary.isNumeric("-0"));
+		assertFalse(VertexIdDictionary.isNumeric("01"));
+		assertFalse(VertexIdDictionary.isNumeric("+1"));
+		assertFalse(VertexIdDictionary.isNumeric("1a"));
+		// 19 digits may not fit a long
+		assertFalse(VertexIdDictionary.isNumeric("1000000000000000000"));
+	}
+}
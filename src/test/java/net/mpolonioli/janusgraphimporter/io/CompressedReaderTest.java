@@ -0,0 +1,229 @@
+package net.mpolonioli.janusgraphimporter.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+import net.jpountz.lz4.LZ4FrameOutputStream;
+
+/*
+ * the same CSV read back through every compressed format: more than one
+ * decompressed block (StreamCsvReader cuts 4 MB ones) and lines split
+ * between blocks
+ */
+public class CompressedReaderTest {
+
+	private static final int BGZF_BLOCK_INPUT = 60000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void readsGzip() throws IOException {
+		assertRoundTrip(Compression.GZIP, "person.csv.gz", GZIPOutputStream::new);
+	}
+
+	@Test
+	public void readsBgzf() throws IOException {
+		assertRoundTrip(Compression.BGZF, "person.csv.bgz", BgzfOutputStream::new);
+	}
+
+	@Test
+	public void readsZstd() throws IOException {
+		assertRoundTrip(Compression.ZSTD, "person.csv.zst", ZstdOutputStream::new);
+	}
+
+	@Test
+	public void readsLz4() throws IOException {
+		assertRoundTrip(Compression.LZ4, "person.csv.lz4", LZ4FrameOutputStream::new);
+	}
+
+	@Test
+	public void plainFilesAreNotCompressed() throws IOException {
+		File file = folder.newFile("person.csv");
+		Files.write(file.toPath(), csv(10, new Random(0)));
+		assertEquals(Compression.NONE, Compression.detect(file));
+	}
+
+	@Test
+	public void closesWhileDecompressing() throws IOException {
+		File file = write("person.csv.zst", ZstdOutputStream::new, csv(300000, new Random(1)));
+		for(int chunks = 0; chunks < 4; chunks++)
+		{
+			try(CsvReader reader = CsvReaders.open(file))
+			{
+				for(int i = 0; i < chunks; i++)
+				{
+					assertNotNull(reader.nextChunk(1000));
+				}
+			}
+		}
+	}
+
+	private void assertRoundTrip(Compression compression, String name, Compressor compressor) throws IOException {
+		byte[] csv = csv(300000, new Random(name.hashCode()));
+		File file = write(name, compressor, csv);
+		assertEquals(compression, Compression.detect(file));
+		assertEquals("baseName", "person", CsvReaders.baseName(file));
+		assertArrayEquals(new String[] { "id", "name", "email" }, CsvReaders.readColNames(file));
+
+		List<String> expected = new ArrayList<>();
+		for(String line : new String(csv, StandardCharsets.UTF_8).split("\n"))
+		{
+			expected.add(line.endsWith("\r") ? line.substring(0, line.length() - 1) : line);
+		}
+		expected.remove(0);
+
+		List<String> lines = new ArrayList<>();
+		long lastEnd = -1;
+		try(CsvReader reader = CsvReaders.open(file))
+		{
+			LineChunk chunk;
+			while((chunk = reader.nextChunk(777)) != null)
+			{
+				assertEquals("line count", lines.size(), chunk.getLineCount());
+				if(lastEnd >= 0)
+				{
+					assertEquals("chunk offsets", lastEnd, chunk.getStartOffset());
+				}
+				lastEnd = chunk.getEndOffset();
+				ByteBuffer buffer = chunk.getBuffer();
+				for(int i = 0; i < chunk.size(); i++)
+				{
+					byte[] bytes = new byte[chunk.getLineEnd(i) - chunk.getLineStart(i)];
+					for(int b = 0; b < bytes.length; b++)
+					{
+						bytes[b] = buffer.get(chunk.getLineStart(i) + b);
+					}
+					lines.add(new String(bytes, StandardCharsets.UTF_8));
+				}
+			}
+		}
+		assertEquals(csv.length, lastEnd);
+		assertEquals(expected.size(), lines.size());
+		assertEquals(expected, lines);
+	}
+
+	/*
+	 * over 10 MB of lines, some ending in \r\n, the last one without a
+	 * line terminator
+	 */
+	private static byte[] csv(int lines, Random random) {
+		StringBuilder csv = new StringBuilder("id|name|email\n");
+		for(int i = 0; i < lines; i++)
+		{
+			csv.append(i).append("|name").append(random.nextInt()).append("|user").append(i).append("@example.org");
+			if(i < lines - 1)
+			{
+				csv.append(random.nextInt(10) == 0 ? "\r\n" : "\n");
+			}
+		}
+		return csv.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private File write(String name, Compressor compressor, byte[] data) throws IOException {
+		File file = new File(folder.getRoot(), name);
+		try(OutputStream out = compressor.open(new FileOutputStream(file)))
+		{
+			out.write(data);
+		}
+		return file;
+	}
+
+	private interface Compressor {
+
+		OutputStream open(OutputStream out) throws IOException;
+	}
+
+	/*
+	 * writes BGZF as bgzip does: gzip members of at most 64 KB with the BC
+	 * extra subfield, then the empty end of file block
+	 */
+	private static class BgzfOutputStream extends OutputStream {
+
+		private OutputStream out;
+		private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+		BgzfOutputStream(OutputStream out)
+		{
+			this.out = out;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			pending.write(b);
+			if(pending.size() >= BGZF_BLOCK_INPUT)
+			{
+				flushBlock();
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			for(int i = off; i < off + len; i++)
+			{
+				write(b[i]);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if(pending.size() > 0)
+			{
+				flushBlock();
+			}
+			writeBlock(new byte[0]);
+			out.close();
+		}
+
+		private void flushBlock() throws IOException {
+			writeBlock(pending.toByteArray());
+			pending.reset();
+		}
+
+		private void writeBlock(byte[] data) throws IOException {
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			deflater.setInput(data);
+			deflater.finish();
+			byte[] compressed = new byte[data.length + 1024];
+			int length = deflater.deflate(compressed);
+			deflater.end();
+			CRC32 crc = new CRC32();
+			crc.update(data);
+
+			int blockSize = 18 + length + 8;
+			ByteBuffer block = ByteBuffer.allocate(blockSize).order(ByteOrder.LITTLE_ENDIAN);
+			block.put(new byte[] { 0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff });
+			block.putShort((short) 6);
+			block.put(new byte[] { 'B', 'C' });
+			block.putShort((short) 2);
+			block.putShort((short) (blockSize - 1));
+			block.put(compressed, 0, length);
+			block.putInt((int) crc.getValue());
+			block.putInt(data.length);
+			out.write(block.array());
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package net.mpolonioli.janusgraphimporter.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/*
+ * the tokenizer of the lines: the format has no quoting and no escapes, a
+ * field is everything between two delimiters
+ */
+public class CsvRowTest {
+
+	@Test
+	public void splitsOnTheDelimiter() {
+		CsvRow row = row("1|Alice|Smith");
+		assertEquals(3, row.size());
+		assertEquals("1", row.getString(0));
+		assertEquals("Alice", row.getString(1));
+		assertEquals("Smith", row.getString(2));
+		assertEquals("1|Alice|Smith", row.getLine());
+	}
+
+	@Test
+	public void keepsEmptyFields() {
+		CsvRow row = row("|a||b|");
+		assertEquals(5, row.size());
+		assertTrue(row.isEmpty(0));
+		assertEquals("a", row.getString(1));
+		assertTrue(row.isEmpty(2));
+		assertEquals("b", row.getString(3));
+		assertTrue(row.isEmpty(4));
+	}
+
+	@Test
+	public void quotesAreData() {
+		CsvRow row = row("\"a|b\"|\"\"");
+		assertEquals(3, row.size());
+		assertEquals("\"a", row.getString(0));
+		assertEquals("b\"", row.getString(1));
+		assertEquals("\"\"", row.getString(2));
+	}
+
+	@Test
+	public void backslashesAreData() {
+		CsvRow row = row("a\\|b\\\\|c\\n");
+		assertEquals(3, row.size());
+		assertEquals("a\\", row.getString(0));
+		assertEquals("b\\\\", row.getString(1));
+		assertEquals("c\\n", row.getString(2));
+	}
+
+	@Test
+	public void commasAndSpacesAreData() {
+		CsvRow row = row(" a, b | c ");
+		assertEquals(2, row.size());
+		assertEquals(" a, b ", row.getString(0));
+		assertEquals(" c ", row.getString(1));
+	}
+
+	@Test
+	public void splitsTheValuesOfAField() {
+		CsvRow row = row("1|a@x.org;b@y.org;|x");
+		CsvRow values = new CsvRow(CsvRow.VALUE_SEPARATOR);
+		values.reset(row.getBuffer(), row.getStart(1), row.getEnd(1));
+		assertEquals(3, values.size());
+		assertEquals("a@x.org", values.getString(0));
+		assertEquals("b@y.org", values.getString(1));
+		assertTrue(values.isEmpty(2));
+	}
+
+	@Test
+	public void decodesUtf8() {
+		CsvRow row = row("Zo\u00eb|\u6771\u4eac|\ud83d\ude00");
+		assertEquals("Zo\u00eb", row.getString(0));
+		assertEquals("\u6771\u4eac", row.getString(1));
+		assertEquals("\ud83d\ude00", row.getString(2));
+	}
+
+	@Test
+	public void tokenizesPartOfABuffer() {
+		byte[] bytes = "header\n7|x\r\n".getBytes(StandardCharsets.UTF_8);
+		CsvRow row = new CsvRow();
+		row.reset(ByteBuffer.wrap(bytes), 7, 10);
+		assertEquals(2, row.size());
+		assertEquals(7, row.getLong(0));
+		assertEquals("x", row.getString(1));
+	}
+
+	@Test
+	public void onlyEmptyLinesAreBlank() {
+		assertTrue(row("").isBlank());
+		assertFalse(row(" ").isBlank());
+		assertFalse(row("\t").isBlank());
+		assertFalse(row("|").isBlank());
+	}
+
+	@Test
+	public void parsesLongsLikeLong() {
+		for(String value : new String[] { "0", "-0", "+5", "-17", "9223372036854775807", "-9223372036854775808", "007" })
+		{
+			assertEquals(value, Long.parseLong(value), row(value).getLong(0));
+		}
+		for(String value : new String[] { "", "-", "+", "1.5", " 1", "9223372036854775808", "-9223372036854775809", "1e3" })
+		{
+			try {
+				row(value).getLong(0);
+				fail("parsed " + value);
+			} catch (NumberFormatException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void refusesIntOverflow() {
+		row("2147483648").getInt(0);
+	}
+
+	@Test
+	public void parsesBooleansLikeBoolean() {
+		for(String value : new String[] { "true", "TRUE", "True", "false", "", "yes", "1", "truee", "tru" })
+		{
+			assertEquals(value, Boolean.parseBoolean(value), row(value).getBoolean(0));
+		}
+	}
+
+	private static CsvRow row(String line) {
+		CsvRow row = new CsvRow();
+		byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+		row.reset(ByteBuffer.wrap(bytes), 0, bytes.length);
+		return row;
+	}
+}
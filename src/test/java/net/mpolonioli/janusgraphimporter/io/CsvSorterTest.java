@@ -0,0 +1,127 @@
+package net.mpolonioli.janusgraphimporter.io;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * the external sort of the edge files: a stable sort, whether the lines fit
+ * in one run or take several merge passes
+ */
+public class CsvSorterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void sortsInMemory() throws IOException {
+		List<String> lines = lines(2000, 50, new Random(1));
+		assertSorted(lines, 1 << 30);
+	}
+
+	@Test
+	public void sortsAcrossRuns() throws IOException {
+		List<String> lines = lines(2000, 50, new Random(2));
+		// a few runs, merged at once
+		assertSorted(lines, 2000 * 80 / 10);
+	}
+
+	@Test
+	public void sortsAcrossMergePasses() throws IOException {
+		List<String> lines = lines(5000, 40, new Random(3));
+		// a run per line: 5000 runs take two merge passes (to 79, then 2 runs)
+		// before the last merge
+		assertSorted(lines, 1);
+	}
+
+	@Test
+	public void sameOutputForEveryMemoryBudget() throws IOException {
+		List<String> lines = lines(1500, 20, new Random(4));
+		File input = write(lines);
+		List<String> expected = null;
+		for(long memoryBytes : new long[] { 1, 100, 10000, 1 << 30 })
+		{
+			File output = new File(folder.getRoot(), "sorted-" + memoryBytes + ".csv");
+			new CsvSorter(folder.newFolder(), memoryBytes).sort(input, 1, output);
+			List<String> sorted = Files.readAllLines(output.toPath(), StandardCharsets.UTF_8);
+			if(expected == null)
+			{
+				expected = sorted;
+			}
+			assertEquals("memory " + memoryBytes, expected, sorted);
+		}
+	}
+
+	@Test
+	public void sortsByMultipleFields() throws IOException {
+		List<String> lines = Arrays.asList("ab|a|1", "a|b|2", "a|a|3", "a|b|4", "a|ab|5", "|x|6", "b||7");
+		File output = new File(folder.getRoot(), "sorted.csv");
+		new CsvSorter(folder.newFolder(), 1).sort(write(lines), 0, 2, output);
+		// the fields compare one after the other: "a" before "ab" in any field
+		assertEquals(Arrays.asList("from|to|n", "|x|6", "a|a|3", "a|ab|5", "a|b|2", "a|b|4", "ab|a|1", "b||7"),
+				Files.readAllLines(output.toPath(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void dropsOnlyEmptyLines() throws IOException {
+		File input = folder.newFile("edges.csv");
+		Files.write(input.toPath(), "from|to\n2|b\n\n \n1|a\r\n\n".getBytes(StandardCharsets.UTF_8));
+		File output = new File(folder.getRoot(), "sorted.csv");
+		new CsvSorter(folder.newFolder(), 1 << 20).sort(input, 0, output);
+		assertEquals(Arrays.asList("from|to", " ", "1|a", "2|b"), Files.readAllLines(output.toPath(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void leavesNoRunBehind() throws IOException {
+		File temp = folder.newFolder();
+		new CsvSorter(temp, 1).sort(write(lines(500, 10, new Random(5))), 1, new File(folder.getRoot(), "sorted.csv"));
+		assertEquals(0, temp.list().length);
+	}
+
+	/*
+	 * sort with the given budget and compare with a stable in memory sort
+	 * on the second field
+	 */
+	private void assertSorted(List<String> lines, long memoryBytes) throws IOException {
+		File output = new File(folder.getRoot(), "sorted.csv");
+		new CsvSorter(folder.newFolder(), memoryBytes).sort(write(lines), 1, output);
+		List<String> expected = new ArrayList<>(lines);
+		Collections.sort(expected, Comparator.comparing(line -> line.split("\\|", -1)[1]));
+		expected.add(0, "from|to|n");
+		assertEquals(expected, Files.readAllLines(output.toPath(), StandardCharsets.UTF_8));
+	}
+
+	/*
+	 * lines "from|to|n" with keys drawn among distinctKeys, n the line
+	 * number, so that the order of the lines of a key shows
+	 */
+	private static List<String> lines(int count, int distinctKeys, Random random) {
+		List<String> lines = new ArrayList<>();
+		for(int i = 0; i < count; i++)
+		{
+			lines.add(random.nextInt(1000) + "|key" + random.nextInt(distinctKeys) + "|" + i);
+		}
+		return lines;
+	}
+
+	private File write(List<String> lines) throws IOException {
+		File input = folder.newFile();
+		List<String> withHeader = new ArrayList<>(lines);
+		withHeader.add(0, "from|to|n");
+		Files.write(input.toPath(), withHeader, StandardCharsets.UTF_8);
+		return input;
+	}
+}
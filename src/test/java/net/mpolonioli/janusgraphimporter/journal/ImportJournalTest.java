@@ -0,0 +1,181 @@
+package net.mpolonioli.janusgraphimporter.journal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.mpolonioli.janusgraphimporter.dictionary.KeyIdDictionary;
+import net.mpolonioli.janusgraphimporter.dictionary.VertexIdDictionary;
+import net.mpolonioli.janusgraphimporter.io.LineChunk;
+
+/*
+ * resuming a load from its journal, including a journal cut by a crash
+ */
+public class ImportJournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File data;
+	private File journalFile;
+
+	@Before
+	public void setUp() throws IOException {
+		data = folder.newFile("person.csv");
+		StringBuilder csv = new StringBuilder("id|name\n");
+		for(int i = 0; i < 100; i++)
+		{
+			csv.append(i).append("|name").append(i).append('\n');
+		}
+		Files.write(data.toPath(), csv.toString().getBytes(StandardCharsets.UTF_8));
+		journalFile = new File(folder.getRoot(), "person.csv.journal");
+	}
+
+	@Test
+	public void newJournalHasEverythingPending() throws IOException {
+		try(ImportJournal journal = new ImportJournal(journalFile, data))
+		{
+			assertFalse(journal.isResumed());
+			assertEquals(0, journal.getCommittedLines());
+			List<long[]> ranges = journal.getPendingRanges();
+			assertEquals(1, ranges.size());
+			assertArrayEquals(new long[] { 0, Long.MAX_VALUE, 0 }, ranges.get(0));
+		}
+	}
+
+	@Test
+	public void resumesAfterTheCommittedChunks() throws IOException {
+		try(ImportJournal journal = new ImportJournal(journalFile, data))
+		{
+			// chunks [100, 200) and [200, 300) of 10 lines each, and [400, 500)
+			// after 30 lines; [300, 400) was in flight
+			journal.chunkCommitted(chunk(0, 100, 200, 10));
+			journal.chunkCommitted(chunk(30, 400, 500, 10));
+			journal.chunkCommitted(chunk(10, 200, 300, 10));
+		}
+		try(ImportJournal journal = new ImportJournal(journalFile, data))
+		{
+			assertTrue(journal.isResumed());
+			assertEquals(30, journal.getCommittedLines());
+			List<long[]> ranges = journal.getPendingRanges();
+			assertEquals(3, ranges.size());
+			assertArrayEquals(new long[] { 0, 100, 0 }, ranges.get(0));
+			assertArrayEquals(new long[] { 300, 400, 20 }, ranges.get(1));
+			assertArrayEquals(new long[] { 500, Long.MAX_VALUE, 40 }, ranges.get(2));
+		}
+	}
+
+	@Test
+	public void dropsTheRecordCutByACrash() throws IOException {
+		try(ImportJournal journal = new ImportJournal(journalFile, data))
+		{
+			journal.chunkCommitted(chunk(0, 100, 200, 10));
+		}
+		long validLength = journalFile.length();
+		// a chunk record cut in the middle of its end offset
+		try(FileOutputStream out = new FileOutputStream(journalFile, true))
+		{
+			out.write('C');
+			out.write(new byte[] { 0, 0, 0, 0, 0, 0, 0, (byte) 200, 0, 0 });
+		}
+		try(ImportJournal journal = new ImportJournal(journalFile, data))
+		{
+			assertEquals(validLength, journalFile.length());
+			assertEquals(10, journal.getCommittedLines());
+			assertEquals(2, journal.getPendingRanges().size());
+			journal.chunkCommitted(chunk(10, 200, 300, 10));
+		}
+		try(ImportJournal journal = new ImportJournal(journalFile, data))
+		{
+			assertEquals(20, journal.getCommittedLines());
+			List<long[]> ranges = journal.getPendingRanges();
+			assertArrayEquals(new long[] { 0, 100, 0 }, ranges.get(0));
+			assertArrayEquals(new long[] { 300, Long.MAX_VALUE, 20 }, ranges.get(1));
+		}
+	}
+
+	@Test
+	public void dropsAnUnknownRecord() throws IOException {
+		try(ImportJournal journal = new ImportJournal(journalFile, data))
+		{
+			journal.chunkCommitted(chunk(0, 100, 200, 10));
+		}
+		long validLength = journalFile.length();
+		try(RandomAccessFile file = new RandomAccessFile(journalFile, "rw"))
+		{
+			file.seek(validLength);
+			file.write(new byte[] { 'Z', 1, 2, 3 });
+		}
+		try(ImportJournal journal = new ImportJournal(journalFile, data))
+		{
+			assertEquals(validLength, journalFile.length());
+			assertEquals(10, journal.getCommittedLines());
+		}
+	}
+
+	@Test
+	public void replaysOnlyTheIdsOfCommittedChunks() throws IOException {
+		try(ImportJournal journal = new ImportJournal(journalFile, data))
+		{
+			LineChunk committed = chunk(0, 100, 200, 2);
+			LineChunk lost = chunk(2, 200, 300, 2);
+			journal.vertexIds(committed, new String[] { "1", "alice" }, new long[] { 11, 12 }, 2);
+			journal.vertexIds(lost, new String[] { "2", "bob" }, new long[] { 21, 22 }, 2);
+			journal.chunkCommitted(committed);
+		}
+		try(ImportJournal journal = new ImportJournal(journalFile, data))
+		{
+			KeyIdDictionary dictionary = new VertexIdDictionary();
+			journal.replayIds(dictionary);
+			assertEquals(2, dictionary.size());
+			assertEquals(11, dictionary.get("1"));
+			assertEquals(12, dictionary.get("alice"));
+			assertEquals(KeyIdDictionary.NO_ID, dictionary.get("2"));
+			assertEquals(KeyIdDictionary.NO_ID, dictionary.get("bob"));
+		}
+	}
+
+	@Test
+	public void refusesAnotherVersionOfTheFile() throws IOException {
+		try(ImportJournal journal = new ImportJournal(journalFile, data))
+		{
+			journal.chunkCommitted(chunk(0, 100, 200, 10));
+		}
+		try(FileOutputStream out = new FileOutputStream(data, true))
+		{
+			out.write("100|name100\n".getBytes(StandardCharsets.UTF_8));
+		}
+		try(ImportJournal journal = new ImportJournal(journalFile, data))
+		{
+			fail("opened the journal of another version of " + data);
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("ERROR:"));
+		}
+		// the lock was released by the failed open
+		journalFile.delete();
+		try(ImportJournal journal = new ImportJournal(journalFile, data))
+		{
+			assertFalse(journal.isResumed());
+		}
+	}
+
+	private static LineChunk chunk(long lineCount, long startOffset, long endOffset, int size) {
+		return new LineChunk(lineCount, ByteBuffer.allocate(0), new int[size], new int[size], size, startOffset, endOffset);
+	}
+}